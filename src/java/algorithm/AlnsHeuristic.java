@@ -0,0 +1,603 @@
+package algorithm;
+
+import commons.Instance;
+import commons.Route;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Adaptive large neighbourhood search for star routing, meant to run on its own thread next to an
+ * exact method. A solution assigns every customer to a route and to a node of that route it is
+ * served from. Destroy operators unassign customers and drop the nodes that no longer serve
+ * anyone. Repair operators serve them again, from a node already in a route when possible, or by
+ * inserting the cheapest node of their neighbourhood. Operators are picked by roulette wheel with
+ * adaptive weights, and new solutions are accepted by simulated annealing.
+ *
+ * <p>Every new best solution is published: its cost through {@link #getBestCost()} and its routes
+ * through {@link #pollColumns()}, so that they can be added to an RMP.
+ */
+public class AlnsHeuristic implements Runnable {
+
+  private static final int SEGMENT_LENGTH = 100;
+  private static final double REACTION_FACTOR = 0.1;
+  private static final double NEW_BEST_SCORE = 33;
+  private static final double IMPROVEMENT_SCORE = 9;
+  private static final double ACCEPTED_SCORE = 13;
+  private static final double MAX_DESTROYED_FRACTION = 0.4;
+  private static final double INITIAL_ACCEPTED_WORSENING = 0.05;
+  private static final double COOLING_RATE = 0.9995;
+
+  private final Instance instance;
+  private final InitialSolutionHeuristic initialSolutionHeuristic;
+  private final Random random;
+  private final int unassignedPenalty;
+  private final int unusedRouteCost;
+  private final ConcurrentLinkedQueue<Route> columns;
+  private final Set<Route> publishedColumns;
+  private final double[] destroyWeights;
+  private final double[] repairWeights;
+  private final double[] destroyScores;
+  private final double[] repairScores;
+  private final int[] destroyUses;
+  private final int[] repairUses;
+  private volatile boolean stopped;
+  private volatile List<Route> bestSolution;
+  private long maxIterations;
+  private volatile long numberOfIterations;
+
+  public AlnsHeuristic(Instance instance, InitialSolutionHeuristic initialSolutionHeuristic) {
+    this(instance, initialSolutionHeuristic, 0);
+  }
+
+  public AlnsHeuristic(
+      Instance instance, InitialSolutionHeuristic initialSolutionHeuristic, long seed) {
+    this.instance = instance;
+    this.initialSolutionHeuristic = initialSolutionHeuristic;
+    this.random = new Random(seed);
+    this.columns = new ConcurrentLinkedQueue<>();
+    this.publishedColumns = new HashSet<>();
+    this.destroyWeights = new double[DestroyOperator.values().length];
+    this.repairWeights = new double[RepairOperator.values().length];
+    this.destroyScores = new double[destroyWeights.length];
+    this.repairScores = new double[repairWeights.length];
+    this.destroyUses = new int[destroyWeights.length];
+    this.repairUses = new int[repairWeights.length];
+    Arrays.fill(destroyWeights, 1);
+    Arrays.fill(repairWeights, 1);
+    this.stopped = false;
+    this.bestSolution = List.of();
+    this.maxIterations = Long.MAX_VALUE;
+    // Serving a customer costs at most a round trip to its cheapest neighbour, so leaving it
+    // unserved must cost more than that
+    int penalty = 1;
+    for (int customer : instance.getCustomers()) {
+      penalty +=
+          instance.getNeighbors(customer).stream()
+              .filter(node -> node != instance.getDepot())
+              .mapToInt(this::getRoundTripCost)
+              .min()
+              .orElse(0);
+    }
+    this.unassignedPenalty = penalty;
+    this.unusedRouteCost =
+        instance.unusedVehiclesAllowed()
+            ? 0
+            : initialSolutionHeuristic.createOneRedundantPath().getCost();
+  }
+
+  /** Limits the number of iterations of {@link #run()}, which otherwise runs until stopped. */
+  public void setMaxIterations(long maxIterations) {
+    this.maxIterations = maxIterations;
+  }
+
+  /** Makes {@link #run()} return after its current iteration; safe to call from any thread. */
+  public void stop() {
+    stopped = true;
+  }
+
+  /** Cost of the best complete solution found so far, Double.MAX_VALUE if there is none. */
+  public double getBestCost() {
+    List<Route> solution = bestSolution;
+    return solution.isEmpty()
+        ? Double.MAX_VALUE
+        : solution.stream().mapToInt(Route::getCost).sum();
+  }
+
+  /** Routes of the best complete solution found so far, empty if there is none. */
+  public List<Route> getBestSolution() {
+    return bestSolution;
+  }
+
+  /** Returns the routes of the improving solutions published since the last call. */
+  public List<Route> pollColumns() {
+    List<Route> ret = new ArrayList<>();
+    for (Route route = columns.poll(); route != null; route = columns.poll()) {
+      ret.add(route);
+    }
+    return ret;
+  }
+
+  public long getNumberOfIterations() {
+    return numberOfIterations;
+  }
+
+  @Override
+  public void run() {
+    Solution current = createInitialSolution();
+    Solution best = current.copy();
+    publish(best);
+    double temperature =
+        INITIAL_ACCEPTED_WORSENING * current.getObjective() / Math.log(2) + 1e-9;
+    while (!stopped && numberOfIterations < maxIterations) {
+      numberOfIterations++;
+      int destroy = select(destroyWeights);
+      int repair = select(repairWeights);
+      Solution candidate = current.copy();
+      DestroyOperator.values()[destroy].apply(this, candidate, getNumberToDestroy());
+      candidate.removeUnusedNodes();
+      RepairOperator.values()[repair].apply(this, candidate);
+
+      double score = 0;
+      double delta = candidate.getObjective() - current.getObjective();
+      if (candidate.getObjective() < best.getObjective()) {
+        best = candidate.copy();
+        publish(best);
+        score = NEW_BEST_SCORE;
+      } else if (delta < 0) {
+        score = IMPROVEMENT_SCORE;
+      } else if (random.nextDouble() < Math.exp(-delta / temperature)) {
+        score = ACCEPTED_SCORE;
+      }
+      if (score > 0) {
+        current = candidate;
+      }
+      destroyScores[destroy] += score;
+      repairScores[repair] += score;
+      destroyUses[destroy]++;
+      repairUses[repair]++;
+      temperature *= COOLING_RATE;
+      if (numberOfIterations % SEGMENT_LENGTH == 0) {
+        updateWeights(destroyWeights, destroyScores, destroyUses);
+        updateWeights(repairWeights, repairScores, repairUses);
+      }
+    }
+  }
+
+  private int getRoundTripCost(int node) {
+    return instance.getEdgeWeight(instance.getDepot(), node)
+        + instance.getEdgeWeight(node, instance.getDepot());
+  }
+
+  /** Symmetric distance between two nodes, 0 if they are the same node. */
+  private int getDistance(int i, int j) {
+    return i == j ? 0 : instance.getEdgeWeight(i, j) + instance.getEdgeWeight(j, i);
+  }
+
+  private int getNumberToDestroy() {
+    int customers = instance.getNumberOfCustomers();
+    int max = Math.max(1, (int) Math.ceil(MAX_DESTROYED_FRACTION * customers));
+    return 1 + random.nextInt(max);
+  }
+
+  private int select(double[] weights) {
+    double total = Arrays.stream(weights).sum();
+    double value = random.nextDouble() * total;
+    for (int i = 0; i < weights.length; i++) {
+      value -= weights[i];
+      if (value <= 0) {
+        return i;
+      }
+    }
+    return weights.length - 1;
+  }
+
+  private static void updateWeights(double[] weights, double[] scores, int[] uses) {
+    for (int i = 0; i < weights.length; i++) {
+      if (uses[i] > 0) {
+        weights[i] = (1 - REACTION_FACTOR) * weights[i] + REACTION_FACTOR * scores[i] / uses[i];
+      }
+      // Keep every operator selectable
+      weights[i] = Math.max(weights[i], 0.1);
+      scores[i] = 0;
+      uses[i] = 0;
+    }
+  }
+
+  private Solution createInitialSolution() {
+    Solution solution = new Solution();
+    List<Route> routes = initialSolutionHeuristic.getSolution();
+    int r = 0;
+    for (Route route : routes) {
+      if (route.getCustomersServed().isEmpty() || r >= instance.getNumberOfVehicles()) {
+        continue;
+      }
+      List<Integer> nodes = route.getNodes().subList(0, route.getNodes().size() - 1);
+      for (int node : nodes) {
+        if (node != instance.getDepot() && !solution.sequences.get(r).contains(node)) {
+          solution.sequences.get(r).add(node);
+        }
+      }
+      for (int customer : route.getCustomersServed()) {
+        int servingNode = instance.getDepot();
+        for (int node : nodes) {
+          if (instance.getNeighbors(customer).contains(node)) {
+            servingNode = node;
+            break;
+          }
+        }
+        solution.assign(customer, r, servingNode);
+      }
+      r++;
+    }
+    solution.removeUnusedNodes();
+    RepairOperator.GREEDY.apply(this, solution);
+    return solution;
+  }
+
+  private void publish(Solution solution) {
+    if (solution.getNumberOfUnassigned() > 0) {
+      return;
+    }
+    List<Route> routes = solution.toRoutes();
+    bestSolution = routes;
+    for (Route route : routes) {
+      if (!route.getCustomersServed().isEmpty() && publishedColumns.add(route)) {
+        columns.add(route);
+      }
+    }
+  }
+
+  /** Cheapest way of serving a customer in a given route, or null if it does not fit. */
+  private Insertion getBestInsertion(Solution solution, int customer, int r) {
+    if (solution.loads[r] + instance.getDemand(customer) > instance.getCapacity()) {
+      return null;
+    }
+    List<Integer> sequence = solution.sequences.get(r);
+    int depot = instance.getDepot();
+    if (!sequence.isEmpty()) {
+      if (instance.getNeighbors(customer).contains(depot)) {
+        return new Insertion(customer, r, depot, -1, 0);
+      }
+      for (int node : sequence) {
+        if (instance.getNeighbors(customer).contains(node)) {
+          return new Insertion(customer, r, node, -1, 0);
+        }
+      }
+    }
+    Insertion best = null;
+    for (int node : instance.getNeighbors(customer)) {
+      if (node == depot) {
+        continue;
+      }
+      for (int position = 0; position <= sequence.size(); position++) {
+        int previous = position == 0 ? depot : sequence.get(position - 1);
+        int next = position == sequence.size() ? depot : sequence.get(position);
+        int cost =
+            instance.getEdgeWeight(previous, node)
+                + instance.getEdgeWeight(node, next)
+                - (previous == next ? 0 : instance.getEdgeWeight(previous, next));
+        if (best == null || cost < best.cost()) {
+          best = new Insertion(customer, r, node, position, cost);
+        }
+      }
+    }
+    return best;
+  }
+
+  private void repairGreedy(Solution solution) {
+    while (true) {
+      Insertion best = null;
+      for (int customer : solution.getUnassigned()) {
+        for (int r = 0; r < instance.getNumberOfVehicles(); r++) {
+          Insertion insertion = getBestInsertion(solution, customer, r);
+          if (insertion != null && (best == null || insertion.cost() < best.cost())) {
+            best = insertion;
+          }
+        }
+      }
+      if (best == null) {
+        return;
+      }
+      solution.apply(best);
+    }
+  }
+
+  private void repairRegret(Solution solution) {
+    while (true) {
+      Insertion chosen = null;
+      double chosenRegret = -1;
+      for (int customer : solution.getUnassigned()) {
+        Insertion best = null;
+        double secondBestCost = unassignedPenalty;
+        for (int r = 0; r < instance.getNumberOfVehicles(); r++) {
+          Insertion insertion = getBestInsertion(solution, customer, r);
+          if (insertion == null) {
+            continue;
+          }
+          if (best == null || insertion.cost() < best.cost()) {
+            if (best != null) {
+              secondBestCost = best.cost();
+            }
+            best = insertion;
+          } else {
+            secondBestCost = Math.min(secondBestCost, insertion.cost());
+          }
+        }
+        if (best != null && secondBestCost - best.cost() > chosenRegret) {
+          chosenRegret = secondBestCost - best.cost();
+          chosen = best;
+        }
+      }
+      if (chosen == null) {
+        return;
+      }
+      solution.apply(chosen);
+    }
+  }
+
+  private void destroyRandom(Solution solution, int count) {
+    List<Integer> assigned = solution.getAssigned();
+    for (int i = 0; i < count && !assigned.isEmpty(); i++) {
+      solution.unassign(assigned.remove(random.nextInt(assigned.size())));
+    }
+  }
+
+  private void destroyWorst(Solution solution, int count) {
+    List<Integer> assigned = solution.getAssigned();
+    // Removing a customer saves the detour to its node if nobody else in the route is served there
+    double[] savings = new double[instance.getNumberOfNodes()];
+    for (int customer : assigned) {
+      double noise = 0.8 + 0.4 * random.nextDouble();
+      savings[customer] = solution.getRemovalSaving(customer) * noise;
+    }
+    assigned.sort(Comparator.comparingDouble(customer -> -savings[customer]));
+    for (int i = 0; i < count && i < assigned.size(); i++) {
+      solution.unassign(assigned.get(i));
+    }
+  }
+
+  private void destroyRelated(Solution solution, int count) {
+    List<Integer> assigned = solution.getAssigned();
+    if (assigned.isEmpty()) {
+      return;
+    }
+    int seed = assigned.get(random.nextInt(assigned.size()));
+    int seedNode = solution.servedFrom[seed];
+    assigned.sort(
+        Comparator.comparingInt(customer -> getDistance(seedNode, solution.servedFrom[customer])));
+    for (int i = 0; i < count && i < assigned.size(); i++) {
+      solution.unassign(assigned.get(i));
+    }
+  }
+
+  /** Empties routes in random order, until count customers are unassigned. */
+  private void destroyRoute(Solution solution, int count) {
+    List<Integer> routes = new ArrayList<>();
+    for (int r = 0; r < instance.getNumberOfVehicles(); r++) {
+      routes.add(r);
+    }
+    Collections.shuffle(routes, random);
+    List<Integer> assigned = solution.getAssigned();
+    int unassigned = 0;
+    for (int r : routes) {
+      for (int customer : assigned) {
+        if (unassigned == count) {
+          return;
+        }
+        if (solution.routeOf[customer] == r) {
+          solution.unassign(customer);
+          unassigned++;
+        }
+      }
+    }
+  }
+
+  private enum DestroyOperator {
+    RANDOM {
+      @Override
+      void apply(AlnsHeuristic alns, Solution solution, int count) {
+        alns.destroyRandom(solution, count);
+      }
+    },
+    WORST {
+      @Override
+      void apply(AlnsHeuristic alns, Solution solution, int count) {
+        alns.destroyWorst(solution, count);
+      }
+    },
+    RELATED {
+      @Override
+      void apply(AlnsHeuristic alns, Solution solution, int count) {
+        alns.destroyRelated(solution, count);
+      }
+    },
+    ROUTE {
+      @Override
+      void apply(AlnsHeuristic alns, Solution solution, int count) {
+        alns.destroyRoute(solution, count);
+      }
+    };
+
+    abstract void apply(AlnsHeuristic alns, Solution solution, int count);
+  }
+
+  private enum RepairOperator {
+    GREEDY {
+      @Override
+      void apply(AlnsHeuristic alns, Solution solution) {
+        alns.repairGreedy(solution);
+      }
+    },
+    REGRET {
+      @Override
+      void apply(AlnsHeuristic alns, Solution solution) {
+        alns.repairRegret(solution);
+      }
+    };
+
+    abstract void apply(AlnsHeuristic alns, Solution solution);
+  }
+
+  /** @param position index in the sequence where node is inserted, -1 if it is already visited */
+  private record Insertion(int customer, int route, int node, int position, int cost) {}
+
+  /** Routes as node sequences without the depot, plus the route and node serving each customer. */
+  private class Solution {
+    private final List<List<Integer>> sequences;
+    private final int[] routeOf;
+    private final int[] servedFrom;
+    private final int[] loads;
+
+    private Solution() {
+      int N = instance.getNumberOfNodes();
+      this.sequences = new ArrayList<>();
+      for (int r = 0; r < instance.getNumberOfVehicles(); r++) {
+        sequences.add(new ArrayList<>());
+      }
+      this.routeOf = new int[N];
+      this.servedFrom = new int[N];
+      this.loads = new int[instance.getNumberOfVehicles()];
+      Arrays.fill(routeOf, -1);
+    }
+
+    private Solution copy() {
+      Solution copy = new Solution();
+      for (int r = 0; r < sequences.size(); r++) {
+        copy.sequences.get(r).addAll(sequences.get(r));
+      }
+      System.arraycopy(routeOf, 0, copy.routeOf, 0, routeOf.length);
+      System.arraycopy(servedFrom, 0, copy.servedFrom, 0, servedFrom.length);
+      System.arraycopy(loads, 0, copy.loads, 0, loads.length);
+      return copy;
+    }
+
+    private void assign(int customer, int r, int node) {
+      routeOf[customer] = r;
+      servedFrom[customer] = node;
+      loads[r] += instance.getDemand(customer);
+    }
+
+    private void unassign(int customer) {
+      loads[routeOf[customer]] -= instance.getDemand(customer);
+      routeOf[customer] = -1;
+    }
+
+    private void apply(Insertion insertion) {
+      if (insertion.position() >= 0) {
+        sequences.get(insertion.route()).add(insertion.position(), insertion.node());
+      }
+      assign(insertion.customer(), insertion.route(), insertion.node());
+    }
+
+    private List<Integer> getAssigned() {
+      return instance.getCustomers().stream()
+          .filter(customer -> routeOf[customer] >= 0)
+          .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    private List<Integer> getUnassigned() {
+      return instance.getCustomers().stream().filter(customer -> routeOf[customer] < 0).toList();
+    }
+
+    private int getNumberOfUnassigned() {
+      return (int) instance.getCustomers().stream().filter(c -> routeOf[c] < 0).count();
+    }
+
+    private boolean isServing(int r, int node, int excludedCustomer) {
+      for (int customer : instance.getCustomers()) {
+        if (customer != excludedCustomer
+            && routeOf[customer] == r
+            && servedFrom[customer] == node) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private double getRemovalSaving(int customer) {
+      int r = routeOf[customer];
+      int node = servedFrom[customer];
+      List<Integer> sequence = sequences.get(r);
+      int position = sequence.indexOf(node);
+      if (position < 0 || isServing(r, node, customer)) {
+        return 0;
+      }
+      int depot = instance.getDepot();
+      int previous = position == 0 ? depot : sequence.get(position - 1);
+      int next = position == sequence.size() - 1 ? depot : sequence.get(position + 1);
+      return instance.getEdgeWeight(previous, node)
+          + instance.getEdgeWeight(node, next)
+          - (previous == next ? 0 : instance.getEdgeWeight(previous, next));
+    }
+
+    /** Drops the nodes that serve no customer, keeping one node in routes that still serve some. */
+    private void removeUnusedNodes() {
+      for (int r = 0; r < sequences.size(); r++) {
+        final int route = r;
+        List<Integer> sequence = sequences.get(r);
+        boolean servesCustomers =
+            IntStream.range(0, routeOf.length).anyMatch(c -> routeOf[c] == route);
+        for (int i = sequence.size() - 1; i >= 0; i--) {
+          if (!isServing(r, sequence.get(i), -1) && (sequence.size() > 1 || !servesCustomers)) {
+            sequence.remove(i);
+          }
+        }
+      }
+    }
+
+    private int getCost() {
+      int depot = instance.getDepot();
+      int cost = 0;
+      for (List<Integer> sequence : sequences) {
+        int last = depot;
+        for (int node : sequence) {
+          cost += instance.getEdgeWeight(last, node);
+          last = node;
+        }
+        cost += sequence.isEmpty() ? unusedRouteCost : instance.getEdgeWeight(last, depot);
+      }
+      return cost;
+    }
+
+    private double getObjective() {
+      return getCost() + (double) unassignedPenalty * getNumberOfUnassigned();
+    }
+
+    private List<Route> toRoutes() {
+      int depot = instance.getDepot();
+      List<Route> routes = new ArrayList<>();
+      for (int r = 0; r < sequences.size(); r++) {
+        List<Integer> sequence = sequences.get(r);
+        if (sequence.isEmpty()) {
+          if (!instance.unusedVehiclesAllowed()) {
+            routes.add(initialSolutionHeuristic.createOneRedundantPath());
+          }
+          continue;
+        }
+        Route.Builder route = new Route.Builder(instance);
+        int last = depot;
+        for (int node : sequence) {
+          route.addNode(node, instance.getEdgeWeight(last, node));
+          last = node;
+        }
+        route.addNode(depot, instance.getEdgeWeight(last, depot));
+        for (int customer : instance.getCustomers()) {
+          if (routeOf[customer] == r) {
+            route.addCustomers(List.of(customer));
+          }
+        }
+        routes.add(route.build());
+      }
+      return routes;
+    }
+  }
+}
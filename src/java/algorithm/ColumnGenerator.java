@@ -2,6 +2,7 @@ package algorithm;
 
 import algorithm.pricing.PricingProblem;
 import algorithm.pricing.PricingSolution;
+import commons.CancellationToken;
 import commons.Route;
 import commons.Instance;
 import commons.StarRoutingSolution;
@@ -9,6 +10,7 @@ import commons.Stopwatch;
 import commons.Utils;
 
 import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -23,6 +25,9 @@ public class ColumnGenerator {
     private int numberOfIterations;
     private boolean finishEarly;
     private double gapThreshold;
+    private final List<IterationListener> listeners;
+    private final List<IncumbentListener> incumbentListeners;
+    private CancellationToken cancellationToken;
 
     public ColumnGenerator(Instance instance, RestrictedMasterProblem rmp, PricingProblem pricingProblem,
                            InitialSolutionHeuristic initialSolutionHeuristic) {
@@ -35,10 +40,13 @@ public class ColumnGenerator {
         this.finishEarly = false;
         this.gapThreshold = 0;
         this.numberOfIterations = 0;
+        this.listeners = new ArrayList<>();
+        this.incumbentListeners = new ArrayList<>();
+        this.cancellationToken = CancellationToken.NONE;
     }
 
     private StarRoutingSolution buildSolution(Stopwatch stopwatch, double relaxationOptimal, RMPLinearSolution rmpSolution,
-                                              double deterministicTime, boolean integral) {
+                                              double deterministicTime, boolean integral, boolean boundMissing) {
         StarRoutingSolution solution;
         if (stopwatch.timedOut()) {
             if (relaxationOptimal == Double.MAX_VALUE) {
@@ -58,7 +66,11 @@ public class ColumnGenerator {
             } else {
                 solution = new StarRoutingSolution(StarRoutingSolution.Status.OPTIMAL, rmpIntegerSolution.getObjectiveValue(),
                         rmpIntegerSolution.getUsedPaths(), stopwatch.getElapsedTime());
-                solution.setLowerBound(relaxationOptimal);
+                if (!boundMissing) {
+                    solution.setLowerBound(relaxationOptimal);
+                }
+                notifyIncumbent(rmpIntegerSolution.getUsedPaths(), rmpIntegerSolution.getObjectiveValue(),
+                        boundMissing ? 0.0 : relaxationOptimal, Incumbent.Source.RMP_INTEGER, stopwatch);
             }
         } else {
             solution = new StarRoutingSolution(StarRoutingSolution.Status.FEASIBLE, relaxationOptimal, stopwatch.getElapsedTime(), false);
@@ -68,11 +80,17 @@ public class ColumnGenerator {
     }
 
     private StarRoutingSolution generateColumns(boolean integral, Duration timeout) {
-        Stopwatch   stopwatch         = new Stopwatch(timeout);
+        Stopwatch   stopwatch         = new Stopwatch(timeout, cancellationToken);
         List<Route> columnsToAdd      = initialSolutionHeuristic.run();
+        List<Route> initialSolution   = initialSolutionHeuristic.getSolution();
+        if (integral && !initialSolution.isEmpty()) {
+            notifyIncumbent(initialSolution, initialSolution.stream().mapToInt(Route::getCost).sum(), 0.0,
+                    Incumbent.Source.INITIAL_HEURISTIC, stopwatch);
+        }
         List<Route> allColumns        = new ArrayList<>();
         double      relaxationOptimal = Double.MAX_VALUE;
         double deterministicTime = 0.0;
+        boolean boundMissing = false;
         RMPLinearSolution rmpSolution;
         while (true) {
             numberOfIterations++;
@@ -87,23 +105,56 @@ public class ColumnGenerator {
             if (finishEarly) {
                 pricing.forceExactSolution();
             }
+            Instant pricingStart = Instant.now();
             PricingSolution pricingSolution = pricing.solve(rmpSolution, stopwatch.getRemainingTime());
             if (!pricingSolution.isFeasible() || stopwatch.timedOut()) {
                 break;
             }
             deterministicTime += pricingSolution.getDeterministicTime();
             columnsToAdd = pricingSolution.getNegativeReducedCostPaths();
+            notifyIteration(rmpSolution, pricingSolution, Utils.getElapsedTime(pricingStart));
             if (columnsToAdd.isEmpty()) {
+                // A pricing without a bound may have missed columns, so the relaxation is not a bound
+                boundMissing = !pricingSolution.isObjectiveBound();
                 break;
             }
-            if (finishEarly && computeGapToLowerBound(pricingSolution, relaxationOptimal) < gapThreshold) {
+            if (finishEarly && pricingSolution.isObjectiveBound()
+                    && computeGapToLowerBound(pricingSolution, relaxationOptimal) < gapThreshold) {
                 break;
             }
             if (applyRearrangeCustomersHeuristic) {
                 columnsToAdd.addAll(rearrangeCustomersHeuristic.run(allColumns, rmpSolution));
             }
         }
-        return buildSolution(stopwatch, relaxationOptimal, rmpSolution, deterministicTime, integral);
+        return buildSolution(stopwatch, relaxationOptimal, rmpSolution, deterministicTime, integral, boundMissing);
+    }
+
+    private void notifyIteration(RMPLinearSolution rmpSolution, PricingSolution pricingSolution,
+                                 Duration pricingTime) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        double lagrangianBound = Double.NaN;
+        if (pricingSolution.isObjectiveBound()) {
+            lagrangianBound = rmpSolution.getObjectiveValue()
+                    + instance.getNumberOfVehicles() * Math.min(0.0, pricingSolution.getObjectiveValue());
+        }
+        IterationRecord record = new IterationRecord(0, numberOfIterations, rmp.getLastBuildTime(),
+                rmp.getLastSolveTime(), pricingTime, pricingSolution.getStatistics(),
+                pricingSolution.getNegativeReducedCostPaths().size(), rmpSolution.getObjectiveValue(),
+                lagrangianBound);
+        for (IterationListener listener : listeners) {
+            listener.onIteration(record);
+        }
+    }
+
+    private void notifyIncumbent(List<Route> routes, double objectiveValue, double lowerBound,
+                                 Incumbent.Source source, Stopwatch stopwatch) {
+        Incumbent incumbent = new Incumbent(List.copyOf(routes), objectiveValue, Math.min(lowerBound, objectiveValue),
+                source, stopwatch.getElapsedTime());
+        for (IncumbentListener listener : incumbentListeners) {
+            listener.onIncumbent(incumbent);
+        }
     }
 
     private double computeGapToLowerBound(PricingSolution pricingSolution, double relaxationOptimal) {
@@ -135,6 +186,28 @@ public class ColumnGenerator {
         this.gapThreshold = gapThreshold;
     }
 
+    /**
+     * Token that stops the solve, the RMP and the pricing when cancelled. A cancelled solve returns as if it had
+     * timed out, with the best solution found so far.
+     */
+    public void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+        rmp.setCancellationToken(cancellationToken);
+        pricing.setCancellationToken(cancellationToken);
+    }
+
+    public void addIterationListener(IterationListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Reports the solution of the initial heuristic as soon as it is built and the integer RMP solution once the
+     * relaxation converges, with the relaxation as its lower bound. Only {@link #solve} reports incumbents.
+     */
+    public void addIncumbentListener(IncumbentListener listener) {
+        incumbentListeners.add(listener);
+    }
+
     public int getNumberOfIterations() {
         return numberOfIterations;
     }
@@ -0,0 +1,141 @@
+package algorithm;
+
+import algorithm.branching.Branch;
+import algorithm.branching.BranchOnVisitFlow;
+import commons.Route;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Columns of an RMP indexed by the customers they serve and by the (arc, customer) pairs they
+ * contain, so that branches mask and restore only the columns they disallow. Each column counts
+ * the active branches that disallow it, and is active while that count is 0.
+ *
+ * <p>Branches are pushed and popped in stack order. A branch on visit flow looks up the columns it
+ * disallows in the indexes; any other kind of branch is checked against every column. Columns added
+ * while branches are active are checked against each of them once.
+ */
+public class ColumnIndex {
+
+  private final List<Route> columns;
+  private final List<Integer> maskCounts;
+  private final Map<Integer, List<Integer>> columnsByCustomer;
+  private final Map<Long, List<Integer>> columnsByArcAndCustomer;
+  private final Deque<Branch> branches;
+  private final Deque<List<Integer>> maskedByBranch;
+
+  public ColumnIndex() {
+    this.columns = new ArrayList<>();
+    this.maskCounts = new ArrayList<>();
+    this.columnsByCustomer = new HashMap<>();
+    this.columnsByArcAndCustomer = new HashMap<>();
+    this.branches = new ArrayDeque<>();
+    this.maskedByBranch = new ArrayDeque<>();
+  }
+
+  private static long getKey(int start, int end, int customer) {
+    return ((long) start << 42) | ((long) end << 21) | customer;
+  }
+
+  public void add(Route column) {
+    int id = columns.size();
+    columns.add(column);
+    maskCounts.add(0);
+    for (int customer : column.getCustomersServed()) {
+      columnsByCustomer.computeIfAbsent(customer, c -> new ArrayList<>()).add(id);
+      // Same arcs as Route.containsEdge
+      for (int i = 0; i + 1 < column.getNumberOfNodes(); i++) {
+        columnsByArcAndCustomer
+            .computeIfAbsent(
+                getKey(column.getNode(i), column.getNode(i + 1), customer),
+                key -> new ArrayList<>())
+            .add(id);
+      }
+    }
+    // The deques iterate from the last branch pushed, in step
+    Iterator<List<Integer>> masked = maskedByBranch.iterator();
+    for (Branch branch : branches) {
+      List<Integer> maskedColumns = masked.next();
+      if (!branch.isCompatible(column)) {
+        mask(id, maskedColumns);
+      }
+    }
+  }
+
+  /** Masks the columns that branch disallows. */
+  public void push(Branch branch) {
+    List<Integer> maskedColumns = new ArrayList<>();
+    if (branch instanceof BranchOnVisitFlow visitFlow) {
+      int start = visitFlow.getEdge().getStart();
+      int end = visitFlow.getEdge().getEnd();
+      int customer = visitFlow.getCustomer();
+      if (visitFlow.isUpperBound() && visitFlow.getBound() == 0) {
+        List<Integer> disallowed =
+            columnsByArcAndCustomer.getOrDefault(getKey(start, end, customer), List.of());
+        for (int id : disallowed) {
+          mask(id, maskedColumns);
+        }
+      } else if (visitFlow.isLowerBound() && visitFlow.getBound() == 1) {
+        for (int id : columnsByCustomer.getOrDefault(customer, List.of())) {
+          if (!columns.get(id).containsEdge(start, end)) {
+            mask(id, maskedColumns);
+          }
+        }
+      }
+    } else {
+      for (int id = 0; id < columns.size(); id++) {
+        if (!branch.isCompatible(columns.get(id))) {
+          mask(id, maskedColumns);
+        }
+      }
+    }
+    branches.addFirst(branch);
+    maskedByBranch.addFirst(maskedColumns);
+  }
+
+  /** Restores the columns masked by the last branch pushed. */
+  public void pop() {
+    branches.removeFirst();
+    for (int id : maskedByBranch.removeFirst()) {
+      maskCounts.set(id, maskCounts.get(id) - 1);
+    }
+  }
+
+  private void mask(int id, List<Integer> maskedColumns) {
+    maskCounts.set(id, maskCounts.get(id) + 1);
+    maskedColumns.add(id);
+  }
+
+  /** Columns compatible with every active branch, in the order they were added. */
+  public List<Route> getActiveColumns() {
+    List<Route> ret = new ArrayList<>();
+    for (int id = 0; id < columns.size(); id++) {
+      if (maskCounts.get(id) == 0) {
+        ret.add(columns.get(id));
+      }
+    }
+    return ret;
+  }
+
+  /** Ids of the columns returned by {@link #getActiveColumns()}. */
+  public BitSet getActiveIds() {
+    BitSet ret = new BitSet(columns.size());
+    for (int id = 0; id < columns.size(); id++) {
+      if (maskCounts.get(id) == 0) {
+        ret.set(id);
+      }
+    }
+    return ret;
+  }
+
+  /** Active branches, from the first pushed to the last. */
+  public Iterable<Branch> getBranches() {
+    return branches::descendingIterator;
+  }
+}
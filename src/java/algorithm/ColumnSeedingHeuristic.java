@@ -0,0 +1,276 @@
+package algorithm;
+
+import commons.Instance;
+import commons.Route;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Builds a pool of initial columns from many randomized Clarke-Wright savings and sweep
+ * constructions, run in parallel. Each construction first picks the nodes where customers are
+ * served, greedily covering the customers with the nodes that reach the most of them per unit of
+ * round trip cost, and then routes those stops. Customers that can be served from the depot are
+ * added to any route with spare capacity, since every route ends there.
+ *
+ * <p>There are no coordinates in the instances, so the sweep orders the stops with a randomized
+ * nearest neighbour tour instead of by polar angle, and splits it by capacity. Constructions are
+ * seeded by their index, so the pool is the same on every run.
+ */
+public class ColumnSeedingHeuristic {
+
+  private static final double NOISE = 0.2;
+  private static final int BATCH_SIZE = 64;
+  private static final int MAX_CONSTRUCTIONS_PER_COLUMN = 4;
+
+  private final Instance instance;
+  private final int poolSize;
+
+  public ColumnSeedingHeuristic(Instance instance, int poolSize) {
+    this.instance = instance;
+    this.poolSize = poolSize;
+  }
+
+  /** Returns up to poolSize distinct columns and the cheapest construction that fits the fleet. */
+  public Result run() {
+    Set<Route> columns = new LinkedHashSet<>();
+    List<Route> bestSolution = List.of();
+    int bestCost = Integer.MAX_VALUE;
+    int maxConstructions = MAX_CONSTRUCTIONS_PER_COLUMN * poolSize;
+    int first = 0;
+    boolean improved = true;
+    // Small instances run out of distinct routes long before the pool is full
+    while (columns.size() < poolSize && first < maxConstructions && improved) {
+      int last = Math.min(first + BATCH_SIZE, maxConstructions);
+      List<List<Route>> solutions =
+          IntStream.range(first, last).parallel().mapToObj(this::construct).toList();
+      int previousSize = columns.size();
+      for (List<Route> solution : solutions) {
+        int cost = solution.stream().mapToInt(Route::getCost).sum();
+        if (solution.size() <= instance.getNumberOfVehicles() && cost < bestCost) {
+          bestCost = cost;
+          bestSolution = solution;
+        }
+        for (Route route : solution) {
+          if (columns.size() < poolSize) {
+            columns.add(route);
+          }
+        }
+      }
+      improved = columns.size() > previousSize;
+      first = last;
+    }
+    return new Result(List.copyOf(columns), bestSolution);
+  }
+
+  private List<Route> construct(int seed) {
+    Random random = new Random(seed);
+    List<List<Stop>> routes =
+        seed % 2 == 0 ? savings(createStops(random), random) : sweep(createStops(random), random);
+    addDepotCustomers(routes);
+    return routes.stream().map(this::toRoute).toList();
+  }
+
+  private int getRoundTripCost(int node) {
+    int depot = instance.getDepot();
+    return instance.getEdgeWeight(depot, node) + instance.getEdgeWeight(node, depot);
+  }
+
+  private List<Stop> createStops(Random random) {
+    int depot = instance.getDepot();
+    BitSet pending = new BitSet(instance.getNumberOfNodes());
+    for (int customer : instance.getCustomers()) {
+      if (!instance.getNeighbors(customer).contains(depot)) {
+        pending.set(customer);
+      }
+    }
+    List<Stop> stops = new ArrayList<>();
+    while (!pending.isEmpty()) {
+      int bestNode = -1;
+      double bestScore = 0;
+      for (int node = 0; node < instance.getNumberOfNodes(); node++) {
+        if (node == depot) {
+          continue;
+        }
+        int covered = 0;
+        for (int customer : instance.getReverseNeighborhood(node)) {
+          if (pending.get(customer)) {
+            covered++;
+          }
+        }
+        double score =
+            covered * (1 + NOISE * random.nextDouble()) / (getRoundTripCost(node) + 1.0);
+        if (score > bestScore) {
+          bestScore = score;
+          bestNode = node;
+        }
+      }
+      if (bestNode < 0) {
+        throw new IllegalStateException("Some customers cannot be served from any node");
+      }
+      Stop stop = new Stop(bestNode);
+      for (int customer : instance.getReverseNeighborhood(bestNode)) {
+        int demand = instance.getDemand(customer);
+        if (pending.get(customer)
+            && (stop.demand == 0 || stop.demand + demand <= instance.getCapacity())) {
+          stop.add(customer, demand);
+          pending.clear(customer);
+        }
+      }
+      stops.add(stop);
+    }
+    return stops;
+  }
+
+  private static int getDemand(List<Stop> route) {
+    return route.stream().mapToInt(stop -> stop.demand).sum();
+  }
+
+  private List<List<Stop>> savings(List<Stop> stops, Random random) {
+    int depot = instance.getDepot();
+    int n = stops.size();
+    // Randomizing the shape parameter and the savings themselves diversifies the constructions
+    double lambda = 0.6 + 0.8 * random.nextDouble();
+    List<Saving> savings = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      for (int j = 0; j < n; j++) {
+        int from = stops.get(i).node;
+        int to = stops.get(j).node;
+        if (from == to) {
+          continue;
+        }
+        double saving =
+            instance.getEdgeWeight(from, depot)
+                + instance.getEdgeWeight(depot, to)
+                - lambda * instance.getEdgeWeight(from, to);
+        saving *= 1 + NOISE * (random.nextDouble() - 0.5);
+        if (saving > 0) {
+          savings.add(new Saving(i, j, saving));
+        }
+      }
+    }
+    savings.sort(Comparator.comparingDouble(Saving::value).reversed());
+
+    List<List<Stop>> routeOf = new ArrayList<>();
+    for (Stop stop : stops) {
+      List<Stop> route = new ArrayList<>();
+      route.add(stop);
+      routeOf.add(route);
+    }
+    for (Saving saving : savings) {
+      List<Stop> first = routeOf.get(saving.from());
+      List<Stop> second = routeOf.get(saving.to());
+      if (first == second
+          || first.getLast() != stops.get(saving.from())
+          || second.getFirst() != stops.get(saving.to())
+          || getDemand(first) + getDemand(second) > instance.getCapacity()) {
+        continue;
+      }
+      first.addAll(second);
+      for (Stop stop : second) {
+        routeOf.set(stops.indexOf(stop), first);
+      }
+    }
+    List<List<Stop>> routes = new ArrayList<>();
+    for (List<Stop> route : routeOf) {
+      // Every merged route is referenced by all of its stops
+      if (routes.stream().noneMatch(other -> other == route)) {
+        routes.add(route);
+      }
+    }
+    return routes;
+  }
+
+  private List<List<Stop>> sweep(List<Stop> stops, Random random) {
+    List<Stop> remaining = new ArrayList<>(stops);
+    List<List<Stop>> routes = new ArrayList<>();
+    List<Stop> route = new ArrayList<>();
+    int current = instance.getDepot();
+    while (!remaining.isEmpty()) {
+      // Pick one of the two nearest stops, to diversify the tours
+      final int from = current;
+      remaining.sort(Comparator.comparingInt(stop -> instance.getEdgeWeight(from, stop.node)));
+      Stop next = remaining.remove(remaining.size() > 1 && random.nextDouble() < NOISE ? 1 : 0);
+      if (!route.isEmpty() && getDemand(route) + next.demand > instance.getCapacity()) {
+        routes.add(route);
+        route = new ArrayList<>();
+      }
+      route.add(next);
+      current = next.node;
+    }
+    if (!route.isEmpty()) {
+      routes.add(route);
+    }
+    return routes;
+  }
+
+  private void addDepotCustomers(List<List<Stop>> routes) {
+    int depot = instance.getDepot();
+    for (int customer : instance.getCustomers()) {
+      if (!instance.getNeighbors(customer).contains(depot)) {
+        continue;
+      }
+      int demand = instance.getDemand(customer);
+      List<Stop> target =
+          routes.stream()
+              .filter(route -> getDemand(route) + demand <= instance.getCapacity())
+              .findFirst()
+              .orElse(null);
+      if (target == null) {
+        // No route has room, so the customer gets a route of its own to itself
+        target = new ArrayList<>();
+        target.add(new Stop(customer));
+        routes.add(target);
+      }
+      target.getLast().add(customer, demand);
+    }
+  }
+
+  private Route toRoute(List<Stop> stops) {
+    int depot = instance.getDepot();
+    Route.Builder route = new Route.Builder(instance);
+    BitSet visited = new BitSet(instance.getNumberOfNodes());
+    int lastNode = depot;
+    for (Stop stop : stops) {
+      // A node split into several stops is visited once, serving all of them
+      if (!visited.get(stop.node)) {
+        route.addNode(stop.node, instance.getEdgeWeight(lastNode, stop.node));
+        visited.set(stop.node);
+        lastNode = stop.node;
+      }
+      route.addCustomers(stop.customers);
+    }
+    route.addNode(depot, instance.getEdgeWeight(lastNode, depot));
+    return route.build();
+  }
+
+  /**
+   * @param columns distinct routes of all the constructions
+   * @param bestSolution cheapest construction with at most one route per vehicle, empty if none
+   */
+  public record Result(List<Route> columns, List<Route> bestSolution) {}
+
+  private record Saving(int from, int to, double value) {}
+
+  private static class Stop {
+    private final int node;
+    private final List<Integer> customers;
+    private int demand;
+
+    private Stop(int node) {
+      this.node = node;
+      this.customers = new ArrayList<>();
+      this.demand = 0;
+    }
+
+    private void add(int customer, int customerDemand) {
+      customers.add(customer);
+      demand += customerDemand;
+    }
+  }
+}
@@ -1,38 +1,50 @@
 package algorithm;
 
+import commons.CplexThreads;
+import commons.Graph;
 import commons.Route;
 import commons.Instance;
 import commons.StarRoutingSolution;
 import commons.Utils;
 import ilog.concert.IloException;
-import ilog.concert.IloIntVar;
 import ilog.concert.IloLinearNumExpr;
-import ilog.concert.IloNumExpr;
 import ilog.concert.IloNumVar;
 import ilog.cplex.IloCplex;
 
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+/**
+ * Vehicle-indexed arc formulation with MTZ subtour elimination. Only the arcs of the graph get
+ * variables, and the symmetry between the identical vehicles is broken by ordering the routes by
+ * the first customer they serve and, when vehicles may stay unused, by using them in order.
+ */
 public class CompactModel {
 
   private final Instance instance;
   private IloCplex cplex;
-  private IloNumVar[][][] x;
+  private boolean exportModel;
+  private List<Graph.Edge> arcs;
+  private int[][] outgoingArcs;
+  private int[][] incomingArcs;
+  private IloNumVar[][] x;
   private IloNumVar[][] y;
   private IloNumVar[][] u;
 
   public CompactModel(Instance instance) {
     this.instance = instance;
+    this.exportModel = false;
   }
 
   public static void main(String[] args) {
     Instance instance = new Instance("instance_rptd_path", true);
     CompactModel starRoutingModel = new CompactModel(instance);
+    starRoutingModel.exportModel();
     starRoutingModel.solve();
   }
 
@@ -42,7 +54,9 @@ public class CompactModel {
       buildModel(integral, timeout);
       cplex.solve();
       Duration elapsedTime = Utils.getElapsedTime(start);
-      cplex.writeSolution("src/resources/star_routing_model.sol");
+      if (exportModel) {
+        cplex.writeSolution(Utils.RESOURCES_PATH + "star_routing_model.sol");
+      }
       StarRoutingSolution.Status status =
           IloCplex.Status.Optimal.equals(cplex.getStatus())
               ? StarRoutingSolution.Status.OPTIMAL
@@ -79,43 +93,86 @@ public class CompactModel {
     return solve(false, timeout);
   }
 
+  /** Writes the model and its solution to the resources directory on every solve, for debugging. */
+  public void exportModel() {
+    this.exportModel = true;
+  }
+
+  private void createArcs() {
+    int N = instance.getNumberOfNodes();
+    arcs = instance.getGraph().getEdges().stream().filter(e -> e.getStart() != e.getEnd()).toList();
+    int[] outDegree = new int[N];
+    int[] inDegree = new int[N];
+    for (Graph.Edge arc : arcs) {
+      outDegree[arc.getStart()]++;
+      inDegree[arc.getEnd()]++;
+    }
+    outgoingArcs = new int[N][];
+    incomingArcs = new int[N][];
+    for (int i = 0; i < N; i++) {
+      outgoingArcs[i] = new int[outDegree[i]];
+      incomingArcs[i] = new int[inDegree[i]];
+    }
+    Arrays.fill(outDegree, 0);
+    Arrays.fill(inDegree, 0);
+    for (int a = 0; a < arcs.size(); a++) {
+      Graph.Edge arc = arcs.get(a);
+      outgoingArcs[arc.getStart()][outDegree[arc.getStart()]++] = a;
+      incomingArcs[arc.getEnd()][inDegree[arc.getEnd()]++] = a;
+    }
+  }
+
+  private IloNumVar[] createVariableArray(boolean integral, int lb, int ub, String[] names)
+      throws IloException {
+    if (!integral) {
+      return cplex.numVarArray(names.length, lb, ub, names);
+    }
+    return ub == 1
+        ? cplex.boolVarArray(names.length, names)
+        : cplex.intVarArray(names.length, lb, ub, names);
+  }
+
   private void createVariables(boolean integral) throws IloException {
     int N = instance.getNumberOfNodes();
     int K = instance.getNumberOfVehicles();
     int S = instance.getNumberOfCustomers();
-    x = new IloIntVar[N][N][K];
-    for (int i = 0; i < N; i++) {
-      for (int j = 0; j < N; j++) {
-        for (int k = 0; k < K; k++) {
-          x[i][j][k] =
-              integral
-                  ? cplex.boolVar("x_" + i + "_" + j + "_" + k)
-                  : cplex.numVar(0, 1, "x_" + i + "_" + j + "_" + k);
-        }
+    x = new IloNumVar[K][];
+    for (int k = 0; k < K; k++) {
+      String[] names = new String[arcs.size()];
+      for (int a = 0; a < arcs.size(); a++) {
+        names[a] = "x_" + arcs.get(a).getStart() + "_" + arcs.get(a).getEnd() + "_" + k;
       }
+      x[k] = createVariableArray(integral, 0, 1, names);
     }
-    y = new IloIntVar[S][K];
+    // Sorting the routes by the first customer they serve, customer s is served by one of the first
+    // s + 1 vehicles, so the later vehicles get no variable for it
+    y = new IloNumVar[S][];
     for (int s = 0; s < S; s++) {
-      for (int k = 0; k < K; k++) {
-        y[s][k] =
-            integral ? cplex.boolVar("y_" + s + "_" + k) : cplex.numVar(0, 1, "y_" + s + "_" + k);
+      String[] names = new String[Math.min(K, s + 1)];
+      for (int k = 0; k < names.length; k++) {
+        names[k] = "y_" + s + "_" + k;
       }
+      y[s] = createVariableArray(integral, 0, 1, names);
     }
-    u = new IloIntVar[N][K];
-    for (int i = 0; i < N; i++) {
-      for (int k = 0; k < K; k++) {
-        u[i][k] =
-            integral
-                ? cplex.intVar(1, N - 1, "u_" + i + "_" + k)
-                : cplex.numVar(1, N - 1, "u_" + i + "_" + k);
+    u = new IloNumVar[K][];
+    for (int k = 0; k < K; k++) {
+      String[] names = new String[N];
+      for (int i = 0; i < N; i++) {
+        names[i] = "u_" + i + "_" + k;
       }
+      u[k] = createVariableArray(integral, 1, N - 1, names);
     }
+  }
 
-    for (int i = 0; i < instance.getNumberOfNodes(); i++) {
-      for (int k = 0; k < instance.getNumberOfVehicles(); k++) {
-        cplex.addEq(x[i][i][k], 0);
-      }
+  private void addArcTerms(IloLinearNumExpr expr, int[] arcIndices, int k, double coefficient)
+      throws IloException {
+    IloNumVar[] variables = new IloNumVar[arcIndices.length];
+    double[] coefficients = new double[arcIndices.length];
+    for (int a = 0; a < arcIndices.length; a++) {
+      variables[a] = x[k][arcIndices[a]];
+      coefficients[a] = coefficient;
     }
+    expr.addTerms(variables, coefficients);
   }
 
   private void createFlowConstraints() throws IloException {
@@ -124,13 +181,10 @@ public class CompactModel {
     int K = instance.getNumberOfVehicles();
     for (int i = 0; i < N; i++) {
       for (int k = 0; k < K; k++) {
-        IloLinearNumExpr inFlow = cplex.linearNumExpr();
-        IloLinearNumExpr outFlow = cplex.linearNumExpr();
-        for (int j = 0; j < N; j++) {
-          inFlow.addTerm(x[i][j][k], 1);
-          outFlow.addTerm(x[j][i][k], 1);
-        }
-        cplex.addEq(inFlow, outFlow, "flow_" + i + "_" + k);
+        IloLinearNumExpr flow = cplex.linearNumExpr();
+        addArcTerms(flow, incomingArcs[i], k, 1);
+        addArcTerms(flow, outgoingArcs[i], k, -1);
+        cplex.addEq(flow, 0, "flow_" + i + "_" + k);
       }
     }
   }
@@ -139,25 +193,32 @@ public class CompactModel {
     // Every customer is served by exactly one vehicle
     int S = instance.getNumberOfCustomers();
     for (int s = 0; s < S; s++) {
-      IloNumExpr numberOfVehiclesServingS = Utils.getRowSum(cplex, y, s);
+      IloLinearNumExpr numberOfVehiclesServingS = cplex.linearNumExpr();
+      double[] ones = new double[y[s].length];
+      Arrays.fill(ones, 1);
+      numberOfVehiclesServingS.addTerms(y[s], ones);
       cplex.addEq(numberOfVehiclesServingS, 1, "serving_" + s);
     }
   }
 
   private void createDepotConstraints() throws IloException {
     // Every vehicle leaves the depot
-    int N = instance.getNumberOfNodes();
     int K = instance.getNumberOfVehicles();
+    int depot = instance.getDepot();
+    IloLinearNumExpr previousOutgoingEdgesFromDepot = null;
     for (int k = 0; k < K; k++) {
       IloLinearNumExpr outgoingEdgesFromDepot = cplex.linearNumExpr();
-      for (int j = 0; j < N; j++) {
-        outgoingEdgesFromDepot.addTerm(x[instance.getDepot()][j][k], 1);
-      }
+      addArcTerms(outgoingEdgesFromDepot, outgoingArcs[depot], k, 1);
       if (instance.unusedVehiclesAllowed()) {
         cplex.addLe(outgoingEdgesFromDepot, 1, "depot_" + k);
+        // Symmetry breaking: vehicle k is only used if vehicle k - 1 is
+        if (previousOutgoingEdgesFromDepot != null) {
+          cplex.addLe(outgoingEdgesFromDepot, previousOutgoingEdgesFromDepot, "order_" + k);
+        }
       } else {
         cplex.addEq(outgoingEdgesFromDepot, 1, "depot_" + k);
       }
+      previousOutgoingEdgesFromDepot = outgoingEdgesFromDepot;
     }
   }
 
@@ -167,7 +228,7 @@ public class CompactModel {
     int S = instance.getNumberOfCustomers();
     for (int k = 0; k < K; k++) {
       IloLinearNumExpr totalDemand = cplex.linearNumExpr();
-      for (int s = 0; s < S; s++) {
+      for (int s = k; s < S; s++) {
         totalDemand.addTerm(y[s][k], instance.getDemand(instance.getCustomer(s)));
       }
       cplex.addLe(totalDemand, instance.getCapacity(), "capacity_" + k);
@@ -175,62 +236,62 @@ public class CompactModel {
   }
 
   private void createMTZConstraints() throws IloException {
-    // Subtour Elimination Constraints (SEC)
+    // Subtour Elimination Constraints (SEC), one per arc between two nodes other than the depot
     int N = instance.getNumberOfNodes();
     int K = instance.getNumberOfVehicles();
-    for (int i = 0; i < N; i++) {
-      for (int j = 0; j < N; j++) {
-        for (int k = 0; k < K; k++) {
-          if (i != instance.getDepot() && j != instance.getDepot() && j != i) {
-            IloNumExpr mtz =
-                cplex.sum(u[i][k], cplex.negative(u[j][k]), cplex.prod(x[i][j][k], N - 1));
-            cplex.addLe(mtz, N - 2, "mtz_" + i + "_" + j + "_" + k);
-          }
-        }
+    int depot = instance.getDepot();
+    for (int a = 0; a < arcs.size(); a++) {
+      int i = arcs.get(a).getStart();
+      int j = arcs.get(a).getEnd();
+      if (i == depot || j == depot) {
+        continue;
+      }
+      for (int k = 0; k < K; k++) {
+        IloLinearNumExpr mtz = cplex.linearNumExpr();
+        mtz.addTerm(u[k][i], 1);
+        mtz.addTerm(u[k][j], -1);
+        mtz.addTerm(x[k][a], N - 1);
+        cplex.addLe(mtz, N - 2, "mtz_" + i + "_" + j + "_" + k);
       }
     }
   }
 
   private void createVisitConstraints() throws IloException {
     // A vehicle can only serve visited customers
-    int N = instance.getNumberOfNodes();
-    int K = instance.getNumberOfVehicles();
     int S = instance.getNumberOfCustomers();
     for (int s = 0; s < S; s++) {
       int currentCustomer = instance.getCustomer(s);
-      for (int k = 0; k < K; k++) {
+      for (int k = 0; k < y[s].length; k++) {
         IloLinearNumExpr timesInNeighborhood = cplex.linearNumExpr();
-        for (int i = 0; i < N; i++) {
-          for (int neighbor : instance.getNeighbors(currentCustomer)) {
-            timesInNeighborhood.addTerm(x[i][neighbor][k], 1);
-          }
+        for (int neighbor : instance.getNeighbors(currentCustomer)) {
+          addArcTerms(timesInNeighborhood, incomingArcs[neighbor], k, 1);
         }
-        cplex.addLe(y[s][k], timesInNeighborhood, "visit_" + s + "_" + k);
+        timesInNeighborhood.addTerm(y[s][k], -1);
+        cplex.addGe(timesInNeighborhood, 0, "visit_" + s + "_" + k);
       }
     }
   }
 
   private void createObjective() throws IloException {
-    int N = instance.getNumberOfNodes();
     int K = instance.getNumberOfVehicles();
+    double[] weights = new double[arcs.size()];
+    for (int a = 0; a < arcs.size(); a++) {
+      weights[a] = arcs.get(a).getWeight();
+    }
     IloLinearNumExpr objective = cplex.linearNumExpr();
-    for (int i = 0; i < N; i++) {
-      for (int j = 0; j < N; j++) {
-        if (i != j) {
-          for (int k = 0; k < K; k++) {
-            objective.addTerm(x[i][j][k], instance.getEdgeWeight(i, j));
-          }
-        }
-      }
+    for (int k = 0; k < K; k++) {
+      objective.addTerms(x[k], weights);
     }
     cplex.addMinimize(objective);
   }
 
   private void buildModel(boolean integral, Duration timeout) throws IloException {
     cplex = new IloCplex();
+    CplexThreads.apply(cplex);
     cplex.setParam(IloCplex.Param.Output.WriteLevel, IloCplex.WriteLevel.NonzeroVars);
-    cplex.setParam(IloCplex.Param.TimeLimit, timeout.getSeconds());
+    cplex.setParam(IloCplex.Param.TimeLimit, Utils.getCplexTimeLimit(timeout));
     cplex.setOut(null);
+    createArcs();
     createVariables(integral);
     createFlowConstraints();
     createServingConstraints();
@@ -239,13 +300,15 @@ public class CompactModel {
     createCapacityConstraints();
     createMTZConstraints();
     createObjective();
-    cplex.exportModel("src/resources/star_routing.lp");
+    if (exportModel) {
+      cplex.exportModel(Utils.RESOURCES_PATH + "star_routing.lp");
+    }
   }
 
   private int getNextNodeInPath(int from, int vehicle) throws IloException {
-    for (int i = 0; i < instance.getNumberOfNodes(); i++) {
-      if (Utils.getBoolValue(cplex, x[from][i][vehicle])) {
-        return i;
+    for (int a : outgoingArcs[from]) {
+      if (Utils.getBoolValue(cplex, x[vehicle][a])) {
+        return arcs.get(a).getEnd();
       }
     }
     throw new AssertionError(String.format("Path starting in %d has no end", from));
@@ -253,7 +316,7 @@ public class CompactModel {
 
   private Set<Integer> getVisitedCustomers(int vehicle) throws IloException {
     Set<Integer> visitedCustomers = new HashSet<>();
-    for (int s = 0; s < instance.getNumberOfCustomers(); s++) {
+    for (int s = vehicle; s < instance.getNumberOfCustomers(); s++) {
       if (Utils.getBoolValue(cplex, y[s][vehicle])) {
         visitedCustomers.add(instance.getCustomer(s));
       }
@@ -262,11 +325,10 @@ public class CompactModel {
   }
 
   private boolean isVehicleUsed(int k) throws IloException {
-    for (int i = 0; i < instance.getNumberOfNodes(); i++) {
-      for (int j = 0; j < instance.getNumberOfNodes(); j++) {
-        if (Utils.getBoolValue(cplex, x[i][j][k])) {
-          return true;
-        }
+    // Every route of a vehicle leaves the depot
+    for (int a : outgoingArcs[instance.getDepot()]) {
+      if (Utils.getBoolValue(cplex, x[k][a])) {
+        return true;
       }
     }
     return false;
@@ -276,7 +338,7 @@ public class CompactModel {
     List<Route> ret = new ArrayList<>();
     for (int k = 0; k < instance.getNumberOfVehicles(); k++) {
       if (isVehicleUsed(k)) {
-        Route path = new Route();
+        Route.Builder path = new Route.Builder(instance);
         int lastNode = instance.getDepot();
         int currentNode = getNextNodeInPath(lastNode, k);
         while (currentNode != instance.getDepot()) {
@@ -286,7 +348,7 @@ public class CompactModel {
         }
         path.addNode(instance.getDepot(), instance.getEdgeWeight(lastNode, currentNode));
         path.addCustomers(getVisitedCustomers(k));
-        ret.add(path);
+        ret.add(path.build());
       }
     }
     return ret;
@@ -1,5 +1,6 @@
 package algorithm;
 
+import commons.CplexThreads;
 import commons.Route;
 import commons.Instance;
 import commons.StarRoutingSolution;
@@ -8,15 +9,15 @@ import ilog.concert.IloException;
 import ilog.concert.IloIntExpr;
 import ilog.concert.IloIntVar;
 import ilog.concert.IloLinearIntExpr;
+import ilog.concert.IloRange;
 import ilog.cplex.IloCplex;
 
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 public class DFJCompactModel {
@@ -25,9 +26,12 @@ public class DFJCompactModel {
     private IloCplex cplex;
     private IloIntVar[][][] x;
     private IloIntVar[][] y;
+    private IloIntVar[][] arcVariables;
+    private final SubtourSeparator separator;
 
     public DFJCompactModel(Instance instance) {
         this.instance = instance;
+        this.separator = new SubtourSeparator(instance.getNumberOfNodes(), instance.getDepot());
     }
 
     public static void main(String[] args) {
@@ -71,6 +75,15 @@ public class DFJCompactModel {
                 y[s][k] = cplex.boolVar("y_" + s + "_" + k);
             }
         }
+        // Row-major copy of the arc variables of each vehicle, so callbacks read them in one call
+        arcVariables = new IloIntVar[K][N * N];
+        for (int i = 0; i < N; i++) {
+            for (int j = 0; j < N; j++) {
+                for (int k = 0; k < K; k++) {
+                    arcVariables[k][i * N + j] = x[i][j][k];
+                }
+            }
+        }
     }
 
     private void createFlowConstraints() throws IloException {
@@ -164,6 +177,7 @@ public class DFJCompactModel {
 
     private void buildModel() throws IloException {
         cplex = new IloCplex();
+        CplexThreads.apply(cplex);
         cplex.setParam(IloCplex.Param.Output.WriteLevel, IloCplex.WriteLevel.NonzeroVars);
         cplex.setOut(null);
         createVariables();
@@ -173,7 +187,9 @@ public class DFJCompactModel {
         createVisitConstraints();
         createCapacityConstraints();
         createObjective();
+        addPooledCuts();
         cplex.use(new DFJConstraintsCallback());
+        cplex.use(new DFJUserCutCallback());
     }
 
     private int getNextNodeInPath(int from, int vehicle) throws IloException {
@@ -210,9 +226,9 @@ public class DFJCompactModel {
         List<Route> ret = new ArrayList<>();
         for (int k = 0; k < instance.getNumberOfVehicles(); k++) {
             if (isVehicleUsed(k)) {
-                Route path        = new Route();
-                int   lastNode    = instance.getDepot();
-                int   currentNode = getNextNodeInPath(lastNode, k);
+                Route.Builder path        = new Route.Builder(instance);
+                int           lastNode    = instance.getDepot();
+                int           currentNode = getNextNodeInPath(lastNode, k);
                 while (currentNode != instance.getDepot()) {
                     path.addNode(currentNode, instance.getEdgeWeight(lastNode, currentNode));
                     lastNode = currentNode;
@@ -220,82 +236,66 @@ public class DFJCompactModel {
                 }
                 path.addNode(instance.getDepot(), instance.getEdgeWeight(lastNode, currentNode));
                 path.addCustomers(getVisitedCustomers(k));
-                ret.add(path);
+                ret.add(path.build());
             }
         }
         return ret;
     }
 
-    private class DFJConstraintsCallback extends IloCplex.LazyConstraintCallback {
-
-        private int[] connectedComponent;
-
-        public DFJConstraintsCallback() {
-            this.connectedComponent = new int[instance.getNumberOfNodes()];
-        }
-
-        @Override
-        protected void main() throws IloException {
-            for (int k = 0; k < instance.getNumberOfVehicles(); k++) {
-                computeConnectedComponents(k);
-                Map<Integer, Set<Integer>> forbiddenCycles = getForbiddenCycles();
-                for (int ccIndex : forbiddenCycles.keySet()) {
-                    addSubtourBreakingConstraint(forbiddenCycles.get(ccIndex), k);
+    private IloRange createSubtourBreakingConstraint(SubtourSeparator.Cut cut, int k) throws IloException {
+        BitSet nodes = cut.nodes();
+        IloLinearIntExpr enteringEdges = cplex.linearIntExpr();
+        for (int i = 0; i < instance.getNumberOfNodes(); i++) {
+            if (!nodes.get(i)) {
+                for (int j = nodes.nextSetBit(0); j >= 0; j = nodes.nextSetBit(j + 1)) {
+                    enteringEdges.addTerm(x[i][j][k], 1);
                 }
             }
         }
+        enteringEdges.addTerm(x[cut.tail()][cut.head()][k], -1);
+        return cplex.ge(enteringEdges, 0);
+    }
 
-        private int merge(int x) {
-            if (connectedComponent[x] == x) {
-                return x;
+    private void addPooledCuts() throws IloException {
+        // The vehicles are identical, so every cut found so far is valid for all of them
+        for (SubtourSeparator.Cut cut : separator.getPool()) {
+            for (int k = 0; k < instance.getNumberOfVehicles(); k++) {
+                cplex.add(createSubtourBreakingConstraint(cut, k));
             }
-            return merge(connectedComponent[x]);
         }
+    }
 
-        private void computeConnectedComponents(int vehicle) throws IloException {
-            int N = instance.getNumberOfNodes();
-            connectedComponent = new int[N];
-            for (int i = 0; i < N; i++) {
-                connectedComponent[i] = i;
-            }
-            for (int i = 0; i < N; i++) {
-                for (int j = 0; j < N; j++) {
-                    if (Math.round(this.getValue(x[i][j][vehicle])) == 1) {
-                        connectedComponent[merge(i)] = merge(j);
-                    }
-                }
-            }
-            for (int i = 0; i < N; i++) {
-                connectedComponent[i] = merge(connectedComponent[i]);
-            }
-        }
+    private class DFJConstraintsCallback extends IloCplex.LazyConstraintCallback {
 
-        private Map<Integer, Set<Integer>> getForbiddenCycles() {
-            Map<Integer, Set<Integer>> forbiddenCycles = new HashMap<>();
-            int onlyValidComponent = connectedComponent[instance.getDepot()];
-            for (int i = 0; i < instance.getNumberOfNodes(); i++) {
-                int ccNumber = connectedComponent[i];
-                if (ccNumber != i && ccNumber != onlyValidComponent && !forbiddenCycles.containsKey(ccNumber)) {
-                    forbiddenCycles.put(ccNumber, new HashSet<>());
-                    for (int j = 0; j < instance.getNumberOfNodes(); j++) {
-                        if (connectedComponent[j] == ccNumber) {
-                            forbiddenCycles.get(ccNumber).add(j);
-                        }
-                    }
+        @Override
+        protected void main() throws IloException {
+            for (int k = 0; k < instance.getNumberOfVehicles(); k++) {
+                double[] values = getValues(arcVariables[k]);
+                List<SubtourSeparator.Cut> cuts = separator.getViolatedPooledCuts(values);
+                if (cuts.isEmpty()) {
+                    cuts = separator.separateInteger(values);
+                }
+                for (SubtourSeparator.Cut cut : cuts) {
+                    add(createSubtourBreakingConstraint(cut, k));
                 }
             }
-            return forbiddenCycles;
         }
+    }
 
-        private void addSubtourBreakingConstraint(Set<Integer> forbiddenCycle, int k) throws IloException {
-            IloLinearIntExpr inCycleEdges = cplex.linearIntExpr();
-            for (int i : forbiddenCycle) {
-                for (int j : forbiddenCycle) {
-                    inCycleEdges.addTerm(x[i][j][k], 1);
+    private class DFJUserCutCallback extends IloCplex.UserCutCallback {
+
+        @Override
+        protected void main() throws IloException {
+            for (int k = 0; k < instance.getNumberOfVehicles(); k++) {
+                double[] values = getValues(arcVariables[k]);
+                List<SubtourSeparator.Cut> cuts = separator.getViolatedPooledCuts(values);
+                if (cuts.isEmpty()) {
+                    cuts = separator.separateFractional(values);
+                }
+                for (SubtourSeparator.Cut cut : cuts) {
+                    add(createSubtourBreakingConstraint(cut, k));
                 }
             }
-            this.add(cplex.le(inCycleEdges, forbiddenCycle.size() - 1));
         }
     }
 }
-
@@ -1,5 +1,6 @@
 package algorithm;
 
+import algorithm.branching.Branch;
 import algorithm.branching.BranchOnFleetSize;
 import algorithm.branching.BranchOnVisitFlow;
 import commons.Route;
@@ -12,8 +13,10 @@ import ilog.cplex.IloCplex;
 
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -78,7 +81,7 @@ public class GeRestrictedMasterProblem extends RestrictedMasterProblem {
   public void buildModel(IloCplex cplex, boolean integral, Duration remainingTime) {
     try {
       cplex.setOut(null);
-      cplex.setParam(IloCplex.Param.TimeLimit, Math.max(remainingTime.getSeconds(), 1));
+      cplex.setParam(IloCplex.Param.TimeLimit, Utils.getCplexTimeLimit(remainingTime));
       createVariables(cplex, integral);
       createCustomerServedConstraints(cplex);
       createNumberOfVehiclesConstraint(cplex);
@@ -90,15 +93,17 @@ public class GeRestrictedMasterProblem extends RestrictedMasterProblem {
     }
   }
 
+  /** Serves every customer from the first selected route only, copying the routes that change. */
   private void postProcess(List<Route> paths) {
     Set<Integer> customersProcessed = new HashSet<>();
-    for (Route path : paths) {
-      for (Integer customer : customersProcessed) {
-        if (path.isCustomerServed(customer)) {
-          path.removeCustomer(customer);
-        }
+    for (int i = 0; i < paths.size(); i++) {
+      Route path = paths.get(i);
+      Set<Integer> customers = new HashSet<>(path.getCustomersServed());
+      if (customers.removeAll(customersProcessed)) {
+        path = new Route.Builder(instance).addNodesOf(path).addCustomers(customers).build();
+        paths.set(i, path);
       }
-      customersProcessed.addAll(path.getCustomersServed());
+      customersProcessed.addAll(customers);
     }
     paths.removeIf(path -> path.getCustomersServed().isEmpty());
   }
@@ -187,6 +192,25 @@ public class GeRestrictedMasterProblem extends RestrictedMasterProblem {
     return visitFlow;
   }
 
+  @Override
+  protected IloNumVar[] getColumnVariables() {
+    return theta;
+  }
+
+  @Override
+  protected IloRange[] getRows() {
+    IloRange[] rows = Arrays.copyOf(customerConstraints, customerConstraints.length + 1);
+    rows[customerConstraints.length] = vehiclesConstraint;
+    return rows;
+  }
+
+  @Override
+  protected Map<Branch, IloRange> getBranchRows() {
+    Map<Branch, IloRange> rows = new LinkedHashMap<>(branchOnVisitFlowConstraints);
+    rows.putAll(branchOnFleetSizeConstraints);
+    return rows;
+  }
+
   private double getNumberOfVehicles(IloCplex cplex) throws IloException {
     IloNumExpr numberOfRoutesUsed = Utils.getArraySum(cplex, theta);
     return cplex.getValue(numberOfRoutesUsed);
@@ -210,22 +234,34 @@ public class GeRestrictedMasterProblem extends RestrictedMasterProblem {
       if (!Utils.isSolutionFeasible(cplex)) {
         return new RMPLinearSolution();
       }
+      double[] primalValues = cplex.getValues(theta);
       return new RMPLinearSolution(
           cplex.getObjValue(),
           cplex.getDuals(customerConstraints),
           cplex.getDual(vehiclesConstraint),
           true,
-          cplex.getValues(theta),
+          primalValues,
           getNumberOfVehicles(cplex),
           getFleetSizeDuals(cplex),
           isIntegerSolution(cplex),
           getVisitFlow(cplex),
-          getVisitFlowDuals(cplex));
+          getVisitFlowDuals(cplex),
+          getBasicPaths(primalValues));
     } catch (IloException e) {
       return new RMPLinearSolution();
     }
   }
 
+  private List<Route> getBasicPaths(double[] primalValues) {
+    List<Route> ret = new ArrayList<>();
+    for (int route = 0; route < primalValues.length; route++) {
+      if (primalValues[route] > EPSILON) {
+        ret.add(getActivePaths().get(route));
+      }
+    }
+    return ret;
+  }
+
   private Map<BranchOnVisitFlow, Double> getVisitFlowDuals(IloCplex cplex) throws IloException {
     Map<BranchOnVisitFlow, Double> flowDuals = new HashMap<>();
     for (BranchOnVisitFlow branch : branchOnVisitFlowConstraints.keySet()) {
@@ -0,0 +1,34 @@
+package algorithm;
+
+import commons.Route;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * A feasible solution found while a solve is still running, together with the best lower bound
+ * known at that moment. Route costs are non-negative, so the lower bound is 0 when nothing better
+ * has been proven yet.
+ *
+ * @param elapsedTime time since the solve started
+ */
+public record Incumbent(
+    List<Route> routes,
+    double objectiveValue,
+    double lowerBound,
+    Source source,
+    Duration elapsedTime) {
+
+  /** Relative gap between the incumbent and the lower bound, 0 when it is proven optimal. */
+  public double getGap() {
+    return objectiveValue == 0 ? 0 : (objectiveValue - lowerBound) / objectiveValue;
+  }
+
+  /** Where the incumbent comes from. */
+  public enum Source {
+    INITIAL_HEURISTIC,
+    RMP_INTEGER,
+    BRANCH_AND_PRICE_LEAF,
+    METAHEURISTIC,
+    ROUTE_ENUMERATION
+  }
+}
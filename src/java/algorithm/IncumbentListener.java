@@ -0,0 +1,13 @@
+package algorithm;
+
+/**
+ * Receives every improving incumbent of a solve as soon as it is found, so that a caller can use
+ * the best solution so far and stop the solve through its cancellation token once it is good
+ * enough. Listeners are called synchronously from the solving thread, so they should return
+ * quickly.
+ */
+@FunctionalInterface
+public interface IncumbentListener {
+
+  void onIncumbent(Incumbent incumbent);
+}
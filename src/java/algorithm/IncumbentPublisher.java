@@ -0,0 +1,18 @@
+package algorithm;
+
+import java.util.concurrent.SubmissionPublisher;
+
+/**
+ * Publishes the incumbents of a solve as a {@link java.util.concurrent.Flow.Publisher}, delivering
+ * them to the subscribers asynchronously. The solver only blocks if a subscriber falls behind by a
+ * whole buffer of incumbents. Close the publisher once the solve returns to complete the
+ * subscriptions.
+ */
+public class IncumbentPublisher extends SubmissionPublisher<Incumbent>
+    implements IncumbentListener {
+
+  @Override
+  public void onIncumbent(Incumbent incumbent) {
+    submit(incumbent);
+  }
+}
@@ -6,6 +6,7 @@ import commons.Instance;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -13,21 +14,27 @@ import java.util.Set;
 public class InitialSolutionHeuristic {
 
   private final Instance instance;
+  private final int seedingPoolSize;
+  private List<Route> solution;
 
   public InitialSolutionHeuristic(Instance instance) {
-    this.instance = instance;
+    this(instance, 0);
   }
 
-  private int getTotalDemand(Route path) {
-    return path.getCustomersServed().stream()
-        .map(instance::getDemand)
-        .reduce(Integer::sum)
-        .orElse(0);
+  /**
+   * Besides the sequential solution, seeds the RMP with up to seedingPoolSize columns built by
+   * {@link ColumnSeedingHeuristic}, whose best construction replaces the sequential solution if it
+   * is cheaper.
+   */
+  public InitialSolutionHeuristic(Instance instance, int seedingPoolSize) {
+    this.instance = instance;
+    this.seedingPoolSize = seedingPoolSize;
+    this.solution = List.of();
   }
 
   private Optional<Route> computeReplacement(Route path1, Route path2) {
-    if (getTotalDemand(path1) + getTotalDemand(path2) <= instance.getCapacity()) {
-      Route ret = new Route();
+    if (path1.getDemand() + path2.getDemand() <= instance.getCapacity()) {
+      Route.Builder ret = new Route.Builder(instance);
       BitSet visited = new BitSet(instance.getNumberOfNodes());
       int lastNode = instance.getDepot();
       for (int node : path1.getNodes()) {
@@ -46,7 +53,7 @@ public class InitialSolutionHeuristic {
       }
       ret.addCustomers(path1.getCustomersServed());
       ret.addCustomers(path2.getCustomersServed());
-      return Optional.of(ret);
+      return Optional.of(ret.build());
     }
     return Optional.empty();
   }
@@ -76,7 +83,8 @@ public class InitialSolutionHeuristic {
     return ret;
   }
 
-  private Route createOneRedundantPath() {
+  /** Cheapest round trip from the depot, used to fill the fleet when vehicles cannot stay idle. */
+  Route createOneRedundantPath() {
     int minCost = Integer.MAX_VALUE;
     int bestNode = instance.getDepot() + 1;
     for (int i = 0; i < instance.getNumberOfNodes(); i++) {
@@ -90,16 +98,55 @@ public class InitialSolutionHeuristic {
         }
       }
     }
-    Route path = new Route();
-    path.addNode(bestNode, instance.getEdgeWeight(instance.getDepot(), bestNode));
-    path.addNode(instance.getDepot(), instance.getEdgeWeight(bestNode, instance.getDepot()));
-    return path;
+    return new Route.Builder(instance)
+        .addNode(bestNode, instance.getEdgeWeight(instance.getDepot(), bestNode))
+        .addNode(instance.getDepot(), instance.getEdgeWeight(bestNode, instance.getDepot()))
+        .build();
+  }
+
+  /** Best solution built by the last {@link #run()}, empty if none of them fits in the fleet. */
+  public List<Route> getSolution() {
+    return solution;
+  }
+
+  private static int getCost(List<Route> routes) {
+    return routes.stream().mapToInt(Route::getCost).sum();
+  }
+
+  private List<Route> addRedundantPaths(List<Route> routes) {
+    List<Route> ret = new ArrayList<>(routes);
+    if (!instance.unusedVehiclesAllowed()) {
+      // ret should have length equal to the number of vehicles
+      Route redundantPath = createOneRedundantPath();
+      while (ret.size() < instance.getNumberOfVehicles()) {
+        ret.add(redundantPath);
+      }
+    }
+    return ret;
   }
 
   public List<Route> run() {
+    List<Route> ret = buildSequentialSolution();
+    solution = ret.size() <= instance.getNumberOfVehicles() ? ret : List.of();
+    if (seedingPoolSize == 0) {
+      return ret;
+    }
+    ColumnSeedingHeuristic.Result seeded =
+        new ColumnSeedingHeuristic(instance, seedingPoolSize).run();
+    if (!seeded.bestSolution().isEmpty()
+        && (solution.isEmpty() || getCost(seeded.bestSolution()) < getCost(solution))) {
+      solution = addRedundantPaths(seeded.bestSolution());
+    }
+    Set<Route> columns = new LinkedHashSet<>(ret);
+    columns.addAll(solution);
+    columns.addAll(seeded.columns());
+    return new ArrayList<>(columns);
+  }
+
+  private List<Route> buildSequentialSolution() {
     int depot = instance.getDepot();
     List<Route> ret = new ArrayList<>();
-    Route currentPath = new Route();
+    Route.Builder currentPath = new Route.Builder(instance);
     int cumulativeDemand = 0;
     int lastNode = depot;
     Set<Integer> visitedCustomers = new HashSet<>();
@@ -107,8 +154,8 @@ public class InitialSolutionHeuristic {
       cumulativeDemand += instance.getDemand(currentNode);
       if (cumulativeDemand > instance.getCapacity()) {
         currentPath.addNode(depot, instance.getEdgeWeight(lastNode, depot));
-        ret.add(currentPath);
-        currentPath = new Route();
+        ret.add(currentPath.build());
+        currentPath = new Route.Builder(instance);
         cumulativeDemand = instance.getDemand(currentNode);
         lastNode = depot;
         visitedCustomers.clear();
@@ -119,17 +166,10 @@ public class InitialSolutionHeuristic {
       lastNode = currentNode;
     }
     currentPath.addNode(depot, instance.getEdgeWeight(lastNode, depot));
-    ret.add(currentPath);
+    ret.add(currentPath.build());
     if (ret.size() > instance.getNumberOfVehicles()) {
       ret = mergeHeuristic(ret);
     }
-    if (!instance.unusedVehiclesAllowed()) {
-      // ret should have length equal to the number of vehicles
-      Route redundantPath = createOneRedundantPath();
-      while (ret.size() < instance.getNumberOfVehicles()) {
-        ret.add(redundantPath);
-      }
-    }
-    return ret;
+    return addRedundantPaths(ret);
   }
 }
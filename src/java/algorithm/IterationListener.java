@@ -0,0 +1,12 @@
+package algorithm;
+
+/**
+ * Receives the telemetry of a solve while it runs. Listeners are called synchronously from the
+ * solving thread, so they should return quickly.
+ */
+public interface IterationListener {
+
+  void onIteration(IterationRecord record);
+
+  default void onNodeSolved(NodeRecord record) {}
+}
@@ -0,0 +1,167 @@
+package algorithm;
+
+import algorithm.pricing.PricingStatistics;
+import commons.Utils;
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Listener that keeps every record of a solve in arrival order and exports them. The JSONL export
+ * writes one object per record, tagged with its type; the CSV exports write one table per type.
+ * Times are written in milliseconds.
+ */
+public class IterationLog implements IterationListener {
+
+  private static final String DELIMITER = ";";
+  private static final List<String> ITERATION_HEADERS =
+      List.of(
+          "node",
+          "iteration",
+          "rmpBuildMs",
+          "rmpSolveMs",
+          "pricingMs",
+          "boundingMs",
+          "searchMs",
+          "joinMs",
+          "labelsCreated",
+          "labelsDominated",
+          "labelsExtended",
+          "dominanceRelaxed",
+          "columnsAdded",
+          "objectiveValue",
+          "lagrangianBound");
+  private static final List<String> NODE_HEADERS =
+      List.of(
+          "node",
+          "parent",
+          "depth",
+          "iterations",
+          "relaxationValue",
+          "lowerBound",
+          "upperBound",
+          "elapsedMs");
+
+  private final List<Record> records;
+
+  public IterationLog() {
+    this.records = new ArrayList<>();
+  }
+
+  private static String toMillis(Duration duration) {
+    return String.valueOf(duration.toNanos() / 1.0e6);
+  }
+
+  private static String toNumber(double value) {
+    // Infinite bounds are stored as Double.MAX_VALUE, which is not meaningful as a number
+    return Double.isFinite(value) && Math.abs(value) != Double.MAX_VALUE
+        ? String.valueOf(value)
+        : "";
+  }
+
+  private static List<String> toFields(IterationRecord record) {
+    PricingStatistics statistics = record.pricingStatistics();
+    return List.of(
+        String.valueOf(record.node()),
+        String.valueOf(record.iteration()),
+        toMillis(record.rmpBuildTime()),
+        toMillis(record.rmpSolveTime()),
+        toMillis(record.pricingTime()),
+        toMillis(statistics.getBoundingTime()),
+        toMillis(statistics.getSearchTime()),
+        toMillis(statistics.getJoinTime()),
+        String.valueOf(statistics.getLabelsCreated()),
+        String.valueOf(statistics.getLabelsDominated()),
+        String.valueOf(statistics.getLabelsExtended()),
+        String.valueOf(statistics.isDominanceRelaxed()),
+        String.valueOf(record.columnsAdded()),
+        toNumber(record.objectiveValue()),
+        toNumber(record.lagrangianBound()));
+  }
+
+  private static List<String> toFields(NodeRecord record) {
+    return List.of(
+        String.valueOf(record.node()),
+        String.valueOf(record.parent()),
+        String.valueOf(record.depth()),
+        String.valueOf(record.iterations()),
+        toNumber(record.relaxationValue()),
+        toNumber(record.lowerBound()),
+        toNumber(record.upperBound()),
+        toMillis(record.elapsedTime()));
+  }
+
+  private static String toJson(String type, List<String> headers, List<String> fields) {
+    StringBuilder json = new StringBuilder("{\"type\":\"").append(type).append('"');
+    for (int i = 0; i < headers.size(); i++) {
+      String value = fields.get(i).isEmpty() ? "null" : fields.get(i);
+      json.append(",\"").append(headers.get(i)).append("\":").append(value);
+    }
+    return json.append('}').toString();
+  }
+
+  @Override
+  public void onIteration(IterationRecord record) {
+    records.add(record);
+  }
+
+  @Override
+  public void onNodeSolved(NodeRecord record) {
+    records.add(record);
+  }
+
+  public List<IterationRecord> getIterations() {
+    return records.stream()
+        .filter(IterationRecord.class::isInstance)
+        .map(IterationRecord.class::cast)
+        .toList();
+  }
+
+  public List<NodeRecord> getNodes() {
+    return records.stream()
+        .filter(NodeRecord.class::isInstance)
+        .map(NodeRecord.class::cast)
+        .toList();
+  }
+
+  public void writeJsonl(String filename) {
+    List<String> lines = new ArrayList<>();
+    for (Record record : records) {
+      if (record instanceof IterationRecord iteration) {
+        lines.add(toJson("iteration", ITERATION_HEADERS, toFields(iteration)));
+      } else if (record instanceof NodeRecord node) {
+        lines.add(toJson("node", NODE_HEADERS, toFields(node)));
+      }
+    }
+    write(filename, lines);
+  }
+
+  public void writeIterationsCsv(String filename) {
+    List<String> lines = new ArrayList<>();
+    lines.add(String.join(DELIMITER, ITERATION_HEADERS));
+    getIterations().forEach(record -> lines.add(String.join(DELIMITER, toFields(record))));
+    write(filename, lines);
+  }
+
+  public void writeNodesCsv(String filename) {
+    List<String> lines = new ArrayList<>();
+    lines.add(String.join(DELIMITER, NODE_HEADERS));
+    getNodes().forEach(record -> lines.add(String.join(DELIMITER, toFields(record))));
+    write(filename, lines);
+  }
+
+  private void write(String filename, List<String> lines) {
+    try (BufferedWriter writer =
+        new BufferedWriter(new FileWriter(Utils.RESOURCES_PATH + filename))) {
+      for (String line : lines) {
+        writer.write(line);
+        writer.newLine();
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -0,0 +1,25 @@
+package algorithm;
+
+import algorithm.pricing.PricingSolution;
+import algorithm.pricing.PricingStatistics;
+import java.time.Duration;
+
+/**
+ * Telemetry of one column generation iteration: solving the RMP and pricing its duals.
+ *
+ * @param node branch-and-price node the iteration belongs to, 0 for the root
+ * @param iteration number of the iteration, counted over the whole solve
+ * @param lagrangianBound RMP objective plus the number of vehicles times the pricing objective. It
+ *     is a valid lower bound only when the pricing was solved exactly, and NaN when the pricing
+ *     objective is known not to be a bound, see {@link PricingSolution#isObjectiveBound()}
+ */
+public record IterationRecord(
+    int node,
+    int iteration,
+    Duration rmpBuildTime,
+    Duration rmpSolveTime,
+    Duration pricingTime,
+    PricingStatistics pricingStatistics,
+    int columnsAdded,
+    double objectiveValue,
+    double lagrangianBound) {}
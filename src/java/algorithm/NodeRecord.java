@@ -0,0 +1,22 @@
+package algorithm;
+
+import java.time.Duration;
+
+/**
+ * Telemetry of a branch-and-price node once its linear relaxation is solved.
+ *
+ * @param parent node the branch was applied on, -1 for the root
+ * @param iterations column generation iterations spent on the node
+ * @param lowerBound global lower bound after solving the node
+ * @param upperBound value of the incumbent after solving the node, Double.MAX_VALUE if none
+ * @param elapsedTime time since the solve started
+ */
+public record NodeRecord(
+    int node,
+    int parent,
+    int depth,
+    int iterations,
+    double relaxationValue,
+    double lowerBound,
+    double upperBound,
+    Duration elapsedTime) {}
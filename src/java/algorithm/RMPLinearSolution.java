@@ -1,6 +1,7 @@
 package algorithm;
 
 import algorithm.branching.BranchOnVisitFlow;
+import commons.Route;
 import commons.VisitFlow;
 
 import java.util.ArrayList;
@@ -20,10 +21,11 @@ public class RMPLinearSolution {
     private final boolean isInteger;
     private final List<VisitFlow> visitFlow;
     private final Map<BranchOnVisitFlow, Double> visitFlowDuals;
+    private final List<Route> basicPaths;
 
     public RMPLinearSolution(double objectiveValue, double[] customerDuals, double vehiclesDual, boolean feasible,
                              double[] primalValues, double numberOfVehicles, List<Double> fleetSizeDuals, boolean isInteger, List<VisitFlow> visitFlow,
-                             Map<BranchOnVisitFlow, Double> visitFlowDuals) {
+                             Map<BranchOnVisitFlow, Double> visitFlowDuals, List<Route> basicPaths) {
         this.objectiveValue = objectiveValue;
         this.customerDuals = customerDuals;
         this.vehiclesDual = vehiclesDual;
@@ -34,6 +36,7 @@ public class RMPLinearSolution {
         this.isInteger = isInteger;
         this.visitFlow = visitFlow;
         this.visitFlowDuals = visitFlowDuals;
+        this.basicPaths = basicPaths;
     }
 
     public RMPLinearSolution() {
@@ -47,6 +50,7 @@ public class RMPLinearSolution {
         this.isInteger = false;
         this.visitFlow = new ArrayList<>();
         this.visitFlowDuals = new HashMap<>();
+        this.basicPaths = new ArrayList<>();
     }
 
     public double getVehiclesDual() {
@@ -88,4 +92,11 @@ public class RMPLinearSolution {
     public List<Double> getFleetSizeDuals() {
         return fleetSizeDuals;
     }
+
+    /**
+     * Returns the paths with a strictly positive value in the relaxation, in the order of the active paths of the RMP.
+     */
+    public List<Route> getBasicPaths() {
+        return basicPaths;
+    }
 }
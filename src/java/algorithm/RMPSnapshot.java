@@ -0,0 +1,31 @@
+package algorithm;
+
+import algorithm.branching.Branch;
+import ilog.cplex.IloCplex.BasisStatus;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * State of an RMP at a branch-and-price node: the branches applied, the columns they leave active
+ * and the optimal basis of its last linear relaxation, which warm starts the next solve after the
+ * snapshot is restored.
+ *
+ * @param activeColumns ids of the active columns in the column pool
+ * @param columnStatuses basis status of each active column, in increasing id order; null if the
+ *     relaxation had no optimal basis
+ * @param rowStatuses basis status of each row that does not come from a branch
+ * @param branchRowStatuses basis status of the row of each branch that has one
+ * @param branches branches applied, from the first to the last
+ */
+public record RMPSnapshot(
+    BitSet activeColumns,
+    BasisStatus[] columnStatuses,
+    BasisStatus[] rowStatuses,
+    Map<Branch, BasisStatus> branchRowStatuses,
+    List<Branch> branches) {
+
+  public boolean hasBasis() {
+    return columnStatuses != null;
+  }
+}
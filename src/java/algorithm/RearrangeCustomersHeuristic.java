@@ -9,7 +9,6 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
-import java.util.TreeSet;
 
 public class RearrangeCustomersHeuristic {
 
@@ -20,12 +19,36 @@ public class RearrangeCustomersHeuristic {
         this.instance = instance;
     }
 
-    private Set<Integer> getPotentialCustomers(Route path) {
-        Set<Integer> ret = new TreeSet<>(Comparator.comparingInt(instance::getDemand));
+    private long[] getPotentialCustomersMask(Route path) {
+        long[] mask = new long[instance.getReverseNeighborhoodMask(instance.getDepot()).length];
         for (int node : path.getNodes()) {
-            ret.addAll(instance.getReverseNeighborhood(node));
+            long[] reverseNeighborhood = instance.getReverseNeighborhoodMask(node);
+            for (int i = 0; i < mask.length; i++) {
+                mask[i] |= reverseNeighborhood[i];
+            }
         }
-        return ret;
+        return mask;
+    }
+
+    private boolean containsAll(long[] mask, Set<Integer> customers) {
+        for (int customer : customers) {
+            int index = instance.getCustomerIndex(customer);
+            if ((mask[index >>> 6] & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int[] getPotentialCustomers(Route path) {
+        long[] mask = getPotentialCustomersMask(path);
+        List<Integer> ret = new ArrayList<>();
+        for (int i = 0; i < mask.length; i++) {
+            for (long word = mask[i]; word != 0; word &= word - 1) {
+                ret.add(instance.getCustomer(i * Long.SIZE + Long.numberOfTrailingZeros(word)));
+            }
+        }
+        return ret.stream().sorted(Comparator.comparingInt(instance::getDemand)).mapToInt(Integer::intValue).toArray();
     }
 
     private List<Route> getPathsInBasis(List<Route> paths,
@@ -40,30 +63,27 @@ public class RearrangeCustomersHeuristic {
         return sortedPaths;
     }
 
-    private int getTotalDemand(Route path) {
-        return path.getCustomersServed().stream().map(instance::getDemand).reduce(Integer::sum).orElse(0);
-    }
-
     private boolean canMerge(Route path1, Route path2, Route replacement) {
         if (replacement.getCost() < path1.getCost() + path2.getCost()) {
-            Set<Integer> potentialCustomers = getPotentialCustomers(replacement);
-            return potentialCustomers.containsAll(path1.getCustomersServed()) &&
-                    potentialCustomers.containsAll(path2.getCustomersServed());
+            long[] potentialCustomers = getPotentialCustomersMask(replacement);
+            return containsAll(potentialCustomers, path1.getCustomersServed()) &&
+                    containsAll(potentialCustomers, path2.getCustomersServed());
         }
         return false;
     }
 
     private Optional<Route> computeReplacement(Route path1, Route path2,
                                                List<Route> replacements) {
-        if (getTotalDemand(path1) + getTotalDemand(path2) > instance.getCapacity()) {
+        if (path1.getDemand() + path2.getDemand() > instance.getCapacity()) {
             return Optional.empty();
         }
         for (Route replacement : replacements) {
             if (canMerge(path1, path2, replacement)) {
-                Route ret = replacement.getCopyWithoutCustomers();
-                ret.addCustomers(path1.getCustomersServed());
-                ret.addCustomers(path2.getCustomersServed());
-                return Optional.of(ret);
+                return Optional.of(new Route.Builder(instance)
+                        .addNodesOf(replacement)
+                        .addCustomers(path1.getCustomersServed())
+                        .addCustomers(path2.getCustomersServed())
+                        .build());
             }
         }
         return Optional.empty();
@@ -102,7 +122,7 @@ public class RearrangeCustomersHeuristic {
                 break;
             }
             int           cumulativeDemand = 0;
-            Route         currentPath      = path.getCopyWithoutCustomers();
+            Route.Builder currentPath      = new Route.Builder(instance).addNodesOf(path);
             List<Integer> currentCustomers = new ArrayList<>();
             for (int customer : getPotentialCustomers(path)) {
                 if (!visited.get(customer)) {
@@ -110,8 +130,8 @@ public class RearrangeCustomersHeuristic {
                     if (cumulativeDemand > instance.getCapacity()) {
                         currentPath.addCustomers(currentCustomers);
                         currentCustomers = new ArrayList<>();
-                        ret.add(currentPath);
-                        currentPath = path.getCopyWithoutCustomers();
+                        ret.add(currentPath.build());
+                        currentPath = new Route.Builder(instance).addNodesOf(path);
                         cumulativeDemand = instance.getDemand(customer);
                     }
                     currentCustomers.add(customer);
@@ -120,7 +140,7 @@ public class RearrangeCustomersHeuristic {
             }
             if (!currentCustomers.isEmpty()) {
                 currentPath.addCustomers(currentCustomers);
-                ret.add(currentPath);
+                ret.add(currentPath.build());
             }
         }
         ret.removeAll(paths);
@@ -3,36 +3,54 @@ package algorithm;
 import algorithm.branching.Branch;
 import algorithm.branching.BranchOnFleetSize;
 import algorithm.branching.BranchOnVisitFlow;
+import commons.CancellationToken;
+import commons.CplexThreads;
 import commons.Route;
 import commons.Utils;
 import ilog.concert.IloException;
+import ilog.concert.IloNumVar;
+import ilog.concert.IloRange;
 import ilog.cplex.IloCplex;
+import ilog.cplex.IloCplex.BasisStatus;
 
 import java.time.Duration;
-import java.util.ArrayDeque;
+import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Deque;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public abstract class RestrictedMasterProblem {
 
-    private final List<Route>   allPaths;
-    private final Deque<Branch> activeBranches;
+    private final ColumnIndex   columnIndex;
     private RMPLinearSolution linearSolution;
     private RMPIntegerSolution  integerSolution;
     private List<Route>         activePaths;
+    private BitSet              activeIds;
+    private RMPSnapshot         lastSnapshot;
+    private RMPSnapshot         warmStart;
+    private Duration            lastBuildTime;
+    private Duration            lastSolveTime;
+    private CancellationToken   cancellationToken;
 
     public RestrictedMasterProblem() {
         this.linearSolution = null;
         this.integerSolution = null;
-        this.allPaths = new ArrayList<>();
+        this.columnIndex = new ColumnIndex();
         this.activePaths = new ArrayList<>();
-        this.activeBranches = new ArrayDeque<>();
-
+        this.activeIds = new BitSet();
+        this.lastSnapshot = null;
+        this.warmStart = null;
+        this.lastBuildTime = Duration.ZERO;
+        this.lastSolveTime = Duration.ZERO;
+        this.cancellationToken = CancellationToken.NONE;
     }
 
     public void addColumns(List<Route> columns) {
-        allPaths.addAll(columns);
+        for (Route column : columns) {
+            columnIndex.add(column);
+        }
     }
 
     public abstract void buildModel(IloCplex cplex, boolean integral, Duration remainingTime);
@@ -45,12 +63,28 @@ public abstract class RestrictedMasterProblem {
 
     public abstract void performBranchOnFleetSize(IloCplex cplex, BranchOnFleetSize branch);
 
+    /** Variables of the built model, in the order of {@link #getActivePaths()}. */
+    protected abstract IloNumVar[] getColumnVariables();
+
+    /** Rows of the built model that do not come from branches, always in the same order. */
+    protected abstract IloRange[] getRows();
+
+    /** Rows of the built model added by the branches that have one. */
+    protected abstract Map<Branch, IloRange> getBranchRows();
+
+    /** Token that aborts the CPLEX solves of this RMP when cancelled. */
+    public void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+    }
+
+    /** Masks the columns the branch disallows, which stay out of the model until it is removed. */
     public void addBranch(Branch branch) {
-        activeBranches.addLast(branch);
+        columnIndex.push(branch);
     }
 
+    /** Removes the last branch added, restoring the columns it masked. */
     public void removeBranch(Branch branch) {
-        activeBranches.removeLast();
+        columnIndex.pop();
     }
 
     public RMPLinearSolution getSolution() {
@@ -67,26 +101,133 @@ public abstract class RestrictedMasterProblem {
         return integerSolution;
     }
 
-    private boolean isCompatible(Route path) {
-        return activeBranches.stream().allMatch(branch -> branch.isCompatible(path));
-    }
-
     public void solveRelaxation() {
         solveRelaxation(Utils.DEFAULT_TIMEOUT);
     }
 
     public void solveRelaxation(Duration remainingTime) {
+        Instant start = Instant.now();
         try (IloCplex cplex = new IloCplex()) {
-            this.activePaths = allPaths.stream().filter(this::isCompatible).toList();
+            CplexThreads.apply(cplex);
+            this.activeIds = columnIndex.getActiveIds();
+            this.activePaths = columnIndex.getActiveColumns();
             buildModel(cplex, false, remainingTime);
             performBranching(cplex);
+            applyWarmStart(cplex);
+            lastBuildTime = Utils.getElapsedTime(start);
 
-            cplex.solve();
+            Instant solveStart = Instant.now();
+            Utils.solve(cplex, cancellationToken);
             linearSolution = buildSolution(cplex);
+            lastSnapshot = createSnapshot(linearSolution.isFeasible() ? cplex : null);
+            warmStart = lastSnapshot;
+            lastSolveTime = Utils.getElapsedTime(solveStart);
             cplex.end();
         } catch (IloException e) {
             linearSolution = new RMPLinearSolution();
+            lastSnapshot = createSnapshot(null);
+            warmStart = null;
+        }
+    }
+
+    /** Reads the basis from cplex, or leaves it out if cplex is null or has no basis. */
+    private RMPSnapshot createSnapshot(IloCplex cplex) {
+        List<Branch> branches = new ArrayList<>();
+        columnIndex.getBranches().forEach(branches::add);
+        if (cplex != null) {
+            try {
+                Map<Branch, IloRange> rowsByBranch = getBranchRows();
+                List<Branch> rowBranches = new ArrayList<>(rowsByBranch.keySet());
+                IloRange[] branchRows = rowBranches.stream().map(rowsByBranch::get).toArray(IloRange[]::new);
+                BasisStatus[] statuses = cplex.getBasisStatuses(branchRows);
+                Map<Branch, BasisStatus> branchRowStatuses = new HashMap<>();
+                for (int i = 0; i < statuses.length; i++) {
+                    branchRowStatuses.put(rowBranches.get(i), statuses[i]);
+                }
+                return new RMPSnapshot((BitSet) activeIds.clone(), cplex.getBasisStatuses(getColumnVariables()),
+                                       cplex.getBasisStatuses(getRows()), branchRowStatuses, branches);
+            } catch (IloException e) {
+                // Solved without a basis, e.g. by the barrier without crossover
+            }
+        }
+        return new RMPSnapshot((BitSet) activeIds.clone(), null, null, Map.of(), branches);
+    }
+
+    /**
+     * Starts the simplex from the basis of the warm start. Columns generated since it was taken are
+     * nonbasic at 0 and rows of new branches have their slack basic, so the basis stays square unless
+     * a branch masked basic columns, in which case CPLEX repairs it.
+     */
+    private void applyWarmStart(IloCplex cplex) {
+        if (warmStart == null || !warmStart.hasBasis()) {
+            return;
+        }
+        IloNumVar[] variables = getColumnVariables();
+        BasisStatus[] columnStatuses = new BasisStatus[variables.length];
+        BitSet warmStartIds = warmStart.activeColumns();
+        int warmStartId = warmStartIds.nextSetBit(0);
+        int rank = 0;
+        int column = 0;
+        for (int id = activeIds.nextSetBit(0); id >= 0; id = activeIds.nextSetBit(id + 1)) {
+            while (warmStartId >= 0 && warmStartId < id) {
+                warmStartId = warmStartIds.nextSetBit(warmStartId + 1);
+                rank++;
+            }
+            columnStatuses[column++] = warmStartId == id ? warmStart.columnStatuses()[rank] : BasisStatus.AtLower;
+        }
+
+        IloRange[] staticRows = getRows();
+        Map<Branch, IloRange> branchRows = getBranchRows();
+        if (staticRows.length != warmStart.rowStatuses().length) {
+            return;
+        }
+        IloRange[] rows = new IloRange[staticRows.length + branchRows.size()];
+        BasisStatus[] rowStatuses = new BasisStatus[rows.length];
+        System.arraycopy(staticRows, 0, rows, 0, staticRows.length);
+        System.arraycopy(warmStart.rowStatuses(), 0, rowStatuses, 0, staticRows.length);
+        int row = staticRows.length;
+        for (Map.Entry<Branch, IloRange> entry : branchRows.entrySet()) {
+            rows[row] = entry.getValue();
+            rowStatuses[row++] = warmStart.branchRowStatuses().getOrDefault(entry.getKey(), BasisStatus.Basic);
+        }
+        try {
+            cplex.setParam(IloCplex.Param.AdvInd, 1);
+            cplex.setBasisStatuses(variables, columnStatuses, rows, rowStatuses);
+        } catch (IloException e) {
+            // Not a usable basis, the relaxation is solved from scratch
+        }
+    }
+
+    /**
+     * State of the RMP at its last linear relaxation: branches, active columns and optimal basis, if
+     * there was one.
+     */
+    public RMPSnapshot takeSnapshot() {
+        if (lastSnapshot == null) {
+            throw new IllegalStateException("Should have called solveRelaxation() before");
         }
+        return lastSnapshot;
+    }
+
+    /**
+     * Goes back to the branches of a snapshot, popping and pushing only the branches that differ, and
+     * warm starts the next relaxation from its basis.
+     */
+    public void restoreSnapshot(RMPSnapshot snapshot) {
+        List<Branch> current = new ArrayList<>();
+        columnIndex.getBranches().forEach(current::add);
+        List<Branch> target = snapshot.branches();
+        int common = 0;
+        while (common < current.size() && common < target.size() && current.get(common) == target.get(common)) {
+            common++;
+        }
+        for (int i = current.size(); i > common; i--) {
+            columnIndex.pop();
+        }
+        for (Branch branch : target.subList(common, target.size())) {
+            columnIndex.push(branch);
+        }
+        warmStart = snapshot;
     }
 
     public void solveInteger() {
@@ -94,13 +235,24 @@ public abstract class RestrictedMasterProblem {
     }
 
     public void solveInteger(Duration remainingTime) {
+        solveInteger(List.of(), remainingTime);
+    }
+
+    /**
+     * Solves the integer RMP with extra columns that only this model uses. They are not added to the RMP, so later
+     * models do not carry them; they must be compatible with the active branches.
+     */
+    public void solveInteger(List<Route> extraColumns, Duration remainingTime) {
         try (IloCplex cplex = new IloCplex()) {
-            this.activePaths = allPaths.stream().filter(this::isCompatible).toList();
+            CplexThreads.apply(cplex);
+            this.activeIds = columnIndex.getActiveIds();
+            this.activePaths = columnIndex.getActiveColumns();
+            activePaths.addAll(extraColumns);
             buildModel(cplex, true, remainingTime);
 
             performBranching(cplex);
 
-            cplex.solve();
+            Utils.solve(cplex, cancellationToken);
             integerSolution = buildIntegerSolution(cplex);
             cplex.end();
         } catch (IloException e) {
@@ -109,7 +261,7 @@ public abstract class RestrictedMasterProblem {
     }
 
     private void performBranching(IloCplex cplex) {
-        for (Branch branch : activeBranches) {
+        for (Branch branch : columnIndex.getBranches()) {
             if (branch instanceof BranchOnVisitFlow) {
                 performBranchOnVisitFlow(cplex, (BranchOnVisitFlow) branch);
             } else if (branch instanceof BranchOnFleetSize) {
@@ -121,4 +273,14 @@ public abstract class RestrictedMasterProblem {
     public List<Route> getActivePaths() {
         return activePaths;
     }
+
+    /** Time spent building the model of the last linear relaxation solved. */
+    public Duration getLastBuildTime() {
+        return lastBuildTime;
+    }
+
+    /** Time spent by CPLEX solving the last linear relaxation, including reading the solution. */
+    public Duration getLastSolveTime() {
+        return lastSolveTime;
+    }
 }
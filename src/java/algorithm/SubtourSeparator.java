@@ -0,0 +1,236 @@
+package algorithm;
+
+import commons.DisjointSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Separation of subtour elimination constraints for arc formulations with a single route per
+ * vehicle, in cut-set form: if an arc leaving a node of a set without the depot is used, the route
+ * has to enter the set. Arc values are read from a flat array indexed by {@code i * N + j}.
+ *
+ * <p>Integer solutions are separated with the connected components of the used arcs. Fractional
+ * solutions are first separated the same way on their support, and then with a minimum cut from
+ * the depot to every node left. Every cut found is kept in a pool, which callbacks check before
+ * separating and which models can add up front when they are rebuilt.
+ *
+ * <p>Separation only keeps per-thread state, so a separator can be shared by the callbacks of a
+ * parallel solve.
+ */
+public class SubtourSeparator {
+
+  private static final double EPSILON = 1e-6;
+  private static final double MIN_VIOLATION = 1e-3;
+
+  private final int numberOfNodes;
+  private final int depot;
+  private final Set<Cut> pool;
+  private final ThreadLocal<DisjointSet> disjointSet;
+
+  public SubtourSeparator(int numberOfNodes, int depot) {
+    this.numberOfNodes = numberOfNodes;
+    this.depot = depot;
+    this.pool = ConcurrentHashMap.newKeySet();
+    this.disjointSet = ThreadLocal.withInitial(() -> new DisjointSet(numberOfNodes));
+  }
+
+  public Collection<Cut> getPool() {
+    return Collections.unmodifiableSet(pool);
+  }
+
+  /** Returns the pooled cuts violated by the given arc values. */
+  public List<Cut> getViolatedPooledCuts(double[] values) {
+    List<Cut> violated = new ArrayList<>();
+    for (Cut cut : pool) {
+      if (cut.getViolation(values, numberOfNodes) > MIN_VIOLATION) {
+        violated.add(cut);
+      }
+    }
+    return violated;
+  }
+
+  /** Separates an integer solution: every component of used arcs away from the depot is a cut. */
+  public List<Cut> separateInteger(double[] values) {
+    return addToPool(separateComponents(values, 0.5));
+  }
+
+  /** Separates a fractional solution, trying the components of its support before min cuts. */
+  public List<Cut> separateFractional(double[] values) {
+    List<Cut> cuts = separateComponents(values, EPSILON);
+    if (cuts.isEmpty()) {
+      cuts = separateMinCuts(values);
+    }
+    return addToPool(cuts);
+  }
+
+  private List<Cut> addToPool(List<Cut> cuts) {
+    pool.addAll(cuts);
+    return cuts;
+  }
+
+  /** Head of the heaviest arc leaving node, or -1 if no arc leaving it exceeds the threshold. */
+  private int getHeaviestSuccessor(double[] values, int node, double threshold) {
+    int successor = -1;
+    double successorValue = threshold;
+    for (int j = 0; j < numberOfNodes; j++) {
+      if (j != node && values[node * numberOfNodes + j] > successorValue) {
+        successorValue = values[node * numberOfNodes + j];
+        successor = j;
+      }
+    }
+    return successor;
+  }
+
+  private List<Cut> separateComponents(double[] values, double threshold) {
+    int N = numberOfNodes;
+    DisjointSet components = disjointSet.get();
+    components.reset();
+    for (int i = 0; i < N; i++) {
+      for (int j = 0; j < N; j++) {
+        if (i != j && values[i * N + j] > threshold) {
+          components.union(i, j);
+        }
+      }
+    }
+    int depotComponent = components.find(depot);
+    BitSet[] nodesByComponent = new BitSet[N];
+    for (int i = 0; i < N; i++) {
+      int component = components.find(i);
+      if (component != depotComponent) {
+        if (nodesByComponent[component] == null) {
+          nodesByComponent[component] = new BitSet(N);
+        }
+        nodesByComponent[component].set(i);
+      }
+    }
+    List<Cut> cuts = new ArrayList<>();
+    for (BitSet nodes : nodesByComponent) {
+      // A single node with no arcs is not a subtour
+      if (nodes == null || nodes.cardinality() < 2) {
+        continue;
+      }
+      int tail = nodes.nextSetBit(0);
+      int head = getHeaviestSuccessor(values, tail, threshold);
+      if (head >= 0) {
+        cuts.add(new Cut(nodes, tail, head));
+      }
+    }
+    return cuts;
+  }
+
+  private List<Cut> separateMinCuts(double[] values) {
+    List<Cut> cuts = new ArrayList<>();
+    BitSet covered = new BitSet(numberOfNodes);
+    for (int t = 0; t < numberOfNodes; t++) {
+      // Nodes inside a cut that was just found would most likely give the same cut
+      if (t == depot || covered.get(t)) {
+        continue;
+      }
+      int head = getHeaviestSuccessor(values, t, EPSILON);
+      if (head < 0) {
+        continue;
+      }
+      double demand = values[t * numberOfNodes + head];
+      BitSet sinkSide = getMinCutSinkSide(values, t, demand - MIN_VIOLATION);
+      if (sinkSide != null) {
+        Cut cut = new Cut(sinkSide, t, head);
+        if (cut.getViolation(values, numberOfNodes) > MIN_VIOLATION) {
+          cuts.add(cut);
+          covered.or(sinkSide);
+        }
+      }
+    }
+    return cuts;
+  }
+
+  /**
+   * Computes a maximum flow from the depot to sink with Edmonds-Karp, stopping as soon as it
+   * reaches target. Returns the nodes not reachable from the depot in the residual graph if the
+   * flow stays below target, or null otherwise.
+   */
+  private BitSet getMinCutSinkSide(double[] values, int sink, double target) {
+    int N = numberOfNodes;
+    double[] residual = new double[N * N];
+    for (int i = 0; i < N; i++) {
+      for (int j = 0; j < N; j++) {
+        if (i != j) {
+          residual[i * N + j] = values[i * N + j];
+        }
+      }
+    }
+    int[] predecessor = new int[N];
+    double flow = 0;
+    while (flow < target) {
+      if (!findAugmentingPath(residual, sink, predecessor)) {
+        BitSet sinkSide = new BitSet(N);
+        sinkSide.set(0, N);
+        for (int i = 0; i < N; i++) {
+          if (predecessor[i] >= 0) {
+            sinkSide.clear(i);
+          }
+        }
+        return sinkSide;
+      }
+      double bottleneck = Double.MAX_VALUE;
+      for (int j = sink; j != depot; j = predecessor[j]) {
+        bottleneck = Math.min(bottleneck, residual[predecessor[j] * N + j]);
+      }
+      for (int j = sink; j != depot; j = predecessor[j]) {
+        residual[predecessor[j] * N + j] -= bottleneck;
+        residual[j * N + predecessor[j]] += bottleneck;
+      }
+      flow += bottleneck;
+    }
+    return null;
+  }
+
+  /** BFS from the depot on arcs with residual capacity; predecessor is -1 for unreached nodes. */
+  private boolean findAugmentingPath(double[] residual, int sink, int[] predecessor) {
+    int N = numberOfNodes;
+    Arrays.fill(predecessor, -1);
+    predecessor[depot] = depot;
+    ArrayDeque<Integer> queue = new ArrayDeque<>();
+    queue.add(depot);
+    while (!queue.isEmpty()) {
+      int i = queue.poll();
+      for (int j = 0; j < N; j++) {
+        if (predecessor[j] < 0 && residual[i * N + j] > EPSILON) {
+          predecessor[j] = i;
+          if (j == sink) {
+            return true;
+          }
+          queue.add(j);
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Cut-set subtour elimination constraint: the arcs entering nodes must add up to at least the
+   * value of the arc (tail, head), whose tail is in nodes. The depot is never in nodes.
+   */
+  public record Cut(BitSet nodes, int tail, int head) {
+
+    /** Value of the arc minus the flow entering the set; positive when the cut is violated. */
+    public double getViolation(double[] values, int numberOfNodes) {
+      double inflow = 0;
+      for (int i = 0; i < numberOfNodes; i++) {
+        if (nodes.get(i)) {
+          continue;
+        }
+        for (int j = nodes.nextSetBit(0); j >= 0; j = nodes.nextSetBit(j + 1)) {
+          inflow += values[i * numberOfNodes + j];
+        }
+      }
+      return values[tail * numberOfNodes + head] - inflow;
+    }
+  }
+}
@@ -1,11 +1,22 @@
 package algorithm.branching;
 
+import algorithm.AlnsHeuristic;
+import algorithm.Incumbent;
+import algorithm.IncumbentListener;
 import algorithm.InitialSolutionHeuristic;
+import algorithm.IterationListener;
+import algorithm.IterationRecord;
+import algorithm.NodeRecord;
 import algorithm.RMPIntegerSolution;
 import algorithm.RMPLinearSolution;
+import algorithm.RMPSnapshot;
 import algorithm.RestrictedMasterProblem;
+import algorithm.pricing.LabelSettingAlgorithm;
 import algorithm.pricing.PricingProblem;
 import algorithm.pricing.PricingSolution;
+import algorithm.pricing.ReducedCostFixing;
+import commons.CancellationToken;
+import commons.CplexThreads;
 import commons.Route;
 import commons.Instance;
 import commons.StarRoutingSolution;
@@ -13,34 +24,62 @@ import commons.Stopwatch;
 import commons.Utils;
 
 import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 public class BranchAndPrice {
 
   private static final Double EPSILON = 0.01;
+  private static final Duration MAX_ENUMERATION_TIME = Duration.ofSeconds(30);
 
+  private final Instance instance;
   private final RestrictedMasterProblem rmp;
   private final PricingProblem pricing;
   private final InitialSolutionHeuristic initialSolutionHeuristic;
   private final BranchingRuleManager branchingRuleManager;
+  private final int numberOfVehicles;
+  private final List<IterationListener> listeners;
+  private final List<IncumbentListener> incumbentListeners;
+  private CancellationToken cancellationToken;
+  private boolean alnsEnabled;
+  private AlnsHeuristic alns;
+  private double maxEnumerationGap;
+  private int maxEnumeratedRoutes;
+  private boolean arcFixingEnabled;
   private int numberOfIterations;
+  private int numberOfNodes;
 
   private double upperBound;
+  private double reportedObjectiveValue;
 
   public BranchAndPrice(
       Instance instance,
       RestrictedMasterProblem rmp,
       PricingProblem pricing,
       InitialSolutionHeuristic initialSolutionHeuristic) {
+    this.instance = instance;
     this.rmp = rmp;
     this.pricing = pricing;
     this.initialSolutionHeuristic = initialSolutionHeuristic;
     this.branchingRuleManager = new BranchingRuleManager();
+    this.numberOfVehicles = instance.getNumberOfVehicles();
+    this.listeners = new ArrayList<>();
+    this.incumbentListeners = new ArrayList<>();
+    this.cancellationToken = CancellationToken.NONE;
+    this.alnsEnabled = false;
+    this.maxEnumerationGap = -1;
+    this.maxEnumeratedRoutes = 0;
+    this.arcFixingEnabled = false;
     this.upperBound = Double.MAX_VALUE;
+    this.reportedObjectiveValue = Double.MAX_VALUE;
     this.numberOfIterations = 0;
+    this.numberOfNodes = 0;
   }
 
   public StarRoutingSolution solve() {
@@ -48,16 +87,53 @@ public class BranchAndPrice {
   }
 
   public StarRoutingSolution solve(Duration timeout) {
-    Stopwatch stopwatch = new Stopwatch(timeout);
+    Stopwatch stopwatch = new Stopwatch(timeout, cancellationToken);
+    reportedObjectiveValue = Double.MAX_VALUE;
     List<Route> columnsToAdd = initialSolutionHeuristic.run();
+    List<Route> initialSolution = initialSolutionHeuristic.getSolution();
+    if (!initialSolution.isEmpty()) {
+      notifyIncumbent(
+          initialSolution,
+          initialSolution.stream().mapToInt(Route::getCost).sum(),
+          null,
+          Incumbent.Source.INITIAL_HEURISTIC,
+          stopwatch);
+    }
 
+    Thread alnsThread = null;
+    int cplexThreads = CplexThreads.getThreadLimit();
+    if (alnsEnabled) {
+      // The ALNS thread takes one of the cores that CPLEX could otherwise use
+      int cores = cplexThreads > 0 ? cplexThreads : Runtime.getRuntime().availableProcessors();
+      CplexThreads.setThreadLimit(Math.max(1, cores - 1));
+      alns = new AlnsHeuristic(instance, initialSolutionHeuristic);
+      alnsThread = Thread.ofPlatform().daemon().name("alns").start(alns);
+    }
+    try {
+      return search(stopwatch, columnsToAdd);
+    } finally {
+      if (alnsThread != null) {
+        CplexThreads.setThreadLimit(cplexThreads);
+        alns.stop();
+        try {
+          alnsThread.join();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+  }
+
+  private StarRoutingSolution search(Stopwatch stopwatch, List<Route> columnsToAdd) {
     RMPIntegerSolution incumbent = null;
     ArrayDeque<Node> openNodes = new ArrayDeque<>();
-    Node root = new Node(null, null);
+    Node root = new Node(numberOfNodes++, null, null);
     Node lastNode;
     Node currentNode = null;
     double rootRelaxationOptimal = Double.MAX_VALUE;
+    boolean boundsProven = true;
     upperBound = Double.MAX_VALUE;
+    pricing.setRemovedArcs(root.getRemovedArcs());
 
     openNodes.add(root);
 
@@ -71,8 +147,15 @@ public class BranchAndPrice {
       // Generate columns & solve the linear relaxation
       double relaxationOptimal = Double.MAX_VALUE;
       RMPLinearSolution rmpSolution;
+      int nodeIterations = 0;
+      boolean converged = false;
+      boolean boundMissing = false;
       while (true) {
         numberOfIterations++;
+        nodeIterations++;
+        if (alns != null) {
+          incumbent = pollAlns(incumbent, root, stopwatch);
+        }
         rmp.addColumns(columnsToAdd);
         rmp.solveRelaxation(stopwatch.getRemainingTime());
         rmpSolution = rmp.getSolution();
@@ -81,21 +164,37 @@ public class BranchAndPrice {
         }
         relaxationOptimal = Math.min(relaxationOptimal, rmpSolution.getObjectiveValue());
 
+        Instant pricingStart = Instant.now();
         PricingSolution pricingSolution = pricing.solve(rmpSolution, stopwatch.getRemainingTime());
+        // A pricing without a bound may have missed columns, so it is repeated exactly
+        if (pricingSolution.isFeasible()
+            && pricingSolution.getNegativeReducedCostPaths().isEmpty()
+            && !pricingSolution.isObjectiveBound()
+            && !stopwatch.timedOut()) {
+          pricing.forceExactSolution();
+          pricingSolution = pricing.solve(rmpSolution, stopwatch.getRemainingTime());
+        }
         if (!pricingSolution.isFeasible() || stopwatch.timedOut()) {
           break;
         }
         columnsToAdd = pricingSolution.getNegativeReducedCostPaths();
+        notifyIteration(
+            currentNode, rmpSolution, pricingSolution, Utils.getElapsedTime(pricingStart));
         if (columnsToAdd.isEmpty()) {
+          // Even the exact pricing may fail to prove there are no columns, e.g. on a budget
+          boundMissing = !pricingSolution.isObjectiveBound();
+          converged = !boundMissing;
           break;
         }
       }
 
       // Mark as solved
+      boundsProven &= !boundMissing;
       assert Math.abs(rmpSolution.getObjectiveValue() - relaxationOptimal) < EPSILON;
-      if (!stopwatch.timedOut()) {
+      if (!stopwatch.timedOut() && !boundMissing) {
         currentNode.markSolved(rmpSolution.isFeasible() ? relaxationOptimal : Double.MAX_VALUE);
       }
+      currentNode.setSnapshot(rmp.takeSnapshot());
 
       // If current == root
       if (currentNode.getParent() == null) {
@@ -103,7 +202,8 @@ public class BranchAndPrice {
       }
 
       // Process node if the node is feasible and the relaxation is better than the incumbent
-      if (rmpSolution.isFeasible() && Math.ceil(rmpSolution.getObjectiveValue()) < upperBound) {
+      if (rmpSolution.isFeasible()
+          && (boundMissing || Math.ceil(rmpSolution.getObjectiveValue()) < upperBound)) {
         rmp.solveInteger(); // Assume this is fast
         RMPIntegerSolution rmpIntegerSolution = rmp.getIntegerSolution();
 
@@ -111,6 +211,12 @@ public class BranchAndPrice {
         if (rmpSolution.isInteger()) {
           upperBound = rmpSolution.getObjectiveValue();
           incumbent = rmpIntegerSolution;
+          notifyIncumbent(
+              incumbent.getUsedPaths(),
+              upperBound,
+              root,
+              Incumbent.Source.BRANCH_AND_PRICE_LEAF,
+              stopwatch);
           assert Math.abs(rmpIntegerSolution.getObjectiveValue() - rmpSolution.getObjectiveValue())
               < EPSILON;
         } else {
@@ -119,46 +225,260 @@ public class BranchAndPrice {
           if (rmpIntegerSolution.getObjectiveValue() < upperBound) {
             upperBound = rmpIntegerSolution.getObjectiveValue();
             incumbent = rmpIntegerSolution;
+            notifyIncumbent(
+                incumbent.getUsedPaths(),
+                upperBound,
+                root,
+                Incumbent.Source.RMP_INTEGER,
+                stopwatch);
           }
 
-          // Set children to be processed
-          for (Branch branch : branchingRuleManager.applyBranchingRules(rmpSolution)) {
-            Node child = new Node(currentNode, branch);
-            openNodes.addFirst(child);
-            currentNode.addChild(child);
+          if (converged && arcFixingEnabled) {
+            fixArcs(currentNode, rmpSolution);
+          }
+
+          // A small gap is closed by a MIP over every route that can still improve the incumbent
+          Optional<RMPIntegerSolution> enumeratedSolution =
+              converged ? solveByEnumeration(rmpSolution, stopwatch) : Optional.empty();
+          if (enumeratedSolution.isPresent()) {
+            if (enumeratedSolution.get().isFeasible()
+                && enumeratedSolution.get().getObjectiveValue() < upperBound) {
+              upperBound = enumeratedSolution.get().getObjectiveValue();
+              incumbent = enumeratedSolution.get();
+              notifyIncumbent(
+                  incumbent.getUsedPaths(),
+                  upperBound,
+                  root,
+                  Incumbent.Source.ROUTE_ENUMERATION,
+                  stopwatch);
+            }
+          } else {
+            // Set children to be processed
+            for (Branch branch : branchingRuleManager.applyBranchingRules(rmpSolution)) {
+              Node child = new Node(numberOfNodes++, currentNode, branch);
+              openNodes.addFirst(child);
+              currentNode.addChild(child);
+            }
           }
         }
       }
+      // Only open children restore the snapshot
+      if (currentNode.children.isEmpty()) {
+        currentNode.setSnapshot(null);
+      }
+      notifyNodeSolved(currentNode, nodeIterations, relaxationOptimal, root, stopwatch);
     }
 
     // Finish
     double objectiveValue = root.isSolved() ? root.getObjectiveValue() : rootRelaxationOptimal;
     objectiveValue = incumbent == null ? objectiveValue : incumbent.getObjectiveValue();
-    return buildSolution(stopwatch, objectiveValue, root.getLowerBound(), incumbent);
+    return buildSolution(stopwatch, objectiveValue, root.getLowerBound(), incumbent, boundsProven);
+  }
+
+  /**
+   * Adds the routes of the ALNS improvements to the RMP, and returns its best solution if it beats
+   * the incumbent, which then prunes the tree through the upper bound.
+   */
+  private RMPIntegerSolution pollAlns(
+      RMPIntegerSolution incumbent, Node root, Stopwatch stopwatch) {
+    rmp.addColumns(alns.pollColumns());
+    List<Route> alnsSolution = alns.getBestSolution();
+    double alnsCost = alnsSolution.stream().mapToInt(Route::getCost).sum();
+    if (alnsSolution.isEmpty() || alnsCost >= upperBound) {
+      return incumbent;
+    }
+    upperBound = alnsCost;
+    notifyIncumbent(alnsSolution, alnsCost, root, Incumbent.Source.METAHEURISTIC, stopwatch);
+    return new RMPIntegerSolution(alnsCost, alnsSolution, true);
+  }
+
+  /**
+   * If the gap between the node relaxation and the incumbent is small enough, enumerates every
+   * route whose reduced cost is below it and solves the integer RMP with them, which is then
+   * optimal for the whole subtree: a solution better than the incumbent only uses such routes.
+   *
+   * @return the integer solution, or empty if the node has to be branched on
+   */
+  private Optional<RMPIntegerSolution> solveByEnumeration(
+      RMPLinearSolution rmpSolution, Stopwatch stopwatch) {
+    double gap = upperBound - rmpSolution.getObjectiveValue();
+    if (maxEnumerationGap < 0
+        || upperBound == Double.MAX_VALUE
+        || gap > maxEnumerationGap * upperBound) {
+      return Optional.empty();
+    }
+    Duration timeLimit = stopwatch.getRemainingTime();
+    timeLimit = timeLimit.compareTo(MAX_ENUMERATION_TIME) < 0 ? timeLimit : MAX_ENUMERATION_TIME;
+    Optional<List<Route>> routes =
+        new LabelSettingAlgorithm(instance, rmpSolution, false, pricing.getRemovedArcs())
+            .enumerate(
+                gap, maxEnumeratedRoutes, this::isCompatible, timeLimit, cancellationToken);
+    if (routes.isEmpty()) {
+      return Optional.empty();
+    }
+    // The enumerated routes are only needed for this subtree, so the RMP only keeps the ones used
+    List<Route> enumerated = new ArrayList<>(routes.get());
+    enumerated.removeAll(new HashSet<>(rmp.getActivePaths()));
+    rmp.solveInteger(enumerated, stopwatch.getRemainingTime());
+    if (stopwatch.timedOut()) {
+      return Optional.empty();
+    }
+    RMPIntegerSolution solution = rmp.getIntegerSolution();
+    if (solution.isFeasible()) {
+      Set<Route> used = new HashSet<>(solution.getUsedPaths());
+      rmp.addColumns(enumerated.stream().filter(used::contains).toList());
+    }
+    return Optional.of(solution);
+  }
+
+  /** Whether route satisfies every branch on the path to the current node. */
+  private boolean isCompatible(Route route) {
+    for (Branch branch : pricing.getActiveBranches()) {
+      if (!branch.isCompatible(route)) {
+        return false;
+      }
+    }
+    return true;
   }
 
+  /**
+   * Removes from the pricing graph of node and its subtree the arcs that no route with a reduced
+   * cost below the gap to the incumbent uses. The children of node start from the resulting graph.
+   */
+  private void fixArcs(Node node, RMPLinearSolution rmpSolution) {
+    if (upperBound == Double.MAX_VALUE) {
+      return;
+    }
+    BitSet fixedArcs =
+        new ReducedCostFixing(instance, rmpSolution, node.getRemovedArcs())
+            .getArcsAboveGap(upperBound - rmpSolution.getObjectiveValue());
+    if (fixedArcs.isEmpty()) {
+      return;
+    }
+    BitSet removedArcs = (BitSet) node.getRemovedArcs().clone();
+    removedArcs.or(fixedArcs);
+    node.setRemovedArcs(removedArcs);
+    pricing.setRemovedArcs(removedArcs);
+  }
+
+  private void notifyIteration(
+      Node node,
+      RMPLinearSolution rmpSolution,
+      PricingSolution pricingSolution,
+      Duration pricingTime) {
+    if (listeners.isEmpty()) {
+      return;
+    }
+    double lagrangianBound = Double.NaN;
+    if (pricingSolution.isObjectiveBound()) {
+      lagrangianBound =
+          rmpSolution.getObjectiveValue()
+              + numberOfVehicles * Math.min(0.0, pricingSolution.getObjectiveValue());
+    }
+    IterationRecord record =
+        new IterationRecord(
+            node.getId(),
+            numberOfIterations,
+            rmp.getLastBuildTime(),
+            rmp.getLastSolveTime(),
+            pricingTime,
+            pricingSolution.getStatistics(),
+            pricingSolution.getNegativeReducedCostPaths().size(),
+            rmpSolution.getObjectiveValue(),
+            lagrangianBound);
+    for (IterationListener listener : listeners) {
+      listener.onIteration(record);
+    }
+  }
+
+  private void notifyNodeSolved(
+      Node node, int iterations, double relaxationValue, Node root, Stopwatch stopwatch) {
+    if (listeners.isEmpty()) {
+      return;
+    }
+    NodeRecord record =
+        new NodeRecord(
+            node.getId(),
+            node.getParent() == null ? -1 : node.getParent().getId(),
+            node.pathToRoot().size() - 1,
+            iterations,
+            relaxationValue,
+            root.getLowerBound(),
+            upperBound,
+            stopwatch.getElapsedTime());
+    for (IterationListener listener : listeners) {
+      listener.onNodeSolved(record);
+    }
+  }
+
+  private void notifyIncumbent(
+      List<Route> routes,
+      double objectiveValue,
+      Node root,
+      Incumbent.Source source,
+      Stopwatch stopwatch) {
+    // The initial heuristic may be worse than a solution that was already reported
+    if (incumbentListeners.isEmpty() || objectiveValue >= reportedObjectiveValue) {
+      return;
+    }
+    reportedObjectiveValue = objectiveValue;
+    double lowerBound =
+        root == null || root.getLowerBound() == Double.MAX_VALUE ? 0.0 : root.getLowerBound();
+    Incumbent incumbent =
+        new Incumbent(
+            List.copyOf(routes),
+            objectiveValue,
+            Math.min(lowerBound, objectiveValue),
+            source,
+            stopwatch.getElapsedTime());
+    for (IncumbentListener listener : incumbentListeners) {
+      listener.onIncumbent(incumbent);
+    }
+  }
+
+  /**
+   * The RMP jumps to the snapshot of the parent of current, which restores its branches and warm
+   * starts its relaxation from the parent's basis, and then adds the branch of current. The pricing
+   * pops and pushes branches along the path between both nodes, and prices over the graph that
+   * current inherits from its parent.
+   */
   private void updateSubproblems(Node last, Node current) {
     if (last == null) {
       return;
     }
+    pricing.setRemovedArcs(current.getRemovedArcs());
+    Node parent = current.getParent();
+    rmp.restoreSnapshot(parent.getSnapshot());
+    // The last child to start is the last one that needs the snapshot
+    if (parent.startChild() == parent.children.size()) {
+      parent.setSnapshot(null);
+    }
+    rmp.addBranch(current.getBranch());
+
     List<Node> fromLast = last.pathToRoot();
     List<Node> fromCurrent = current.pathToRoot();
     int i = 0;
     while (!fromCurrent.contains(fromLast.get(i))) {
-      rmp.removeBranch(fromLast.get(i).getBranch());
       pricing.removeBranch(fromLast.get(i).getBranch());
       ++i;
     }
     int j = fromCurrent.indexOf(fromLast.get(i)) - 1;
     while (j >= 0) {
-      rmp.addBranch(fromCurrent.get(j).getBranch());
       pricing.addBranch(fromCurrent.get(j).getBranch());
       --j;
     }
   }
 
+  /**
+   * @param boundsProven false if some node closed without proving its relaxation, in which case
+   *     neither optimality nor the lower bound hold
+   */
   private StarRoutingSolution buildSolution(
-      Stopwatch stopwatch, double objectiveValue, double lowerBound, RMPIntegerSolution incumbent) {
+      Stopwatch stopwatch,
+      double objectiveValue,
+      double lowerBound,
+      RMPIntegerSolution incumbent,
+      boolean boundsProven) {
 
     // Timed out in the first CG iteration, no information at all
     if (stopwatch.timedOut() && objectiveValue == Double.MAX_VALUE) {
@@ -180,7 +500,9 @@ public class BranchAndPrice {
               incumbent.getObjectiveValue(),
               incumbent.getUsedPaths(),
               stopwatch.getElapsedTime());
-      solution.setLowerBound(lowerBound);
+      if (boundsProven) {
+        solution.setLowerBound(lowerBound);
+      }
       return solution;
     }
 
@@ -190,6 +512,15 @@ public class BranchAndPrice {
           StarRoutingSolution.Status.INFEASIBLE, objectiveValue, stopwatch.getElapsedTime(), false);
     }
 
+    // The incumbent is only optimal if every node that was closed proved its bound
+    if (!boundsProven) {
+      return new StarRoutingSolution(
+          StarRoutingSolution.Status.FEASIBLE,
+          incumbent.getObjectiveValue(),
+          incumbent.getUsedPaths(),
+          stopwatch.getElapsedTime());
+    }
+
     // If the solution is feasible and integer
     StarRoutingSolution solution =
         new StarRoutingSolution(
@@ -201,27 +532,93 @@ public class BranchAndPrice {
     return solution;
   }
 
+  /**
+   * Token that stops the search, the RMP and the pricing when cancelled. A cancelled solve returns
+   * as if it had timed out, with the incumbent and lower bound found so far.
+   */
+  public void setCancellationToken(CancellationToken cancellationToken) {
+    this.cancellationToken = cancellationToken;
+    rmp.setCancellationToken(cancellationToken);
+    pricing.setCancellationToken(cancellationToken);
+  }
+
+  /**
+   * Runs an {@link AlnsHeuristic} on a background thread during the search. Its best solutions
+   * tighten the upper bound used for pruning, and their routes are added to the RMP as columns.
+   * The thread counts against the {@link CplexThreads} limit, so CPLEX gets one thread less.
+   */
+  public void enableAlns() {
+    this.alnsEnabled = true;
+  }
+
+  /**
+   * Closes a node by route enumeration instead of branching on it once column generation
+   * converges and the gap between its relaxation and the incumbent is at most maxRelativeGap of the
+   * incumbent.
+   * Enumerations that find more than maxRoutes routes are abandoned, and the node is branched on.
+   */
+  public void enableRouteEnumeration(double maxRelativeGap, int maxRoutes) {
+    this.maxEnumerationGap = maxRelativeGap;
+    this.maxEnumeratedRoutes = maxRoutes;
+  }
+
+  /**
+   * Applies reduced cost fixing to the pricing graph at every node where column generation
+   * converges, see {@link ReducedCostFixing}. Fixed arcs stay removed in the subtree of the node.
+   */
+  public void enableArcFixing() {
+    this.arcFixingEnabled = true;
+  }
+
+  public void addIterationListener(IterationListener listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Reports every improving solution found by the initial heuristic, the integer RMP solves, the
+   * integer nodes and the ALNS if enabled, along with the lower bound of the tree at that moment.
+   */
+  public void addIncumbentListener(IncumbentListener listener) {
+    incumbentListeners.add(listener);
+  }
+
   public int getNumberOfIterations() {
     return numberOfIterations;
   }
 
+  public int getNumberOfNodes() {
+    return numberOfNodes;
+  }
+
   private static class Node {
+    private final int id;
     private final Node parent;
     private final Branch branch;
     private Optional<Double> objectiveValue;
     private final List<Node> children;
+    private RMPSnapshot snapshot;
+    private int childrenStarted;
+    // Shared with the parent until arcs are fixed at this node
+    private BitSet removedArcs;
 
-    public Node(Node parent, Branch branch) {
+    public Node(int id, Node parent, Branch branch) {
+      this.id = id;
       this.parent = parent;
       this.branch = branch;
+      this.removedArcs = parent == null ? new BitSet() : parent.removedArcs;
       this.objectiveValue = Optional.empty();
       this.children = new ArrayList<>();
+      this.childrenStarted = 0;
     }
 
     public void addChild(Node child) {
       this.children.add(child);
     }
 
+    public int getId() {
+      return id;
+    }
+
     public Node getParent() {
       return parent;
     }
@@ -273,5 +670,26 @@ public class BranchAndPrice {
     public Branch getBranch() {
       return branch;
     }
+
+    public RMPSnapshot getSnapshot() {
+      return snapshot;
+    }
+
+    public void setSnapshot(RMPSnapshot snapshot) {
+      this.snapshot = snapshot;
+    }
+
+    /** Counts a child that restored the snapshot, and returns how many did so far. */
+    public int startChild() {
+      return ++childrenStarted;
+    }
+
+    public BitSet getRemovedArcs() {
+      return removedArcs;
+    }
+
+    public void setRemovedArcs(BitSet removedArcs) {
+      this.removedArcs = removedArcs;
+    }
   }
 }
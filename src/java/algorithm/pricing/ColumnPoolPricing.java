@@ -0,0 +1,129 @@
+package algorithm.pricing;
+
+import algorithm.RMPLinearSolution;
+import algorithm.branching.Branch;
+import algorithm.branching.BranchOnFleetSize;
+import algorithm.branching.BranchOnVisitFlow;
+import commons.Instance;
+import commons.Route;
+import commons.Utils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pricing over a pool of columns that were generated in previous iterations but not handed to the
+ * RMP. Each call rescans the pool against the current duals, which is far cheaper than any search.
+ * Columns that are not negative in maxIdleScans consecutive scans are dropped, so that the pool
+ * does not grow with every call.
+ *
+ * <p>Pool hits are heuristic: the objective of a solution is never a bound.
+ */
+public class ColumnPoolPricing extends PricingProblem {
+
+  public static final int DEFAULT_MAX_IDLE_SCANS = 10;
+  private static final double EPSILON = Utils.DEFAULT_EPSILON;
+
+  private final Instance instance;
+  // Consecutive scans in which each pooled column was not negative
+  private final Map<Route, Integer> pool;
+  private int maxIdleScans;
+
+  public ColumnPoolPricing(Instance instance) {
+    this.instance = instance;
+    this.pool = new LinkedHashMap<>();
+    this.maxIdleScans = DEFAULT_MAX_IDLE_SCANS;
+  }
+
+  private boolean isCompatible(Route path) {
+    for (Branch branch : getActiveBranches()) {
+      if (!branch.isCompatible(path)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public void addColumns(List<Route> columns) {
+    for (Route column : columns) {
+      pool.put(column, 0);
+    }
+  }
+
+  /** Sets the number of consecutive scans without a negative reduced cost before eviction. */
+  public void setMaxIdleScans(int maxIdleScans) {
+    this.maxIdleScans = maxIdleScans;
+  }
+
+  /**
+   * Offers columns to the pool and takes back at most maxColumns of the pooled columns with the most
+   * negative reduced cost. Whatever is not taken stays pooled for later iterations, until it is
+   * evicted.
+   */
+  public List<Route> selectColumns(
+      List<Route> columns, RMPLinearSolution rmpSolution, int maxColumns) {
+    addColumns(columns);
+    List<Route> selected = getNegativeReducedCostColumns(rmpSolution);
+    if (selected.size() > maxColumns) {
+      selected = selected.subList(0, maxColumns);
+    }
+    selected.forEach(pool::remove);
+    return new ArrayList<>(selected);
+  }
+
+  private List<Route> getNegativeReducedCostColumns(RMPLinearSolution rmpSolution) {
+    DualVector duals = new DualVector(instance, rmpSolution);
+    List<Route> ret = new ArrayList<>();
+    List<Double> reducedCosts = new ArrayList<>();
+    Iterator<Map.Entry<Route, Integer>> iterator = pool.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<Route, Integer> entry = iterator.next();
+      Route path = entry.getKey();
+      double reducedCost = isCompatible(path) ? duals.getReducedCost(path) : 0.0;
+      if (reducedCost < -EPSILON) {
+        ret.add(path);
+        reducedCosts.add(reducedCost);
+        entry.setValue(0);
+      } else if (entry.getValue() >= maxIdleScans) {
+        iterator.remove();
+      } else {
+        entry.setValue(entry.getValue() + 1);
+      }
+    }
+    List<Integer> order = new ArrayList<>();
+    for (int i = 0; i < ret.size(); i++) {
+      order.add(i);
+    }
+    order.sort(Comparator.comparing(reducedCosts::get));
+    return new ArrayList<>(order.stream().map(ret::get).toList());
+  }
+
+  @Override
+  public PricingSolution solve(RMPLinearSolution rmpSolution, Duration remainingTime) {
+    List<Route> columns = getNegativeReducedCostColumns(rmpSolution);
+    columns.forEach(pool::remove);
+    double objectiveValue =
+        columns.isEmpty()
+            ? 0.0
+            : new DualVector(instance, rmpSolution).getReducedCost(columns.getFirst());
+    return new PricingSolution(objectiveValue, columns, 0.0, true, new PricingStatistics(), false);
+  }
+
+  public int size() {
+    return pool.size();
+  }
+
+  @Override
+  public void forceExactSolution() {}
+
+  @Override
+  public void performBranchOnVisitFlow(BranchOnVisitFlow branch) {}
+
+  @Override
+  public void performBranchOnFleetSize(BranchOnFleetSize branch) {}
+}
@@ -1,8 +1,10 @@
 package algorithm.pricing;
 
 import algorithm.RMPLinearSolution;
+import algorithm.SubtourSeparator;
 import algorithm.branching.BranchOnFleetSize;
 import algorithm.branching.BranchOnVisitFlow;
+import commons.CplexThreads;
 import commons.Route;
 import commons.Instance;
 import commons.Utils;
@@ -12,6 +14,7 @@ import ilog.concert.IloIntVar;
 import ilog.concert.IloLinearIntExpr;
 import ilog.concert.IloLinearNumExpr;
 import ilog.concert.IloNumExpr;
+import ilog.concert.IloRange;
 import ilog.cplex.IloCplex;
 
 import java.time.Duration;
@@ -25,9 +28,12 @@ public class DFJConstraintsILPPricingProblem extends PricingProblem {
     private IloIntVar[][] x;
     private IloIntVar[] y;
     private IloIntVar[] z;
+    private IloIntVar[] arcVariables;
+    private final SubtourSeparator separator;
 
     public DFJConstraintsILPPricingProblem(Instance instance) {
         this.instance = instance;
+        this.separator = new SubtourSeparator(instance.getNumberOfNodes(), instance.getDepot());
     }
 
     private void createVariables(RMPLinearSolution rmpSolution) throws IloException {
@@ -35,9 +41,11 @@ public class DFJConstraintsILPPricingProblem extends PricingProblem {
         int S = instance.getNumberOfCustomers();
 
         x = new IloIntVar[N][N];
+        arcVariables = new IloIntVar[N * N];
         for (int i = 0; i < N; i++) {
             for (int j = 0; j < N; j++) {
                 x[i][j] = cplex.boolVar("x_" + i + "_" + j);
+                arcVariables[i * N + j] = x[i][j];
             }
         }
 
@@ -159,16 +167,19 @@ public class DFJConstraintsILPPricingProblem extends PricingProblem {
     public PricingSolution solve(RMPLinearSolution rmpSolution, Duration remainingTime) {
         try {
             cplex = new IloCplex();
+            CplexThreads.apply(cplex);
             cplex.setOut(null);
-            cplex.setParam(IloCplex.Param.TimeLimit, remainingTime.getSeconds() + 1);
+            cplex.setParam(IloCplex.Param.TimeLimit, Utils.getCplexTimeLimit(remainingTime));
             createVariables(rmpSolution);
             createConstraints(rmpSolution);
             createObjective(rmpSolution);
+            addPooledCuts();
             cplex.use(new DFJConstraintsCallback());
+            cplex.use(new DFJUserCutCallback());
 
             performBranching();
 
-            cplex.solve();
+            Utils.solve(cplex, getCancellationToken());
 
             boolean     feasible          = IloCplex.Status.Optimal.equals(cplex.getStatus());
             List<Route> pathsFromSolution = feasible ? computePathsFromSolution() : new ArrayList<>();
@@ -202,9 +213,9 @@ public class DFJConstraintsILPPricingProblem extends PricingProblem {
     }
 
     private Route getPathFromFeasibleSolution() throws IloException {
-        Route path        = new Route();
-        int   lastNode    = instance.getDepot();
-        int   currentNode = getNextNodeInPath(lastNode);
+        Route.Builder path        = new Route.Builder(instance);
+        int           lastNode    = instance.getDepot();
+        int           currentNode = getNextNodeInPath(lastNode);
         while (currentNode != instance.getDepot()) {
             path.addNode(currentNode, instance.getEdgeWeight(lastNode, currentNode));
             lastNode = currentNode;
@@ -212,7 +223,7 @@ public class DFJConstraintsILPPricingProblem extends PricingProblem {
         }
         path.addNode(currentNode, instance.getEdgeWeight(lastNode, currentNode));
         path.addCustomers(getVisitedCustomers());
-        return path;
+        return path.build();
     }
 
     private double getInitialCost(RMPLinearSolution rmpSolution) {
@@ -253,73 +264,54 @@ public class DFJConstraintsILPPricingProblem extends PricingProblem {
     }
 
 
-    private class DFJConstraintsCallback extends IloCplex.LazyConstraintCallback {
-
-        private final int[] connectedComponents;
+    private IloRange createSubtourBreakingConstraint(SubtourSeparator.Cut cut) throws IloException {
+        BitSet nodes = cut.nodes();
+        IloLinearIntExpr enteringEdges = cplex.linearIntExpr();
+        for (int i = 0; i < instance.getNumberOfNodes(); i++) {
+            if (!nodes.get(i)) {
+                for (int j = nodes.nextSetBit(0); j >= 0; j = nodes.nextSetBit(j + 1)) {
+                    enteringEdges.addTerm(x[i][j], 1);
+                }
+            }
+        }
+        enteringEdges.addTerm(x[cut.tail()][cut.head()], -1);
+        return cplex.ge(enteringEdges, 0);
+    }
 
-        public DFJConstraintsCallback() {
-            this.connectedComponents = new int[instance.getNumberOfNodes()];
+    private void addPooledCuts() throws IloException {
+        // Every pricing model has the same arcs, so the cuts found in earlier iterations stay valid
+        for (SubtourSeparator.Cut cut : separator.getPool()) {
+            cplex.add(createSubtourBreakingConstraint(cut));
         }
+    }
+
+    private class DFJConstraintsCallback extends IloCplex.LazyConstraintCallback {
 
         @Override
         protected void main() throws IloException {
-            computeConnectedComponents();
-            for (Set<Integer> subtour : getSubtours()) {
-                addSubtourBreakingConstraint(subtour);
+            double[] values = getValues(arcVariables);
+            List<SubtourSeparator.Cut> cuts = separator.getViolatedPooledCuts(values);
+            if (cuts.isEmpty()) {
+                cuts = separator.separateInteger(values);
             }
-        }
-
-        private int merge(int x) {
-            if (connectedComponents[x] == x) {
-                return x;
+            for (SubtourSeparator.Cut cut : cuts) {
+                add(createSubtourBreakingConstraint(cut));
             }
-            return merge(connectedComponents[x]);
         }
+    }
 
-        private void computeConnectedComponents() throws IloException {
-            int N = instance.getNumberOfNodes();
-            for (int i = 0; i < N; i++) {
-                connectedComponents[i] = i;
-            }
-            for (int i = 0; i < N; i++) {
-                for (int j = 0; j < N; j++) {
-                    if (Math.round(getValue(x[i][j])) == 1) {
-                        connectedComponents[merge(i)] = merge(j);
-                    }
-                }
-            }
-            for (int i = 0; i < N; i++) {
-                connectedComponents[i] = merge(connectedComponents[i]);
-            }
-        }
+    private class DFJUserCutCallback extends IloCplex.UserCutCallback {
 
-        private Collection<Set<Integer>> getSubtours() {
-            Map<Integer, Set<Integer>> subtours = new HashMap<>();
-            int onlyValidComponent = connectedComponents[instance.getDepot()];
-            for (int i = 0; i < instance.getNumberOfNodes(); i++) {
-                int connectedComponent = connectedComponents[i];
-                if (connectedComponent != i && connectedComponent != onlyValidComponent) {
-                    subtours.putIfAbsent(connectedComponent, new HashSet<>());
-                    subtours.get(connectedComponent).add(i);
-                }
-            }
-            for (int connectedComponent : subtours.keySet()) {
-                subtours.get(connectedComponent).add(connectedComponent);
+        @Override
+        protected void main() throws IloException {
+            double[] values = getValues(arcVariables);
+            List<SubtourSeparator.Cut> cuts = separator.getViolatedPooledCuts(values);
+            if (cuts.isEmpty()) {
+                cuts = separator.separateFractional(values);
             }
-            return subtours.values();
-        }
-
-        private void addSubtourBreakingConstraint(Set<Integer> subtour) throws IloException {
-            IloIntExpr inCycleEdges = cplex.linearIntExpr();
-            for (int i : subtour) {
-                for (int j : subtour) {
-                    if (i != j) {
-                        inCycleEdges = cplex.sum(inCycleEdges, x[i][j]);
-                    }
-                }
+            for (SubtourSeparator.Cut cut : cuts) {
+                add(createSubtourBreakingConstraint(cut));
             }
-            // cplex.addLazyConstraint(cplex.le(inCycleEdges, subtour.size() - 1));
-            add(cplex.le(inCycleEdges, subtour.size() - 1));
         }
     }
 
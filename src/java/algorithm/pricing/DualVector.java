@@ -0,0 +1,62 @@
+package algorithm.pricing;
+
+import algorithm.RMPLinearSolution;
+import algorithm.branching.BranchOnVisitFlow;
+import commons.Instance;
+import commons.Route;
+
+import java.util.Map;
+
+/**
+ * Duals of an RMP solution as seen by the pricing engines. Customer duals are stored in a dense
+ * array indexed by customer index and can be looked up either by index or by customer node.
+ */
+public class DualVector {
+
+  private final Instance instance;
+  private final double[] customerDuals;
+  private final double initialCost;
+  private final Map<BranchOnVisitFlow, Double> visitFlowDuals;
+
+  public DualVector(Instance instance, RMPLinearSolution rmpSolution) {
+    this.instance = instance;
+    this.customerDuals = new double[instance.getNumberOfCustomers()];
+    for (int s = 0; s < customerDuals.length; s++) {
+      customerDuals[s] = rmpSolution.getCustomerDual(s);
+    }
+    double cost = -rmpSolution.getVehiclesDual();
+    for (double fleetSizeDual : rmpSolution.getFleetSizeDuals()) {
+      cost -= fleetSizeDual;
+    }
+    this.initialCost = cost;
+    this.visitFlowDuals = rmpSolution.getVisitFlowDuals();
+  }
+
+  public double getCustomerDual(int customer) {
+    return customerDuals[instance.getCustomerIndex(customer)];
+  }
+
+  public double getDualOfIndex(int index) {
+    return customerDuals[index];
+  }
+
+  /** Reduced cost every path starts with: minus the vehicles dual and the fleet size duals. */
+  public double getInitialCost() {
+    return initialCost;
+  }
+
+  public double getReducedCost(Route path) {
+    double reducedCost = path.getCost() + initialCost;
+    for (int customer : path.getCustomersServed()) {
+      reducedCost -= getCustomerDual(customer);
+    }
+    for (Map.Entry<BranchOnVisitFlow, Double> entry : visitFlowDuals.entrySet()) {
+      BranchOnVisitFlow branch = entry.getKey();
+      if (path.isCustomerServed(branch.getCustomer())
+          && path.containsEdge(branch.getEdge().getStart(), branch.getEdge().getEnd())) {
+        reducedCost -= entry.getValue();
+      }
+    }
+    return reducedCost;
+  }
+}
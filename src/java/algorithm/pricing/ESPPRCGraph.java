@@ -3,6 +3,7 @@ package algorithm.pricing;
 import commons.Graph;
 import commons.Instance;
 
+import java.util.BitSet;
 import java.util.List;
 
 public class ESPPRCGraph extends Graph {
@@ -16,20 +17,31 @@ public class ESPPRCGraph extends Graph {
   }
 
   public ESPPRCGraph(Instance instance, boolean reversed) {
+    this(instance, reversed, new BitSet());
+  }
+
+  /**
+   * @param removedArcs ids, as given by {@link #getArcId}, of the arcs of the forward graph to leave
+   *     out. The reversed graph leaves out their reverse arcs.
+   */
+  public ESPPRCGraph(Instance instance, boolean reversed, BitSet removedArcs) {
     super(instance.getNumberOfNodes() + 1);
     this.instance = instance;
     this.source = instance.getDepot();
     this.sink = instance.getNumberOfNodes();
     if (reversed) {
-      createGraph(sink, source);
+      createGraph(sink, source, removedArcs, true);
     } else {
-      createGraph(source, sink);
+      createGraph(source, sink, removedArcs, false);
     }
   }
 
-  private void createGraph(int start, int end) {
+  private void createGraph(int start, int end, BitSet removedArcs, boolean reversed) {
     for (int i = 0; i < getSize(); i++) {
       for (int j = 0; j < getSize(); j++) {
+        if (removedArcs.get(reversed ? getArcId(j, i) : getArcId(i, j))) {
+          continue;
+        }
         if (i != j && i != end && j != start && !(i == start && j == end)) {
           if (j == sink) {
             addEdge(i, j, instance.getEdgeWeight(i, instance.getDepot()));
@@ -51,6 +63,11 @@ public class ESPPRCGraph extends Graph {
     return sink;
   }
 
+  /** Id of the arc from start to end, unique among the arcs of graphs of the same instance. */
+  public int getArcId(int start, int end) {
+    return start * getSize() + end;
+  }
+
   public int translateToESPPRCNode(int node) {
     return node == instance.getDepot() ? sink : node;
   }
@@ -9,15 +9,61 @@ class ExactLabelContainer implements LabelContainer {
   private static final double EPSILON = Utils.DEFAULT_EPSILON;
 
   private final Map<BitSet, Map<BitSet, Label>> container;
+  private final double dominanceMargin;
+  private int size;
 
   public ExactLabelContainer() {
+    this(EPSILON);
+  }
+
+  /**
+   * @param dominanceMargin how much cheaper a label has to be than another one with more resources
+   *     to dominate it
+   */
+  public ExactLabelContainer(double dominanceMargin) {
     this.container = new HashMap<>();
+    this.dominanceMargin = dominanceMargin;
+    this.size = 0;
   }
 
   @Override
   public void addLabel(Label l) {
-    container.putIfAbsent(l.visitedNodes(), new HashMap<>());
-    container.get(l.visitedNodes()).put(l.visitedCustomers(), l);
+    removeDominatedBy(l);
+    Map<BitSet, Label> bucket = container.computeIfAbsent(l.visitedNodes(), k -> new HashMap<>());
+    Label previous = bucket.get(l.visitedCustomers());
+    if (previous != null && previous.cost() <= l.cost()) {
+      // Same resources, the label already stored is at least as cheap
+      l.kill();
+      return;
+    }
+    if (previous != null) {
+      previous.kill();
+    } else {
+      size++;
+    }
+    bucket.put(l.visitedCustomers(), l);
+  }
+
+  private void removeDominatedBy(Label l) {
+    Iterator<Map.Entry<BitSet, Map<BitSet, Label>>> buckets = container.entrySet().iterator();
+    while (buckets.hasNext()) {
+      Map.Entry<BitSet, Map<BitSet, Label>> entry = buckets.next();
+      if (Utils.isSubset(l.visitedNodes(), entry.getKey())) {
+        Iterator<Label> labels = entry.getValue().values().iterator();
+        while (labels.hasNext()) {
+          Label other = labels.next();
+          if (Utils.isSubset(l.visitedCustomers(), other.visitedCustomers())
+              && l.cost() + dominanceMargin < other.cost()) {
+            other.kill();
+            labels.remove();
+            size--;
+          }
+        }
+        if (entry.getValue().isEmpty()) {
+          buckets.remove();
+        }
+      }
+    }
   }
 
   @Override
@@ -27,7 +73,7 @@ class ExactLabelContainer implements LabelContainer {
         Map<BitSet, Label> bucket = container.get(visitedNodes);
         for (BitSet visitedCustomers : bucket.keySet()) {
           if (Utils.isSubset(visitedCustomers, other.visitedCustomers())
-              && bucket.get(visitedCustomers).cost() + EPSILON < other.cost()) {
+              && bucket.get(visitedCustomers).cost() + dominanceMargin < other.cost()) {
             return true;
           }
         }
@@ -45,6 +91,11 @@ class ExactLabelContainer implements LabelContainer {
         .toList();
   }
 
+  @Override
+  public int size() {
+    return size;
+  }
+
   @Override
   public List<Label> getLabels() {
     return container.values().stream()
@@ -3,6 +3,7 @@ package algorithm.pricing;
 import algorithm.RMPLinearSolution;
 import algorithm.branching.BranchOnFleetSize;
 import algorithm.branching.BranchOnVisitFlow;
+import commons.CplexThreads;
 import commons.Route;
 import commons.Instance;
 import commons.Utils;
@@ -183,15 +184,16 @@ public class ILPPricingProblem extends PricingProblem {
     public PricingSolution solve(RMPLinearSolution rmpSolution, Duration remainingTime) {
         try {
             cplex = new IloCplex();
+            CplexThreads.apply(cplex);
             cplex.setOut(null);
-            cplex.setParam(IloCplex.Param.TimeLimit, remainingTime.getSeconds() + 1);
+            cplex.setParam(IloCplex.Param.TimeLimit, Utils.getCplexTimeLimit(remainingTime));
             createVariables(rmpSolution);
             createConstraints(rmpSolution);
             createObjective(rmpSolution);
 
             performBranching();
 
-            cplex.solve();
+            Utils.solve(cplex, getCancellationToken());
             boolean     feasible          = IloCplex.Status.Optimal.equals(cplex.getStatus());
             List<Route> pathsFromSolution = feasible ? computePathsFromSolution() : new ArrayList<>();
             PricingSolution pricingSolution =
@@ -224,9 +226,9 @@ public class ILPPricingProblem extends PricingProblem {
     }
 
     private Route getPathFromFeasibleSolutionInPool(int solutionIndex) throws IloException {
-        Route path        = new Route();
-        int   lastNode    = instance.getDepot();
-        int   currentNode = getNextNodeInPath(lastNode, solutionIndex);
+        Route.Builder path        = new Route.Builder(instance);
+        int           lastNode    = instance.getDepot();
+        int           currentNode = getNextNodeInPath(lastNode, solutionIndex);
         while (currentNode != instance.getDepot()) {
             path.addNode(currentNode, instance.getEdgeWeight(lastNode, currentNode));
             lastNode    = currentNode;
@@ -234,7 +236,7 @@ public class ILPPricingProblem extends PricingProblem {
         }
         path.addNode(currentNode, instance.getEdgeWeight(lastNode, currentNode));
         path.addCustomers(getVisitedCustomers(solutionIndex));
-        return path;
+        return path.build();
     }
 
     private double getInitialCost(RMPLinearSolution rmpSolution) {
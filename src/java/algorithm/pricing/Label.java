@@ -5,8 +5,31 @@ import java.util.BitSet;
 import java.util.Collections;
 import java.util.List;
 
-public record Label(
-    int demand, double cost, int node, BitSet visitedNodes, BitSet visitedCustomers, Label parent) {
+public final class Label {
+
+  private final int demand;
+  private final double cost;
+  private final int node;
+  private final BitSet visitedNodes;
+  private final BitSet visitedCustomers;
+  private Label parent;
+  private boolean extended;
+  private boolean dead;
+
+  public Label(
+      int demand, double cost, int node, BitSet visitedNodes, BitSet visitedCustomers, Label parent) {
+    this.demand = demand;
+    this.cost = cost;
+    this.node = node;
+    this.visitedNodes = visitedNodes;
+    this.visitedCustomers = visitedCustomers;
+    this.parent = parent;
+    this.extended = false;
+    this.dead = false;
+    if (parent != null) {
+      parent.extended = true;
+    }
+  }
 
   public static Label getRootLabel(int startNode, int numberOfNodes, double cost) {
     BitSet visitedNodes = new BitSet(numberOfNodes);
@@ -15,6 +38,46 @@ public record Label(
     return new Label(0, cost, startNode, visitedNodes, visitedCustomers, null);
   }
 
+  public int demand() {
+    return demand;
+  }
+
+  public double cost() {
+    return cost;
+  }
+
+  public int node() {
+    return node;
+  }
+
+  public BitSet visitedNodes() {
+    return visitedNodes;
+  }
+
+  public BitSet visitedCustomers() {
+    return visitedCustomers;
+  }
+
+  public Label parent() {
+    return parent;
+  }
+
+  /**
+   * Marks the label as dominated. Dead labels are skipped when popped from the open queues. A label
+   * that was never extended also drops its parent reference, so the part of the chain that only it
+   * kept alive can be reclaimed. Extended labels keep it since their children still need the path.
+   */
+  public void kill() {
+    this.dead = true;
+    if (!extended) {
+      this.parent = null;
+    }
+  }
+
+  public boolean isDead() {
+    return dead;
+  }
+
   public boolean isNodeVisited(int node) {
     return visitedNodes.get(node);
   }
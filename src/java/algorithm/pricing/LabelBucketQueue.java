@@ -0,0 +1,58 @@
+package algorithm.pricing;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Open labels bucketed by demand. Demand is a bounded integer resource, so labels are pushed and
+ * popped in O(1) (amortized over the buckets skipped by the minimum pointer) in nondecreasing order of
+ * demand. Labels with equal demand are popped in insertion order.
+ */
+class LabelBucketQueue {
+
+  private final List<ArrayDeque<Label>> buckets;
+  private int minDemand;
+  private int size;
+
+  public LabelBucketQueue(int capacity) {
+    this.buckets = new ArrayList<>(capacity + 1);
+    for (int demand = 0; demand <= capacity; demand++) {
+      buckets.add(null);
+    }
+    this.minDemand = capacity + 1;
+    this.size = 0;
+  }
+
+  public void add(Label label) {
+    int demand = label.demand();
+    ArrayDeque<Label> bucket = buckets.get(demand);
+    if (bucket == null) {
+      bucket = new ArrayDeque<>();
+      buckets.set(demand, bucket);
+    }
+    bucket.addLast(label);
+    minDemand = Math.min(minDemand, demand);
+    size++;
+  }
+
+  public Label remove() {
+    if (size == 0) {
+      throw new IllegalStateException("Queue is empty");
+    }
+    ArrayDeque<Label> bucket = buckets.get(minDemand);
+    while (bucket == null || bucket.isEmpty()) {
+      bucket = buckets.get(++minDemand);
+    }
+    size--;
+    return bucket.removeFirst();
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public int size() {
+    return size;
+  }
+}
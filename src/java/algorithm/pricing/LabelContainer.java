@@ -4,6 +4,10 @@ import java.util.List;
 
 public interface LabelContainer {
 
+    /**
+     * Stores label and removes every stored label it dominates. Removed labels, and label itself if it
+     * turns out to be dominated, are killed so the open queues skip them.
+     */
     void addLabel(Label label);
 
     boolean dominates(Label label);
@@ -11,4 +15,7 @@ public interface LabelContainer {
     List<Label> getNegativeReducedCostLabels();
 
     List<Label> getLabels();
+
+    /** Number of labels stored. */
+    int size();
 }
@@ -1,89 +1,91 @@
 package algorithm.pricing;
 
 import algorithm.RMPLinearSolution;
-import algorithm.branching.BranchOnVisitFlow;
 import commons.*;
 
 import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
-import java.util.stream.IntStream;
+import java.util.function.Predicate;
 
 public class LabelSettingAlgorithm {
 
   private static final double EPSILON = Utils.DEFAULT_EPSILON;
   private static final int STOP_AFTER_N_SOLUTIONS = 1000;
   private static final boolean STOP_EARLY = false;
-  private static final Comparator<Label> LABEL_COMPARATOR =
-      Comparator.comparing(Label::demand).thenComparing(Label::cost);
+  // Poll the stopwatch once every 256 labels or merge attempts
+  private static final int TIME_CHECK_MASK = 0xFF;
 
   private final Instance instance;
-  private final RMPLinearSolution rmpSolution;
   private final ESPPRCGraph graph;
   private final ESPPRCGraph reversedGraph;
-  private final Map<Integer, Double> dualValues;
-  private final Map<Integer, List<BranchOnVisitFlow>> branchesIndexedByCustomer;
+  private final DualVector duals;
+  private final VisitFlowBranchIndex fwBranchIndex;
+  private final VisitFlowBranchIndex bwBranchIndex;
   private final boolean applyHeuristics;
   private final double alpha;
   private final LabelContainer[] fwNonDominatedLabels;
   private final LabelContainer[] bwNonDominatedLabels;
   private int labelsProcessed;
+  private long labelsCreated;
+  private long labelsDominated;
+  private Duration searchTime;
+  private Duration joinTime;
+  private final LabelingBudgetTracker budgetTracker;
+  private Stopwatch stopwatch;
+  private long joinAttempts;
+  private boolean enumerating;
 
   public LabelSettingAlgorithm(
       Instance instance, RMPLinearSolution rmpSolution, boolean applyHeuristics) {
+    this(instance, rmpSolution, applyHeuristics, new BitSet());
+  }
+
+  /**
+   * @param removedArcs arcs of the ESPPRC graph that no path may use, see {@link
+   *     PricingProblem#setRemovedArcs}
+   */
+  public LabelSettingAlgorithm(
+      Instance instance,
+      RMPLinearSolution rmpSolution,
+      boolean applyHeuristics,
+      BitSet removedArcs) {
     this.instance = instance;
-    this.rmpSolution = rmpSolution;
     this.labelsProcessed = 0;
+    this.labelsCreated = 0;
+    this.labelsDominated = 0;
+    this.searchTime = Duration.ZERO;
+    this.joinTime = Duration.ZERO;
+    this.enumerating = false;
     this.applyHeuristics = applyHeuristics;
-    this.graph = new ESPPRCGraph(instance);
-    this.reversedGraph = new ESPPRCGraph(instance, true);
-    this.dualValues = computeDualVariables(instance, rmpSolution);
+    this.graph = new ESPPRCGraph(instance, false, removedArcs);
+    this.reversedGraph = new ESPPRCGraph(instance, true, removedArcs);
+    this.duals = new DualVector(instance, rmpSolution);
     this.alpha = computeCostFactor(graph);
+    this.budgetTracker = new LabelingBudgetTracker(graph.getSize(), instance.getCapacity());
     this.fwNonDominatedLabels = selectLabelContainer(applyHeuristics, graph, instance);
     this.bwNonDominatedLabels = selectLabelContainer(applyHeuristics, graph, instance);
-    this.branchesIndexedByCustomer = getBranchesIndexedByCustomer(rmpSolution, instance);
+    this.fwBranchIndex =
+        new VisitFlowBranchIndex(rmpSolution.getVisitFlowDuals(), graph.getSize());
+    this.bwBranchIndex =
+        new VisitFlowBranchIndex(rmpSolution.getVisitFlowDuals(), graph.getSize(), true);
   }
 
   public LabelSettingAlgorithm(Instance instance, RMPLinearSolution rmpSolution) {
     this(instance, rmpSolution, false);
   }
 
-  private static Map<Integer, Double> computeDualVariables(
-      Instance instance, RMPLinearSolution rmpSolution) {
-    Map<Integer, Double> dualValues = new HashMap<>();
-    for (int s = 0; s < instance.getNumberOfCustomers(); s++) {
-      dualValues.put(instance.getCustomer(s), rmpSolution.getCustomerDual(s));
-    }
-    return dualValues;
-  }
-
-  private static Map<Integer, List<BranchOnVisitFlow>> getBranchesIndexedByCustomer(
-      RMPLinearSolution rmpSolution, Instance instance) {
-    Map<Integer, List<BranchOnVisitFlow>> branchesIndexedByCustomer = new HashMap<>();
-    for (BranchOnVisitFlow branch : rmpSolution.getVisitFlowDuals().keySet()) {
-      branchesIndexedByCustomer.putIfAbsent(branch.getCustomer(), new ArrayList<>());
-      branchesIndexedByCustomer.get(branch.getCustomer()).add(branch);
-    }
-    for (int customer : instance.getCustomers()) {
-      branchesIndexedByCustomer.putIfAbsent(customer, List.of());
-    }
-    return branchesIndexedByCustomer;
-  }
-
   private static LabelContainer[] selectLabelContainer(
       boolean applyHeuristics, ESPPRCGraph graph, Instance instance) {
-    if (applyHeuristics) {
-      RelaxedLabelContainer[] ret = new RelaxedLabelContainer[graph.getSize()];
-      for (int i = 0; i < ret.length; i++) {
-        ret[i] = new RelaxedLabelContainer(instance.getCapacity() + 1);
-      }
-      return ret;
-    } else {
-      ExactLabelContainer[] ret = new ExactLabelContainer[graph.getSize()];
-      for (int i = 0; i < ret.length; i++) {
-        ret[i] = new ExactLabelContainer();
-      }
-      return ret;
-    }
+    // Typed as LabelContainer[] so that exact containers can be replaced by relaxed ones
+    LabelContainer[] ret = new LabelContainer[graph.getSize()];
+    for (int i = 0; i < ret.length; i++) {
+      ret[i] =
+          applyHeuristics
+              ? new RelaxedLabelContainer(instance.getCapacity() + 1)
+              : new ExactLabelContainer();
+    }
+    return ret;
   }
 
   private static double computeCostFactor(ESPPRCGraph graph) {
@@ -98,9 +100,72 @@ public class LabelSettingAlgorithm {
     return 1.0 / sum;
   }
 
+  /**
+   * Sets the limits on stored labels. When exact dominance is used and a limit is reached, the rest
+   * of the run uses heuristic dominance, see {@link #isBudgetExceeded()}.
+   */
+  public void setBudget(LabelingBudget budget) {
+    budgetTracker.setBudget(budget);
+  }
+
   public List<Route> run(Duration timeLimit) {
-    bidirectionalSearch(new Stopwatch(timeLimit));
-    return join();
+    return run(timeLimit, CancellationToken.NONE);
+  }
+
+  /**
+   * Runs the search until it finishes, timeLimit elapses or the token is cancelled. A run that is
+   * stopped returns the paths joined so far.
+   */
+  public List<Route> run(Duration timeLimit, CancellationToken cancellationToken) {
+    Instant start = Instant.now();
+    stopwatch = new Stopwatch(timeLimit, cancellationToken);
+    bidirectionalSearch();
+    searchTime = Utils.getElapsedTime(start);
+
+    Instant joinStart = Instant.now();
+    List<Route> paths = join();
+    joinTime = Utils.getElapsedTime(joinStart);
+    return paths;
+  }
+
+  /**
+   * Enumerates every elementary route whose reduced cost is below threshold, instead of looking for
+   * negative reduced cost routes. Customers with no dual are extended too, and a label only
+   * dominates another one if it is at least threshold cheaper.
+   *
+   * <p>This is exact only if no route has a negative reduced cost, that is, once column generation
+   * converged on the duals: every route through the dominated label then costs at least threshold
+   * more than the same route through the dominating one, which is non-negative. The enumeration
+   * gives up if it stops early, exceeds the labeling budget or finds more than maxRoutes routes.
+   *
+   * @param isCompatible whether a route satisfies the branches of the node; the labels do not
+   *     enforce branches whose columns are all masked in the RMP
+   * @return the routes, or empty if the enumeration gave up
+   */
+  public Optional<List<Route>> enumerate(
+      double threshold,
+      int maxRoutes,
+      Predicate<Route> isCompatible,
+      Duration timeLimit,
+      CancellationToken cancellationToken) {
+    Instant start = Instant.now();
+    stopwatch = new Stopwatch(timeLimit, cancellationToken);
+    enumerating = true;
+    double dominanceMargin = Math.max(threshold, EPSILON);
+    for (int i = 0; i < graph.getSize(); i++) {
+      fwNonDominatedLabels[i] = new ExactLabelContainer(dominanceMargin);
+      bwNonDominatedLabels[i] = new ExactLabelContainer(dominanceMargin);
+    }
+    bidirectionalSearch();
+    searchTime = Utils.getElapsedTime(start);
+    if (isStopped()) {
+      return Optional.empty();
+    }
+
+    Instant joinStart = Instant.now();
+    Optional<List<Route>> routes = joinAll(threshold, maxRoutes, isCompatible);
+    joinTime = Utils.getElapsedTime(joinStart);
+    return routes;
   }
 
   private double getLittleFakeCost(Label label, int customer) {
@@ -111,18 +176,17 @@ public class LabelSettingAlgorithm {
   }
 
   private Label extendToCustomer(Label label, int customer, boolean forward) {
-    double updatedCost = label.cost() - dualValues.get(customer);
+    double updatedCost = label.cost() - duals.getCustomerDual(customer);
 
     if (applyHeuristics) {
       updatedCost += getLittleFakeCost(label, customer);
     }
 
     // Subtract branching dual variables
-    for (BranchOnVisitFlow branch : branchesIndexedByCustomer.get(customer)) {
-      int start = forward ? branch.getEdge().getStart() : branch.getEdge().getEnd();
-      int end = forward ? branch.getEdge().getEnd() : branch.getEdge().getStart();
-      if (label.containsEdge(start, end)) {
-        updatedCost -= rmpSolution.getVisitFlowDuals().get(branch);
+    VisitFlowBranchIndex branchIndex = forward ? fwBranchIndex : bwBranchIndex;
+    for (int branch : branchIndex.getBranchesOfCustomer(customer)) {
+      if (label.containsEdge(branchIndex.getStart(branch), branchIndex.getEnd(branch))) {
+        updatedCost -= branchIndex.getDual(branch);
       }
     }
 
@@ -148,13 +212,10 @@ public class LabelSettingAlgorithm {
     }
 
     // Subtract branching dual variables
-    for (BranchOnVisitFlow branch : rmpSolution.getVisitFlowDuals().keySet()) {
-      int start = forward ? branch.getEdge().getStart() : branch.getEdge().getEnd();
-      int end = forward ? branch.getEdge().getEnd() : branch.getEdge().getStart();
-      if (label.isCustomerVisited(branch.getCustomer())
-          && start == currentNode
-          && end == nextNode) {
-        updatedCost -= rmpSolution.getVisitFlowDuals().get(branch);
+    VisitFlowBranchIndex branchIndex = forward ? fwBranchIndex : bwBranchIndex;
+    for (int branch : branchIndex.getBranchesOnArc(currentNode, nextNode)) {
+      if (label.isCustomerVisited(branchIndex.getCustomer(branch))) {
+        updatedCost -= branchIndex.getDual(branch);
       }
     }
 
@@ -190,28 +251,29 @@ public class LabelSettingAlgorithm {
       return true;
     }
 
-    if (dualValues.get(customer) < EPSILON) {
+    if (!enumerating && duals.getCustomerDual(customer) < EPSILON) {
       // Heuristic: if a customer provides no reduction in total cost,
       // can be pruned
       return true;
     }
 
     // Branching pruning rules
-    for (BranchOnVisitFlow branch : branchesIndexedByCustomer.get(customer)) {
-      int start = forward ? branch.getEdge().getStart() : branch.getEdge().getEnd();
-      int end = forward ? branch.getEdge().getEnd() : branch.getEdge().getStart();
-      if (branch.getBound() == 1 && label.forbidsEdge(start, end)) {
+    VisitFlowBranchIndex branchIndex = forward ? fwBranchIndex : bwBranchIndex;
+    for (int branch : branchIndex.getBranchesOfCustomer(customer)) {
+      int start = branchIndex.getStart(branch);
+      int end = branchIndex.getEnd(branch);
+      if (branchIndex.getBound(branch) == 1 && label.forbidsEdge(start, end)) {
         return true;
-      } else if (branch.getBound() == 0 && label.containsEdge(start, end)) {
+      } else if (branchIndex.getBound(branch) == 0 && label.containsEdge(start, end)) {
         return true;
       }
     }
 
     // Check dominance
-    if (forward && fwNonDominatedLabels[label.node()].dominates(label)) {
-      return true;
-    }
-    if (!forward && bwNonDominatedLabels[label.node()].dominates(label)) {
+    LabelContainer labels =
+        forward ? fwNonDominatedLabels[label.node()] : bwNonDominatedLabels[label.node()];
+    if (labels.dominates(label)) {
+      labelsDominated++;
       return true;
     }
     return false;
@@ -239,90 +301,112 @@ public class LabelSettingAlgorithm {
       return true;
     }
 
-    // Branching pruning rules
-    for (BranchOnVisitFlow branch : rmpSolution.getVisitFlowDuals().keySet()) {
-      if (label.isCustomerVisited(branch.getCustomer())) {
-        int start = forward ? branch.getEdge().getStart() : branch.getEdge().getEnd();
-        int end = forward ? branch.getEdge().getEnd() : branch.getEdge().getStart();
-        if (branch.getBound() == 1 && start != previousNode && end == currentNode) {
+    // Branching pruning rules: only branches on arcs that enter the current node or leave the
+    // previous one can be violated by this extension
+    VisitFlowBranchIndex branchIndex = forward ? fwBranchIndex : bwBranchIndex;
+    for (int branch : branchIndex.getBranchesEndingAt(currentNode)) {
+      if (label.isCustomerVisited(branchIndex.getCustomer(branch))) {
+        int start = branchIndex.getStart(branch);
+        if (branchIndex.getBound(branch) == 1 && start != previousNode) {
           return true;
-        } else if (branch.getBound() == 1 && start == previousNode && end != currentNode) {
-          return true;
-        } else if (branch.getBound() == 0 && start == previousNode && end == currentNode) {
+        } else if (branchIndex.getBound(branch) == 0 && start == previousNode) {
           return true;
         }
       }
     }
+    for (int branch : branchIndex.getBranchesStartingAt(previousNode)) {
+      if (label.isCustomerVisited(branchIndex.getCustomer(branch))
+          && branchIndex.getBound(branch) == 1
+          && branchIndex.getEnd(branch) != currentNode) {
+        return true;
+      }
+    }
 
     // Check dominance
-    if (forward && fwNonDominatedLabels[currentNode].dominates(label)) {
+    LabelContainer labels =
+        forward ? fwNonDominatedLabels[currentNode] : bwNonDominatedLabels[currentNode];
+    if (labels.dominates(label)) {
+      labelsDominated++;
       return true;
     }
-    if (!forward && bwNonDominatedLabels[currentNode].dominates(label)) {
-      return true;
-    }
-
     return false;
   }
 
-  private double getInitialCost() {
-    double initialCost = -rmpSolution.getVehiclesDual();
-    for (double fleetSizeDual : rmpSolution.getFleetSizeDuals()) {
-      initialCost -= fleetSizeDual;
+  private void storeLabel(LabelContainer[] containers, int node, Label label) {
+    // Heuristic dominance would miss routes, so the enumeration stops instead
+    if (budgetTracker.storeLabel(containers, node, label, !applyHeuristics) && !enumerating) {
+      budgetTracker.relaxDominance(fwNonDominatedLabels, bwNonDominatedLabels);
     }
-    return initialCost;
   }
 
-  private void bidirectionalSearch(Stopwatch stopwatch) {
-    List<Queue<Label>> fwOpenLabels = new ArrayList<>();
-    List<Queue<Label>> bwOpenLabels = new ArrayList<>();
-
-    for (int i = 0; i < graph.getSize(); i++) {
-      fwOpenLabels.add(new PriorityQueue<>(LABEL_COMPARATOR));
-      bwOpenLabels.add(new PriorityQueue<>(LABEL_COMPARATOR));
+  private LabelBucketQueue[] createOpenLabelQueues() {
+    LabelBucketQueue[] ret = new LabelBucketQueue[graph.getSize()];
+    for (int i = 0; i < ret.length; i++) {
+      ret[i] = new LabelBucketQueue(instance.getCapacity());
     }
+    return ret;
+  }
 
-    Label fwRoot = Label.getRootLabel(graph.getSource(), graph.getSize(), getInitialCost());
+  private boolean isStopped() {
+    return stopwatch.timedOut() || (enumerating && budgetTracker.isExceeded());
+  }
+
+  private boolean timedOut(long counter) {
+    return (counter & TIME_CHECK_MASK) == 0 && isStopped();
+  }
+
+  private void bidirectionalSearch() {
+    LabelBucketQueue[] fwOpenLabels = createOpenLabelQueues();
+    LabelBucketQueue[] bwOpenLabels = createOpenLabelQueues();
+
+    Label fwRoot = Label.getRootLabel(graph.getSource(), graph.getSize(), duals.getInitialCost());
     Label bwRoot = Label.getRootLabel(graph.getSink(), graph.getSize(), 0);
     fwNonDominatedLabels[fwRoot.node()].addLabel(fwRoot);
     bwNonDominatedLabels[bwRoot.node()].addLabel(bwRoot);
-    fwOpenLabels.get(fwRoot.node()).add(fwRoot);
-    bwOpenLabels.get(bwRoot.node()).add(bwRoot);
+    fwOpenLabels[fwRoot.node()].add(fwRoot);
+    bwOpenLabels[bwRoot.node()].add(bwRoot);
 
-    Queue<Integer> openNodes = new ArrayDeque<>();
+    OpenNodeQueue openNodes = new OpenNodeQueue(graph.getSize());
     openNodes.add(fwRoot.node());
     openNodes.add(bwRoot.node());
 
     while (!openNodes.isEmpty()) {
 
       int currentNode = openNodes.remove();
-      if (stopwatch.timedOut()) {
+      if (isStopped()) {
         return;
       }
 
-      Set<Integer> discovered = forwardSearch(fwOpenLabels, currentNode);
-      discovered.addAll(backwardSearch(bwOpenLabels, currentNode));
-
-      for (int nextNode : discovered) {
-        if (nextNode != currentNode && !openNodes.contains(nextNode)) {
-          openNodes.add(nextNode);
-        }
-      }
+      forwardSearch(fwOpenLabels, openNodes, currentNode);
+      backwardSearch(bwOpenLabels, openNodes, currentNode);
     }
   }
 
-  private Set<Integer> backwardSearch(List<Queue<Label>> bwOpenLabels, int currentNode) {
-    Set<Integer> discovered = new HashSet<>();
-    Queue<Label> currentOpenLabels = bwOpenLabels.get(currentNode);
+  private void backwardSearch(
+      LabelBucketQueue[] bwOpenLabels, OpenNodeQueue openNodes, int currentNode) {
+    LabelBucketQueue currentOpenLabels = bwOpenLabels[currentNode];
+    int instanceNode = reversedGraph.translateFromESPPRCNode(currentNode);
+    int start = instance.getReverseNeighborhoodStart(instanceNode);
+    int end = instance.getReverseNeighborhoodEnd(instanceNode);
     while (!currentOpenLabels.isEmpty()) {
-      Label currentLabel = bwOpenLabels.get(currentNode).remove();
+      Label currentLabel = currentOpenLabels.remove();
+      if (currentLabel.isDead()) {
+        // Dominated after being stored
+        labelsDominated++;
+        continue;
+      }
       labelsProcessed++;
+      if (timedOut(labelsProcessed)) {
+        return;
+      }
 
       // Extend to customers
-      for (int customer : reversedGraph.getReverseNeighborhood(currentNode)) {
+      for (int i = start; i < end; i++) {
+        int customer = instance.getReverseNeighborhoodCustomer(i);
         Label nextLabel = extendToCustomer(currentLabel, customer, false);
+        labelsCreated++;
         if (!isCustomerUnreachable(nextLabel, customer, false)) {
-          bwNonDominatedLabels[currentNode].addLabel(nextLabel);
+          storeLabel(bwNonDominatedLabels, currentNode, nextLabel);
           currentOpenLabels.add(nextLabel);
         }
       }
@@ -330,28 +414,41 @@ public class LabelSettingAlgorithm {
       // Extend to nodes
       for (int nextNode : reversedGraph.getAdjacentNodes(currentNode)) {
         Label nextLabel = extendToNode(currentLabel, nextNode, false);
+        labelsCreated++;
         if (!isNodeUnreachable(nextLabel, false)) {
-          bwNonDominatedLabels[nextNode].addLabel(nextLabel);
-          bwOpenLabels.get(nextNode).add(nextLabel);
-          discovered.add(nextNode);
+          storeLabel(bwNonDominatedLabels, nextNode, nextLabel);
+          bwOpenLabels[nextNode].add(nextLabel);
+          openNodes.add(nextNode);
         }
       }
     }
-    return discovered;
   }
 
-  private Set<Integer> forwardSearch(List<Queue<Label>> fwOpenLabels, int currentNode) {
-    Set<Integer> discovered = new HashSet<>();
-    Queue<Label> currentOpenLabels = fwOpenLabels.get(currentNode);
+  private void forwardSearch(
+      LabelBucketQueue[] fwOpenLabels, OpenNodeQueue openNodes, int currentNode) {
+    LabelBucketQueue currentOpenLabels = fwOpenLabels[currentNode];
+    int instanceNode = graph.translateFromESPPRCNode(currentNode);
+    int start = instance.getReverseNeighborhoodStart(instanceNode);
+    int end = instance.getReverseNeighborhoodEnd(instanceNode);
     while (!currentOpenLabels.isEmpty()) {
       Label currentLabel = currentOpenLabels.remove();
+      if (currentLabel.isDead()) {
+        // Dominated after being stored
+        labelsDominated++;
+        continue;
+      }
       labelsProcessed++;
+      if (timedOut(labelsProcessed)) {
+        return;
+      }
 
       // Extend to customers
-      for (int customer : graph.getReverseNeighborhood(currentNode)) {
+      for (int i = start; i < end; i++) {
+        int customer = instance.getReverseNeighborhoodCustomer(i);
         Label nextLabel = extendToCustomer(currentLabel, customer, true);
+        labelsCreated++;
         if (!isCustomerUnreachable(nextLabel, customer, true)) {
-          fwNonDominatedLabels[currentNode].addLabel(nextLabel);
+          storeLabel(fwNonDominatedLabels, currentNode, nextLabel);
           currentOpenLabels.add(nextLabel);
         }
       }
@@ -359,15 +456,14 @@ public class LabelSettingAlgorithm {
       // Extend to nodes
       for (int nextNode : graph.getAdjacentNodes(currentNode)) {
         Label nextLabel = extendToNode(currentLabel, nextNode, true);
+        labelsCreated++;
         if (!isNodeUnreachable(nextLabel, true)) {
-          fwNonDominatedLabels[nextNode].addLabel(nextLabel);
-          fwOpenLabels.get(nextNode).add(nextLabel);
-          discovered.add(nextNode);
+          storeLabel(fwNonDominatedLabels, nextNode, nextLabel);
+          fwOpenLabels[nextNode].add(nextLabel);
+          openNodes.add(nextNode);
         }
       }
     }
-
-    return discovered;
   }
 
   /**
@@ -391,15 +487,17 @@ public class LabelSettingAlgorithm {
     BitSet customers = (BitSet) forward.visitedCustomers().clone();
     customers.or(backward.visitedCustomers());
 
-    for (int customer : Utils.bitSetToIntSet(customers)) {
-      for (BranchOnVisitFlow branch : branchesIndexedByCustomer.get(customer)) {
-        int start = branch.getEdge().getStart();
-        int end = branch.getEdge().getEnd();
-        if (branch.getBound() == 1
+    for (int customer = customers.nextSetBit(0);
+        customer >= 0;
+        customer = customers.nextSetBit(customer + 1)) {
+      for (int branch : fwBranchIndex.getBranchesOfCustomer(customer)) {
+        int start = fwBranchIndex.getStart(branch);
+        int end = fwBranchIndex.getEnd(branch);
+        if (fwBranchIndex.getBound(branch) == 1
             && !forward.containsEdge(start, end)
             && !backward.containsEdge(end, start)) {
           return false;
-        } else if (branch.getBound() == 0
+        } else if (fwBranchIndex.getBound(branch) == 0
             && (forward.containsEdge(start, end) || backward.containsEdge(end, start))) {
           return false;
         }
@@ -409,7 +507,7 @@ public class LabelSettingAlgorithm {
   }
 
   private Route merge(Label forward, Label backward) {
-    Route path = new Route();
+    Route.Builder path = new Route.Builder(instance);
 
     // Add forward nodes
     List<Integer> fwNodes = forward.getNodesInOrder();
@@ -436,7 +534,7 @@ public class LabelSettingAlgorithm {
     customers.or(backward.visitedCustomers());
     path.addCustomers(Utils.bitSetToIntSet(customers));
 
-    return path;
+    return path.build();
   }
 
   private List<Route> join() {
@@ -448,10 +546,17 @@ public class LabelSettingAlgorithm {
       List<Label> fwLabels = fwNonDominatedLabels[i].getLabels();
       List<Label> bwLabels = bwNonDominatedLabels[i].getLabels();
 
+      // A stopped search may not have reached every node
+      if (fwLabels.isEmpty() || bwLabels.isEmpty()) {
+        continue;
+      }
       if (fwLabels.getFirst().cost() + bwLabels.getFirst().cost() < upperBound) {
         for (Label forward : fwLabels) {
           if (forward.cost() + bwLabels.getFirst().cost() < upperBound) {
             for (Label backward : bwLabels) {
+              if (timedOut(++joinAttempts)) {
+                return new ArrayList<>(ret);
+              }
               if (forward.cost() + backward.cost() < upperBound) {
                 if (canMerge(forward, backward)) {
                   ret.add(merge(forward, backward));
@@ -471,26 +576,69 @@ public class LabelSettingAlgorithm {
     return new ArrayList<>(ret);
   }
 
-  private Optional<Integer> selectBestNode(
-      List<Queue<Label>> fwOpenLabels, List<Queue<Label>> bwOpenLabels) {
-    Optional<Integer> fwBestNode =
-        IntStream.range(0, graph.getSize())
-            .mapToObj(fwOpenLabels::get)
-            .filter(q -> !q.isEmpty())
-            .map(Queue::peek)
-            .min(LABEL_COMPARATOR)
-            .map(Label::node);
-    Optional<Integer> bwBestNode =
-        IntStream.range(0, graph.getSize())
-            .mapToObj(bwOpenLabels::get)
-            .filter(q -> !q.isEmpty())
-            .map(Queue::peek)
-            .min(LABEL_COMPARATOR)
-            .map(Label::node);
-    return fwBestNode.isEmpty() ? bwBestNode : fwBestNode;
+  /**
+   * Merges every pair of labels whose route costs less than threshold, see {@link #enumerate}. Of
+   * the compatible routes serving each set of customers only the cheapest one is kept, since they
+   * only differ in cost for the RMP once the incompatible ones are left out.
+   */
+  private Optional<List<Route>> joinAll(
+      double threshold, int maxRoutes, Predicate<Route> isCompatible) {
+    Map<BitSet, Route> routesByCustomers = new HashMap<>();
+    Map<BitSet, Double> costsByCustomers = new HashMap<>();
+    for (int i = 0; i < graph.getSize(); i++) {
+      List<Label> fwLabels = fwNonDominatedLabels[i].getLabels();
+      List<Label> bwLabels = bwNonDominatedLabels[i].getLabels();
+      // Both lists are sorted by cost
+      for (Label forward : fwLabels) {
+        if (bwLabels.isEmpty() || forward.cost() + bwLabels.getFirst().cost() >= threshold) {
+          break;
+        }
+        for (Label backward : bwLabels) {
+          if (forward.cost() + backward.cost() >= threshold) {
+            break;
+          }
+          if (timedOut(++joinAttempts)) {
+            return Optional.empty();
+          }
+          BitSet customers = (BitSet) forward.visitedCustomers().clone();
+          customers.or(backward.visitedCustomers());
+          double cost = forward.cost() + backward.cost();
+          if (customers.isEmpty()
+              || cost >= costsByCustomers.getOrDefault(customers, Double.MAX_VALUE)
+              || !canMerge(forward, backward)) {
+            continue;
+          }
+          Route route = merge(forward, backward);
+          if (isCompatible.test(route)) {
+            routesByCustomers.put(customers, route);
+            costsByCustomers.put(customers, cost);
+            if (routesByCustomers.size() > maxRoutes) {
+              return Optional.empty();
+            }
+          }
+        }
+      }
+    }
+    return Optional.of(new ArrayList<>(routesByCustomers.values()));
   }
 
   public int getLabelsProcessed() {
     return labelsProcessed;
   }
+
+  /** True iff a limit of the budget was reached and the run finished with heuristic dominance. */
+  public boolean isBudgetExceeded() {
+    return budgetTracker.isExceeded();
+  }
+
+  public PricingStatistics getStatistics() {
+    return new PricingStatistics(
+        Duration.ZERO,
+        searchTime,
+        joinTime,
+        labelsCreated,
+        labelsDominated,
+        labelsProcessed,
+        budgetTracker.isExceeded());
+  }
 }
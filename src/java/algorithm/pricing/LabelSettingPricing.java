@@ -10,9 +10,7 @@ import commons.Utils;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 public class LabelSettingPricing extends PricingProblem {
 
@@ -20,7 +18,9 @@ public class LabelSettingPricing extends PricingProblem {
   private final boolean solveHeuristically;
   private final boolean isMono;
   private boolean forceExactSolution;
+  private LabelingBudget budget;
   private List<Route> paths;
+  private int labelsProcessed;
 
   public LabelSettingPricing(Instance instance) {
     this(instance, false);
@@ -29,42 +29,34 @@ public class LabelSettingPricing extends PricingProblem {
   public LabelSettingPricing(Instance instance, boolean solveHeuristically) {
     this.instance = instance;
     this.paths = new ArrayList<>();
+    this.labelsProcessed = 0;
     this.solveHeuristically = solveHeuristically;
     this.forceExactSolution = false;
+    this.budget = LabelingBudget.UNLIMITED;
     this.isMono = false;
   }
 
   public LabelSettingPricing(Instance instance, boolean solveHeuristically, boolean isMono) {
     this.instance = instance;
     this.paths = new ArrayList<>();
+    this.labelsProcessed = 0;
     this.solveHeuristically = solveHeuristically;
     this.forceExactSolution = false;
+    this.budget = LabelingBudget.UNLIMITED;
     this.isMono = isMono;
   }
 
-  private double getInitialCost(RMPLinearSolution rmpSolution) {
-    double initialCost = -rmpSolution.getVehiclesDual();
-    for (double fleetSizeDual : rmpSolution.getFleetSizeDuals()) {
-      initialCost -= fleetSizeDual;
-    }
-    return initialCost;
-  }
-
-  private double getObjValue(
-      Route path, Map<Integer, Double> dualValues, RMPLinearSolution rmpSolution) {
-    double sum = path.getCustomersServed().stream().mapToDouble(dualValues::get).sum();
-    return path.getCost() - sum + getInitialCost(rmpSolution);
+  /**
+   * Sets the limits on the labels stored by each labeling run. A run that reaches them finishes
+   * with heuristic dominance, which is reported in the statistics of the pricing solution. An exact
+   * run that finds no columns that way is repeated without the budget.
+   */
+  public void setLabelingBudget(LabelingBudget budget) {
+    this.budget = budget;
   }
 
-  private double getMinObjValue(RMPLinearSolution rmpSolution) {
-    Map<Integer, Double> dualValues = new HashMap<>();
-    for (int s = 0; s < instance.getNumberOfCustomers(); s++) {
-      dualValues.put(instance.getCustomer(s), rmpSolution.getCustomerDual(s));
-    }
-    return paths.stream()
-        .mapToDouble(path -> getObjValue(path, dualValues, rmpSolution))
-        .min()
-        .orElse(0.0);
+  private double getMinObjValue(DualVector duals) {
+    return paths.stream().mapToDouble(duals::getReducedCost).min().orElse(0.0);
   }
 
   @Override
@@ -73,35 +65,58 @@ public class LabelSettingPricing extends PricingProblem {
 
     performBranching();
 
-    int labelsProcessed;
-
-    if (isMono) {
-      MonoDirectionalLabelingAlgorithm algorithm =
-          new MonoDirectionalLabelingAlgorithm(instance, rmpSolution, !forceExactSolution);
-      paths = algorithm.run(remainingTime);
-      labelsProcessed = algorithm.getLabelsProcessed();
-
-      if (paths.isEmpty() && !solveHeuristically) {
-        algorithm = new MonoDirectionalLabelingAlgorithm(instance, rmpSolution, false);
-        paths = algorithm.run(Utils.getRemainingTime(start, remainingTime));
-        labelsProcessed += algorithm.getLabelsProcessed();
-      }
-    } else {
-      LabelSettingAlgorithm algorithm =
-          new LabelSettingAlgorithm(instance, rmpSolution, !forceExactSolution);
-      paths = algorithm.run(remainingTime);
-      labelsProcessed = algorithm.getLabelsProcessed();
-
-      if (paths.isEmpty() && !solveHeuristically) {
-        algorithm = new LabelSettingAlgorithm(instance, rmpSolution, false);
-        paths = algorithm.run(Utils.getRemainingTime(start, remainingTime));
-        labelsProcessed += algorithm.getLabelsProcessed();
+    labelsProcessed = 0;
+    PricingStatistics statistics = new PricingStatistics();
+
+    PricingStatistics run = runAlgorithm(rmpSolution, !forceExactSolution, budget, remainingTime);
+    if (paths.isEmpty() && !solveHeuristically) {
+      statistics.addWork(run);
+      run =
+          runAlgorithm(rmpSolution, false, budget, Utils.getRemainingTime(start, remainingTime));
+      // Heuristic dominance may miss columns, so only a run without it proves there are none
+      if (paths.isEmpty() && run.isDominanceRelaxed()) {
+        statistics.addWork(run);
+        run =
+            runAlgorithm(
+                rmpSolution,
+                false,
+                LabelingBudget.UNLIMITED,
+                Utils.getRemainingTime(start, remainingTime));
       }
     }
+    statistics.add(run);
 
     forceExactSolution = false;
 
-    return new PricingSolution(getMinObjValue(rmpSolution), paths, labelsProcessed, true);
+    return new PricingSolution(
+        getMinObjValue(new DualVector(instance, rmpSolution)),
+        paths,
+        labelsProcessed,
+        true,
+        statistics);
+  }
+
+  /** Runs the labeling algorithm into paths and returns the statistics of the run. */
+  private PricingStatistics runAlgorithm(
+      RMPLinearSolution rmpSolution,
+      boolean applyHeuristics,
+      LabelingBudget budget,
+      Duration timeLimit) {
+    if (isMono) {
+      MonoDirectionalLabelingAlgorithm algorithm =
+          new MonoDirectionalLabelingAlgorithm(
+              instance, rmpSolution, applyHeuristics, getRemovedArcs());
+      algorithm.setBudget(budget);
+      paths = algorithm.run(timeLimit, getCancellationToken());
+      labelsProcessed += algorithm.getLabelsProcessed();
+      return algorithm.getStatistics();
+    }
+    LabelSettingAlgorithm algorithm =
+        new LabelSettingAlgorithm(instance, rmpSolution, applyHeuristics, getRemovedArcs());
+    algorithm.setBudget(budget);
+    paths = algorithm.run(timeLimit, getCancellationToken());
+    labelsProcessed += algorithm.getLabelsProcessed();
+    return algorithm.getStatistics();
   }
 
   @Override
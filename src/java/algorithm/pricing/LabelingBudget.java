@@ -0,0 +1,51 @@
+package algorithm.pricing;
+
+/**
+ * Limits on the labels a labeling algorithm may store before it gives up exact dominance. The
+ * limits are checked whenever a label is stored: on the number of labels at its node, on the
+ * number of labels stored over all nodes, and on the approximate memory these labels take. Once
+ * any of them is reached the algorithm switches to the dominance of {@link RelaxedLabelContainer}
+ * for the rest of the call, so the result is no longer exact.
+ */
+public class LabelingBudget {
+
+  public static final LabelingBudget UNLIMITED =
+      new LabelingBudget(Integer.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+
+  // Object header and fields of a Label, plus its two BitSets without their words
+  private static final long LABEL_BASE_BYTES = 128;
+  private static final long BYTES_PER_BITSET_WORD = 2 * Long.BYTES;
+
+  private final int maxLabelsPerNode;
+  private final long maxLiveLabels;
+  private final long maxBytes;
+
+  public LabelingBudget(int maxLabelsPerNode, long maxLiveLabels, long maxBytes) {
+    this.maxLabelsPerNode = maxLabelsPerNode;
+    this.maxLiveLabels = maxLiveLabels;
+    this.maxBytes = maxBytes;
+  }
+
+  /** Approximate size in bytes of a label over a graph with the given number of nodes. */
+  public static long estimateLabelBytes(int numberOfNodes) {
+    return LABEL_BASE_BYTES + BYTES_PER_BITSET_WORD * ((numberOfNodes + 63) / 64);
+  }
+
+  public boolean isExceeded(int labelsAtNode, long liveLabels, long labelBytes) {
+    return labelsAtNode > maxLabelsPerNode
+        || liveLabels > maxLiveLabels
+        || liveLabels > maxBytes / labelBytes;
+  }
+
+  public int getMaxLabelsPerNode() {
+    return maxLabelsPerNode;
+  }
+
+  public long getMaxLiveLabels() {
+    return maxLiveLabels;
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+}
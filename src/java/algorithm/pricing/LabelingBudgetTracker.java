@@ -0,0 +1,72 @@
+package algorithm.pricing;
+
+/**
+ * Counts the labels a labeling run stores against its {@link LabelingBudget}, and relaxes the
+ * dominance of the run's label containers once the budget is exceeded.
+ */
+class LabelingBudgetTracker {
+
+  private final long labelBytes;
+  private final int capacity;
+  private LabelingBudget budget;
+  private long liveLabels;
+  private boolean exceeded;
+
+  LabelingBudgetTracker(int numberOfNodes, int capacity) {
+    this.labelBytes = LabelingBudget.estimateLabelBytes(numberOfNodes);
+    this.capacity = capacity;
+    this.budget = LabelingBudget.UNLIMITED;
+    this.liveLabels = 0;
+    this.exceeded = false;
+  }
+
+  void setBudget(LabelingBudget budget) {
+    this.budget = budget;
+  }
+
+  /**
+   * Stores label in the container of node.
+   *
+   * @param enforceBudget false for runs that already use heuristic dominance
+   * @return true iff this label made the run exceed its budget, which happens at most once
+   */
+  boolean storeLabel(LabelContainer[] containers, int node, Label label, boolean enforceBudget) {
+    LabelContainer labels = containers[node];
+    int sizeBefore = labels.size();
+    labels.addLabel(label);
+    liveLabels += labels.size() - sizeBefore;
+    if (enforceBudget && !exceeded && budget.isExceeded(labels.size(), liveLabels, labelBytes)) {
+      exceeded = true;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Replaces every container by a {@link RelaxedLabelContainer} holding its non-dominated labels.
+   * The labels left out are killed, so the open queues skip them.
+   */
+  void relaxDominance(LabelContainer[]... containerArrays) {
+    liveLabels = 0;
+    for (LabelContainer[] containers : containerArrays) {
+      for (int i = 0; i < containers.length; i++) {
+        LabelContainer relaxed = new RelaxedLabelContainer(capacity + 1);
+        // Cheapest labels first, so that every dominated label is found when it is offered
+        for (Label label : containers[i].getLabels()) {
+          if (relaxed.dominates(label)) {
+            label.kill();
+          } else {
+            relaxed.addLabel(label);
+          }
+        }
+        containers[i] = relaxed;
+        liveLabels += relaxed.size();
+      }
+    }
+  }
+
+  /** True iff a limit of the budget was reached during the run. */
+  boolean isExceeded() {
+    return exceeded;
+  }
+}
@@ -0,0 +1,278 @@
+package algorithm.pricing;
+
+import algorithm.RMPLinearSolution;
+import algorithm.branching.Branch;
+import algorithm.branching.BranchOnFleetSize;
+import algorithm.branching.BranchOnVisitFlow;
+import commons.Instance;
+import commons.Route;
+import commons.Stopwatch;
+import commons.Utils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Improves the paths in the basis of the RMP against the current duals. Each basic path is the seed
+ * of a best-improvement descent over node moves (2-opt, relocate, insert and remove) and customer
+ * moves (add and drop), and every path visited with negative reduced cost is returned as a column.
+ * Moves onto arcs removed by {@link #setRemovedArcs} are never taken. No optimality is proven, so
+ * this is only useful as a stage before an exact pricing, and the objective is never a bound.
+ */
+public class LocalSearchPricing extends PricingProblem {
+
+  private static final double EPSILON = Utils.DEFAULT_EPSILON;
+  private static final int MAX_MOVES_PER_PATH = 100;
+
+  private final Instance instance;
+  private final int depot;
+  // Size of the ESPPRC graph, whose arc ids index the removed arcs
+  private final int graphSize;
+  private DualVector duals;
+  private VisitFlowBranchIndex branchIndex;
+
+  public LocalSearchPricing(Instance instance) {
+    this.instance = instance;
+    this.depot = instance.getDepot();
+    this.graphSize = instance.getNumberOfNodes() + 1;
+    this.branchIndex = new VisitFlowBranchIndex(Map.of(), instance.getNumberOfNodes());
+  }
+
+  private static int[] reverse(int[] nodes, int from, int to) {
+    int[] ret = nodes.clone();
+    for (int i = from, j = to; i < j; i++, j--) {
+      ret[i] = nodes[j];
+      ret[j] = nodes[i];
+    }
+    return ret;
+  }
+
+  private static int[] relocate(int[] nodes, int from, int to) {
+    int[] ret = nodes.clone();
+    int node = nodes[from];
+    if (from < to) {
+      System.arraycopy(nodes, from + 1, ret, from, to - from);
+    } else {
+      System.arraycopy(nodes, to, ret, to + 1, from - to);
+    }
+    ret[to] = node;
+    return ret;
+  }
+
+  private static int[] insert(int[] nodes, int position, int node) {
+    int[] ret = new int[nodes.length + 1];
+    System.arraycopy(nodes, 0, ret, 0, position);
+    ret[position] = node;
+    System.arraycopy(nodes, position, ret, position + 1, nodes.length - position);
+    return ret;
+  }
+
+  private static int[] remove(int[] nodes, int position) {
+    int[] ret = new int[nodes.length - 1];
+    System.arraycopy(nodes, 0, ret, 0, position);
+    System.arraycopy(nodes, position + 1, ret, position, nodes.length - position - 1);
+    return ret;
+  }
+
+  private void updateDuals(RMPLinearSolution rmpSolution) {
+    duals = new DualVector(instance, rmpSolution);
+    branchIndex =
+        new VisitFlowBranchIndex(rmpSolution.getVisitFlowDuals(), instance.getNumberOfNodes());
+  }
+
+  /** Whether the arc was removed from the ESPPRC graph, in which arcs into the depot end at N. */
+  private boolean isRemoved(int start, int end) {
+    int espprcEnd = end == depot ? graphSize - 1 : end;
+    return getRemovedArcs().get(start * graphSize + espprcEnd);
+  }
+
+  /**
+   * Reduced cost of the path serving customers, or infinity if it uses a removed arc, so that no
+   * move ever picks it.
+   */
+  private Candidate evaluate(int[] nodes, BitSet customers) {
+    double reducedCost = duals.getInitialCost();
+    int last = depot;
+    for (int i = 0; i <= nodes.length; i++) {
+      int node = i < nodes.length ? nodes[i] : depot;
+      if (isRemoved(last, node)) {
+        reducedCost = Double.POSITIVE_INFINITY;
+      }
+      reducedCost += instance.getEdgeWeight(last, node);
+      for (int branch : branchIndex.getBranchesOnArc(last, node)) {
+        if (customers.get(branchIndex.getCustomer(branch))) {
+          reducedCost -= branchIndex.getDual(branch);
+        }
+      }
+      last = node;
+    }
+    int demand = 0;
+    for (int c = customers.nextSetBit(0); c >= 0; c = customers.nextSetBit(c + 1)) {
+      reducedCost -= duals.getCustomerDual(c);
+      demand += instance.getDemand(c);
+    }
+    return new Candidate(nodes, customers, demand, reducedCost);
+  }
+
+  private Candidate seedFrom(Route path) {
+    int[] nodes =
+        path.getNodes().stream().mapToInt(Integer::intValue).filter(node -> node != depot).toArray();
+    BitSet customers = new BitSet(instance.getNumberOfNodes());
+    path.getCustomersServed().forEach(customers::set);
+    return evaluate(nodes, customers);
+  }
+
+  private Route toRoute(Candidate candidate) {
+    Route.Builder route = new Route.Builder(instance);
+    int last = depot;
+    for (int node : candidate.nodes()) {
+      route.addNode(node, instance.getEdgeWeight(last, node));
+      last = node;
+    }
+    route.addNode(depot, instance.getEdgeWeight(last, depot));
+    route.addCustomers(Utils.bitSetToIntSet(candidate.customers()));
+    return route.build();
+  }
+
+  private boolean isCompatible(Route path) {
+    for (Branch branch : getActiveBranches()) {
+      if (!branch.isCompatible(path)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private BitSet getReachableCustomers(int[] nodes) {
+    BitSet reachable = new BitSet(instance.getNumberOfNodes());
+    // Every path ends at the depot, which is not among its nodes
+    addReverseNeighborhood(depot, reachable);
+    for (int node : nodes) {
+      addReverseNeighborhood(node, reachable);
+    }
+    return reachable;
+  }
+
+  private void addReverseNeighborhood(int node, BitSet customers) {
+    int end = instance.getReverseNeighborhoodEnd(node);
+    for (int i = instance.getReverseNeighborhoodStart(node); i < end; i++) {
+      customers.set(instance.getReverseNeighborhoodCustomer(i));
+    }
+  }
+
+  private Candidate getBetter(Candidate best, Candidate candidate) {
+    if (candidate.demand() <= instance.getCapacity()
+        && candidate.reducedCost() < best.reducedCost() - EPSILON) {
+      return candidate;
+    }
+    return best;
+  }
+
+  private Candidate findBestNeighbor(Candidate current) {
+    Candidate best = current;
+    int[] nodes = current.nodes();
+    BitSet customers = current.customers();
+
+    // 2-opt and relocate keep the set of nodes, so the customers served stay reachable
+    for (int i = 0; i < nodes.length; i++) {
+      for (int j = i + 1; j < nodes.length; j++) {
+        best = getBetter(best, evaluate(reverse(nodes, i, j), customers));
+      }
+      for (int j = 0; j < nodes.length; j++) {
+        if (j != i && j != i - 1) {
+          best = getBetter(best, evaluate(relocate(nodes, i, j), customers));
+        }
+      }
+    }
+
+    // Removing a node drops the customers that are no longer reachable
+    for (int i = 0; nodes.length > 1 && i < nodes.length; i++) {
+      int[] next = remove(nodes, i);
+      BitSet nextCustomers = (BitSet) customers.clone();
+      nextCustomers.and(getReachableCustomers(next));
+      best = getBetter(best, evaluate(next, nextCustomers));
+    }
+
+    // Inserting a node adds the profitable customers it makes reachable while capacity allows
+    BitSet onPath = new BitSet(instance.getNumberOfNodes());
+    for (int node : nodes) {
+      onPath.set(node);
+    }
+    for (int node = 0; node < instance.getNumberOfNodes(); node++) {
+      if (node == depot || onPath.get(node)) {
+        continue;
+      }
+      BitSet nextCustomers = (BitSet) customers.clone();
+      int demand = current.demand();
+      int end = instance.getReverseNeighborhoodEnd(node);
+      for (int i = instance.getReverseNeighborhoodStart(node); i < end; i++) {
+        int customer = instance.getReverseNeighborhoodCustomer(i);
+        if (!nextCustomers.get(customer)
+            && duals.getCustomerDual(customer) > EPSILON
+            && demand + instance.getDemand(customer) <= instance.getCapacity()) {
+          nextCustomers.set(customer);
+          demand += instance.getDemand(customer);
+        }
+      }
+      for (int position = 0; position <= nodes.length; position++) {
+        best = getBetter(best, evaluate(insert(nodes, position, node), nextCustomers));
+      }
+    }
+
+    // Customer moves keep the path
+    BitSet reachable = getReachableCustomers(nodes);
+    for (int c = reachable.nextSetBit(0); c >= 0; c = reachable.nextSetBit(c + 1)) {
+      BitSet nextCustomers = (BitSet) customers.clone();
+      nextCustomers.flip(c);
+      best = getBetter(best, evaluate(nodes, nextCustomers));
+    }
+    return best;
+  }
+
+  @Override
+  public PricingSolution solve(RMPLinearSolution rmpSolution, Duration remainingTime) {
+    Stopwatch stopwatch = new Stopwatch(remainingTime, getCancellationToken());
+    updateDuals(rmpSolution);
+
+    Set<Route> paths = new LinkedHashSet<>();
+    double objectiveValue = 0.0;
+    for (Route seed : rmpSolution.getBasicPaths()) {
+      Candidate current = seedFrom(seed);
+      for (int move = 0; move < MAX_MOVES_PER_PATH && !stopwatch.timedOut(); move++) {
+        Candidate next = findBestNeighbor(current);
+        if (next == current) {
+          break;
+        }
+        current = next;
+        if (current.reducedCost() < -EPSILON) {
+          Route path = toRoute(current);
+          if (isCompatible(path)) {
+            paths.add(path);
+            objectiveValue = Math.min(objectiveValue, current.reducedCost());
+          }
+        }
+      }
+      if (stopwatch.timedOut()) {
+        break;
+      }
+    }
+    return new PricingSolution(
+        objectiveValue, new ArrayList<>(paths), 0.0, true, new PricingStatistics(), false);
+  }
+
+  @Override
+  public void forceExactSolution() {}
+
+  @Override
+  public void performBranchOnVisitFlow(BranchOnVisitFlow branch) {}
+
+  @Override
+  public void performBranchOnFleetSize(BranchOnFleetSize branch) {}
+
+  private record Candidate(int[] nodes, BitSet customers, int demand, double reducedCost) {}
+}
@@ -1,80 +1,77 @@
 package algorithm.pricing;
 
 import algorithm.RMPLinearSolution;
-import algorithm.branching.BranchOnVisitFlow;
+import commons.CancellationToken;
 import commons.Instance;
 import commons.Route;
 import commons.Stopwatch;
 import commons.Utils;
 import java.time.Duration;
-import java.util.ArrayList;
+import java.time.Instant;
 import java.util.BitSet;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.PriorityQueue;
 
 public class MonoDirectionalLabelingAlgorithm {
 
   private static final double EPSILON = Utils.DEFAULT_EPSILON;
   private static final int STOP_AFTER_N_SOLUTIONS = 100000;
   private static final boolean STOP_EARLY = false;
-  private static final Comparator<Label> LABEL_COMPARATOR =
-      Comparator.comparing(Label::demand).thenComparing(Label::cost);
+  // Poll the stopwatch once every 256 labels
+  private static final int TIME_CHECK_MASK = 0xFF;
 
   private final Instance instance;
-  private final RMPLinearSolution rmpSolution;
   private final ESPPRCGraph graph;
 
-  private final Map<Integer, Double> dualValues;
-  private final Map<Integer, List<BranchOnVisitFlow>> branchesIndexedByCustomer;
+  private final DualVector duals;
+  private final VisitFlowBranchIndex branchIndex;
   private final boolean applyHeuristics;
   private final double alpha;
   private final LabelContainer[] labelContainer;
   private int labelsProcessed;
+  private long labelsCreated;
+  private long labelsDominated;
+  private Duration searchTime;
+  private final LabelingBudgetTracker budgetTracker;
 
   public MonoDirectionalLabelingAlgorithm(
       Instance instance, RMPLinearSolution rmpSolution, boolean applyHeuristics) {
+    this(instance, rmpSolution, applyHeuristics, new BitSet());
+  }
+
+  /**
+   * @param removedArcs arcs of the ESPPRC graph that no path may use, see {@link
+   *     PricingProblem#setRemovedArcs}
+   */
+  public MonoDirectionalLabelingAlgorithm(
+      Instance instance,
+      RMPLinearSolution rmpSolution,
+      boolean applyHeuristics,
+      BitSet removedArcs) {
     this.instance = instance;
-    this.rmpSolution = rmpSolution;
-    this.dualValues = new HashMap<>();
+    this.duals = new DualVector(instance, rmpSolution);
     this.labelsProcessed = 0;
-    for (int s = 0; s < instance.getNumberOfCustomers(); s++) {
-      dualValues.put(instance.getCustomer(s), rmpSolution.getCustomerDual(s));
-    }
-    this.graph = new ESPPRCGraph(instance);
+    this.labelsCreated = 0;
+    this.labelsDominated = 0;
+    this.searchTime = Duration.ZERO;
+    this.graph = new ESPPRCGraph(instance, false, removedArcs);
     this.applyHeuristics = applyHeuristics;
     this.alpha = computeCostFactor(graph);
+    this.budgetTracker = new LabelingBudgetTracker(graph.getSize(), instance.getCapacity());
     this.labelContainer = selectLabelContainer(applyHeuristics, graph, instance);
-    this.branchesIndexedByCustomer = getBranchesIndexedByCustomer(rmpSolution);
-  }
-
-  private static Map<Integer, List<BranchOnVisitFlow>> getBranchesIndexedByCustomer(
-      RMPLinearSolution rmpSolution) {
-    Map<Integer, List<BranchOnVisitFlow>> branchesIndexedByCustomer = new HashMap<>();
-    for (BranchOnVisitFlow branch : rmpSolution.getVisitFlowDuals().keySet()) {
-      branchesIndexedByCustomer.putIfAbsent(branch.getCustomer(), new ArrayList<>());
-      branchesIndexedByCustomer.get(branch.getCustomer()).add(branch);
-    }
-    return branchesIndexedByCustomer;
+    this.branchIndex = new VisitFlowBranchIndex(rmpSolution.getVisitFlowDuals(), graph.getSize());
   }
 
   private static LabelContainer[] selectLabelContainer(
       boolean applyHeuristics, ESPPRCGraph graph, Instance instance) {
-    if (applyHeuristics) {
-      RelaxedLabelContainer[] ret = new RelaxedLabelContainer[graph.getSize()];
-      for (int i = 0; i < ret.length; i++) {
-        ret[i] = new RelaxedLabelContainer(instance.getCapacity() + 1);
-      }
-      return ret;
-    } else {
-      ExactLabelContainer[] ret = new ExactLabelContainer[graph.getSize()];
-      for (int i = 0; i < ret.length; i++) {
-        ret[i] = new ExactLabelContainer();
-      }
-      return ret;
+    // Typed as LabelContainer[] so that exact containers can be replaced by relaxed ones
+    LabelContainer[] ret = new LabelContainer[graph.getSize()];
+    for (int i = 0; i < ret.length; i++) {
+      ret[i] =
+          applyHeuristics
+              ? new RelaxedLabelContainer(instance.getCapacity() + 1)
+              : new ExactLabelContainer();
     }
+    return ret;
   }
 
   private static double computeCostFactor(ESPPRCGraph graph) {
@@ -96,7 +93,7 @@ public class MonoDirectionalLabelingAlgorithm {
   }
 
   private Route translateToFeasiblePath(Label label) {
-    Route feasiblePath = new Route();
+    Route.Builder feasiblePath = new Route.Builder(instance);
     List<Integer> fwNodes = label.getNodesInOrder();
     for (int j = 1; j < fwNodes.size(); j++) {
       int lastNode = fwNodes.get(j - 1);
@@ -106,12 +103,30 @@ public class MonoDirectionalLabelingAlgorithm {
           graph.getEdge(lastNode, currentNode).getWeight());
     }
     feasiblePath.addCustomers(Utils.bitSetToIntSet(label.visitedCustomers()));
-    return feasiblePath;
+    return feasiblePath.build();
+  }
+
+  /**
+   * Sets the limits on stored labels. When exact dominance is used and a limit is reached, the rest
+   * of the run uses heuristic dominance, see {@link #isBudgetExceeded()}.
+   */
+  public void setBudget(LabelingBudget budget) {
+    budgetTracker.setBudget(budget);
   }
 
   public List<Route> run(Duration timeLimit) {
-    Stopwatch stopwatch = new Stopwatch(timeLimit);
+    return run(timeLimit, CancellationToken.NONE);
+  }
+
+  /**
+   * Runs the search until it finishes, timeLimit elapses or the token is cancelled. A run that is
+   * stopped returns the paths found so far.
+   */
+  public List<Route> run(Duration timeLimit, CancellationToken cancellationToken) {
+    Instant start = Instant.now();
+    Stopwatch stopwatch = new Stopwatch(timeLimit, cancellationToken);
     monoDirectionalBacktracking(stopwatch);
+    searchTime = Utils.getElapsedTime(start);
     return getNegativeReducedCostPaths();
   }
 
@@ -124,16 +139,16 @@ public class MonoDirectionalLabelingAlgorithm {
 
   private Label extendCustomer(Label label, int customer) {
     int updatedDemand = label.demand() + instance.getDemand(customer);
-    double updatedCost = label.cost() - dualValues.get(customer);
+    double updatedCost = label.cost() - duals.getCustomerDual(customer);
     if (applyHeuristics) {
       updatedCost += getLittleFakeCost(label, customer);
     }
     BitSet updatedVisited = (BitSet) label.visitedCustomers().clone();
     updatedVisited.set(customer);
     // Subtract branching dual variables
-    for (BranchOnVisitFlow branch : branchesIndexedByCustomer.getOrDefault(customer, List.of())) {
-      if (label.containsEdge(branch.getEdge().getStart(), branch.getEdge().getEnd())) {
-        updatedCost -= rmpSolution.getVisitFlowDuals().get(branch);
+    for (int branch : branchIndex.getBranchesOfCustomer(customer)) {
+      if (label.containsEdge(branchIndex.getStart(branch), branchIndex.getEnd(branch))) {
+        updatedCost -= branchIndex.getDual(branch);
       }
     }
     return new Label(
@@ -150,11 +165,9 @@ public class MonoDirectionalLabelingAlgorithm {
     BitSet updatedVisited = (BitSet) label.visitedNodes().clone();
     updatedVisited.set(nextNode);
     // Subtract branching dual variables
-    for (BranchOnVisitFlow branch : rmpSolution.getVisitFlowDuals().keySet()) {
-      if (label.isCustomerVisited(branch.getCustomer())
-          && branch.getEdge().getStart() == label.node()
-          && branch.getEdge().getEnd() == nextNode) {
-        updatedCost -= rmpSolution.getVisitFlowDuals().get(branch);
+    for (int branch : branchIndex.getBranchesOnArc(label.node(), nextNode)) {
+      if (label.isCustomerVisited(branchIndex.getCustomer(branch))) {
+        updatedCost -= branchIndex.getDual(branch);
       }
     }
     return new Label(
@@ -173,21 +186,21 @@ public class MonoDirectionalLabelingAlgorithm {
     if (label.demand() > instance.getCapacity()) {
       return true;
     }
-    if (dualValues.get(customer) < EPSILON) {
+    if (duals.getCustomerDual(customer) < EPSILON) {
       // Heuristic: if customer provides no reduction in total cost, can be pruned
       return true;
     }
     // Branching pruning rules
-    for (BranchOnVisitFlow branch : branchesIndexedByCustomer.getOrDefault(customer, List.of())) {
-      int start = branch.getEdge().getStart();
-      int end = branch.getEdge().getEnd();
-      if (branch.getBound() == 1 && label.forbidsEdge(start, end)) {
+    for (int branch : branchIndex.getBranchesOfCustomer(customer)) {
+      int start = branchIndex.getStart(branch);
+      int end = branchIndex.getEnd(branch);
+      if (branchIndex.getBound(branch) == 1 && label.forbidsEdge(start, end)) {
         return true;
-      } else if (branch.getBound() == 0 && label.containsEdge(start, end)) {
+      } else if (branchIndex.getBound(branch) == 0 && label.containsEdge(start, end)) {
         return true;
       }
     }
-    return labelContainer[label.node()].dominates(label);
+    return isDominated(label);
   }
 
   private boolean isNodeUnreachable(Label label, Label previousLabel) {
@@ -199,55 +212,71 @@ public class MonoDirectionalLabelingAlgorithm {
       return true;
     }
     // Branching pruning rules
-    for (BranchOnVisitFlow branch : rmpSolution.getVisitFlowDuals().keySet()) {
-      if (label.isCustomerVisited(branch.getCustomer())) {
-        int start = branch.getEdge().getStart();
-        int end = branch.getEdge().getEnd();
-        if (branch.getBound() == 1 && start != previousLabel.node() && end == label.node()) {
-          return true;
-        } else if (branch.getBound() == 1 && start == previousLabel.node() && end != label.node()) {
+    for (int branch : branchIndex.getBranchesEndingAt(label.node())) {
+      if (label.isCustomerVisited(branchIndex.getCustomer(branch))) {
+        int start = branchIndex.getStart(branch);
+        if (branchIndex.getBound(branch) == 1 && start != previousLabel.node()) {
           return true;
-        } else if (branch.getBound() == 0 && start == previousLabel.node() && end == label.node()) {
+        } else if (branchIndex.getBound(branch) == 0 && start == previousLabel.node()) {
           return true;
         }
       }
     }
+    for (int branch : branchIndex.getBranchesStartingAt(previousLabel.node())) {
+      if (label.isCustomerVisited(branchIndex.getCustomer(branch))
+          && branchIndex.getBound(branch) == 1
+          && branchIndex.getEnd(branch) != label.node()) {
+        return true;
+      }
+    }
 
-    return labelContainer[label.node()].dominates(label);
+    return isDominated(label);
   }
 
-  private double getInitialCost() {
-    double initialCost = -rmpSolution.getVehiclesDual();
-    for (double fleetSizeDual : rmpSolution.getFleetSizeDuals()) {
-      initialCost -= fleetSizeDual;
+  private void storeLabel(LabelContainer[] containers, int node, Label label) {
+    if (budgetTracker.storeLabel(containers, node, label, !applyHeuristics)) {
+      budgetTracker.relaxDominance(labelContainer);
+    }
+  }
+
+  private boolean isDominated(Label label) {
+    if (labelContainer[label.node()].dominates(label)) {
+      labelsDominated++;
+      return true;
     }
-    return initialCost;
+    return false;
   }
 
   private void monoDirectionalBacktracking(Stopwatch stopwatch) {
-    Label root = Label.getRootLabel(graph.getSource(), graph.getSize(), getInitialCost());
-    PriorityQueue<Label> queue = new PriorityQueue<>(64, Comparator.comparingDouble(Label::cost));
+    Label root = Label.getRootLabel(graph.getSource(), graph.getSize(), duals.getInitialCost());
+    LabelBucketQueue queue = new LabelBucketQueue(instance.getCapacity());
     labelContainer[root.node()].addLabel(root);
     queue.add(root);
     while (!queue.isEmpty()) {
+      Label currentLabel = queue.remove();
+      if (currentLabel.isDead()) {
+        labelsDominated++;
+        continue;
+      }
       labelsProcessed++;
-      if (stopwatch.timedOut()) {
+      if ((labelsProcessed & TIME_CHECK_MASK) == 0 && stopwatch.timedOut()) {
         return;
       }
-      Label currentLabel = queue.remove();
 
-      if (!labelContainer[currentLabel.node()].dominates(currentLabel)) {
+      if (!isDominated(currentLabel)) {
         for (int customer : graph.getReverseNeighborhood(currentLabel.node())) {
           Label nextLabel = extendCustomer(currentLabel, customer);
+          labelsCreated++;
           if (!isCustomerUnreachable(nextLabel, customer, currentLabel)) {
-            labelContainer[nextLabel.node()].addLabel(nextLabel);
+            storeLabel(labelContainer, nextLabel.node(), nextLabel);
             queue.add(nextLabel);
           }
         }
         for (int nextNode : graph.getAdjacentNodes(currentLabel.node())) {
           Label nextLabel = extendNode(currentLabel, nextNode);
+          labelsCreated++;
           if (!isNodeUnreachable(nextLabel, currentLabel)) {
-            labelContainer[nextNode].addLabel(nextLabel);
+            storeLabel(labelContainer, nextNode, nextLabel);
             queue.add(nextLabel);
           }
         }
@@ -258,4 +287,20 @@ public class MonoDirectionalLabelingAlgorithm {
   public int getLabelsProcessed() {
     return labelsProcessed;
   }
+
+  /** True iff a limit of the budget was reached and the run finished with heuristic dominance. */
+  public boolean isBudgetExceeded() {
+    return budgetTracker.isExceeded();
+  }
+
+  public PricingStatistics getStatistics() {
+    return new PricingStatistics(
+        Duration.ZERO,
+        searchTime,
+        Duration.ZERO,
+        labelsCreated,
+        labelsDominated,
+        labelsProcessed,
+        budgetTracker.isExceeded());
+  }
 }
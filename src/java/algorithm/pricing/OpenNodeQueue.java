@@ -0,0 +1,48 @@
+package algorithm.pricing;
+
+import java.util.BitSet;
+
+/** FIFO of nodes with pending labels. Membership is tracked in a bitset so adding a node is O(1). */
+class OpenNodeQueue {
+
+  private final int[] nodes;
+  private final BitSet isOpen;
+  private int head;
+  private int size;
+
+  public OpenNodeQueue(int numberOfNodes) {
+    this.nodes = new int[numberOfNodes];
+    this.isOpen = new BitSet(numberOfNodes);
+    this.head = 0;
+    this.size = 0;
+  }
+
+  /** Adds node at the back of the queue, unless it is already waiting in it */
+  public void add(int node) {
+    if (isOpen.get(node)) {
+      return;
+    }
+    isOpen.set(node);
+    nodes[(head + size) % nodes.length] = node;
+    size++;
+  }
+
+  public int remove() {
+    if (size == 0) {
+      throw new IllegalStateException("Queue is empty");
+    }
+    int node = nodes[head];
+    head = (head + 1) % nodes.length;
+    size--;
+    isOpen.clear(node);
+    return node;
+  }
+
+  public boolean contains(int node) {
+    return isOpen.get(node);
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+}
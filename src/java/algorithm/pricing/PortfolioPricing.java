@@ -0,0 +1,306 @@
+package algorithm.pricing;
+
+import algorithm.RMPLinearSolution;
+import algorithm.branching.Branch;
+import algorithm.branching.BranchOnFleetSize;
+import algorithm.branching.BranchOnVisitFlow;
+import commons.CancellationToken;
+import commons.Instance;
+import commons.Route;
+import commons.Utils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs several pricing engines concurrently on the same duals and combines their columns. A call
+ * returns as soon as an exact engine proves that there are no negative reduced cost columns, or
+ * once the engines that finished found at least minColumns distinct columns between them, and
+ * cancels the engines still running. By default the engines are pulse, bidirectional labeling,
+ * mono-directional labeling and relaxed labeling, since which one is fastest depends on the
+ * instance family.
+ *
+ * <p>The objective value of a call only bounds the reduced costs when an engine proved that there
+ * are no columns, see {@link PricingSolution#isObjectiveBound()}.
+ *
+ * <p>Every engine keeps its own branches, so the engines never share state while they run. A call
+ * waits for the cancelled engines to stop before it returns.
+ */
+public class PortfolioPricing extends PricingProblem {
+
+  public static final int DEFAULT_MIN_COLUMNS = 1;
+
+  private final List<Engine> engines;
+  private final ExecutorService executor;
+  private int minColumns;
+
+  public PortfolioPricing(Instance instance) {
+    this(
+        List.of(
+            new Engine("pulse", new PulsePricing(instance), true),
+            new Engine("bidirectional", new LabelSettingPricing(instance), true),
+            new Engine("mono-directional", new LabelSettingPricing(instance, false, true), true),
+            new Engine("relaxed", new LabelSettingPricing(instance, true), false)));
+  }
+
+  /**
+   * @param engines pricings to run concurrently; an exact engine finds every negative reduced cost
+   *     column whenever it returns none, unless it is stopped
+   */
+  public PortfolioPricing(List<Engine> engines) {
+    if (engines.isEmpty()) {
+      throw new IllegalArgumentException("A pricing portfolio needs at least one engine");
+    }
+    this.engines = List.copyOf(engines);
+    // Idle threads are released after a minute, so the portfolio needs no shutdown
+    this.executor =
+        Executors.newCachedThreadPool(Thread.ofPlatform().daemon().name("pricing-", 0).factory());
+    this.minColumns = DEFAULT_MIN_COLUMNS;
+  }
+
+  @Override
+  public PricingSolution solve(RMPLinearSolution rmpSolution, Duration remainingTime) {
+    Instant start = Instant.now();
+    CancellationToken callToken = new CancellationToken();
+    CompletionService<PricingSolution> completionService =
+        new ExecutorCompletionService<>(executor);
+    List<Future<PricingSolution>> futures = new ArrayList<>();
+    for (Engine engine : engines) {
+      engine.pricing.setCancellationToken(callToken);
+      futures.add(completionService.submit(() -> engine.solve(rmpSolution, remainingTime)));
+    }
+
+    Set<Route> columns = new LinkedHashSet<>();
+    int provingEngine = -1;
+    CancellationToken.Registration registration =
+        getCancellationToken().onCancel(callToken::cancel);
+    try {
+      for (int finished = 0; finished < engines.size(); finished++) {
+        Future<PricingSolution> future = completionService.take();
+        int index = futures.indexOf(future);
+        Engine engine = engines.get(index);
+        PricingSolution solution = getResult(future);
+        columns.addAll(solution.getNegativeReducedCostPaths());
+        boolean provedOptimal =
+            engine.exact
+                && solution.isFeasible()
+                && solution.getNegativeReducedCostPaths().isEmpty()
+                && !solution.getStatistics().isDominanceRelaxed()
+                && !callToken.isCancelled()
+                && Utils.getRemainingTime(start, remainingTime).isPositive();
+        if (provedOptimal) {
+          provingEngine = index;
+        }
+        if (provedOptimal || columns.size() >= minColumns) {
+          engine.statistics.wins++;
+          break;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      registration.close();
+      callToken.cancel();
+      awaitAll(futures);
+    }
+
+    // Cancelled engines still return the columns they found before stopping, but their objective
+    // and dominance say nothing about the columns once another engine proved there are none
+    double objectiveValue = 0.0;
+    double deterministicTime = 0.0;
+    boolean feasible = false;
+    PricingStatistics pricingStatistics = new PricingStatistics();
+    for (int i = 0; i < engines.size(); i++) {
+      PricingSolution solution = futures.get(i).resultNow();
+      engines.get(i).statistics.record(solution);
+      columns.addAll(solution.getNegativeReducedCostPaths());
+      if (provingEngine < 0) {
+        objectiveValue = Math.min(objectiveValue, solution.getObjectiveValue());
+        pricingStatistics.add(solution.getStatistics());
+      } else if (i == provingEngine) {
+        objectiveValue = solution.getObjectiveValue();
+        pricingStatistics.add(solution.getStatistics());
+      } else {
+        pricingStatistics.addWork(solution.getStatistics());
+      }
+      deterministicTime += solution.getDeterministicTime();
+      feasible |= solution.isFeasible();
+    }
+    return new PricingSolution(
+        objectiveValue,
+        new ArrayList<>(columns),
+        deterministicTime,
+        feasible,
+        pricingStatistics,
+        provingEngine >= 0);
+  }
+
+  private static PricingSolution getResult(Future<PricingSolution> future)
+      throws InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("A pricing engine failed", e.getCause());
+    }
+  }
+
+  /**
+   * Waits for the engines to stop, so that none of them is still running on the next call.
+   *
+   * @throws IllegalStateException if an engine failed
+   */
+  private static void awaitAll(List<Future<PricingSolution>> futures) {
+    boolean interrupted = false;
+    for (Future<PricingSolution> future : futures) {
+      while (!future.isDone()) {
+        try {
+          future.get();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        } catch (ExecutionException e) {
+          break;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    for (Future<PricingSolution> future : futures) {
+      if (future.state() == Future.State.FAILED) {
+        throw new IllegalStateException("A pricing engine failed", future.exceptionNow());
+      }
+    }
+  }
+
+  /** Sets the number of distinct columns after which a call stops waiting for the other engines. */
+  public void setMinColumns(int minColumns) {
+    this.minColumns = minColumns;
+  }
+
+  /** Forwarded to the exact engines only, so that the heuristic ones stay fast. */
+  @Override
+  public void forceExactSolution() {
+    for (Engine engine : engines) {
+      if (engine.exact) {
+        engine.pricing.forceExactSolution();
+      }
+    }
+  }
+
+  @Override
+  public void setRemovedArcs(BitSet removedArcs) {
+    super.setRemovedArcs(removedArcs);
+    for (Engine engine : engines) {
+      engine.pricing.setRemovedArcs(removedArcs);
+    }
+  }
+
+  @Override
+  public void addBranch(Branch branch) {
+    super.addBranch(branch);
+    for (Engine engine : engines) {
+      engine.pricing.addBranch(branch);
+    }
+  }
+
+  @Override
+  public void removeBranch(Branch branch) {
+    super.removeBranch(branch);
+    for (Engine engine : engines) {
+      engine.pricing.removeBranch(branch);
+    }
+  }
+
+  @Override
+  public void performBranchOnVisitFlow(BranchOnVisitFlow branch) {}
+
+  @Override
+  public void performBranchOnFleetSize(BranchOnFleetSize branch) {}
+
+  public List<EngineStatistics> getStatistics() {
+    return engines.stream().map(engine -> engine.statistics).toList();
+  }
+
+  /** Pricing run by the portfolio, and whether returning no columns proves there are none. */
+  public static class Engine {
+
+    private final PricingProblem pricing;
+    private final boolean exact;
+    private final EngineStatistics statistics;
+
+    public Engine(String name, PricingProblem pricing, boolean exact) {
+      this.pricing = pricing;
+      this.exact = exact;
+      this.statistics = new EngineStatistics(name);
+    }
+
+    private PricingSolution solve(RMPLinearSolution rmpSolution, Duration remainingTime) {
+      Instant start = Instant.now();
+      PricingSolution solution = pricing.solve(rmpSolution, remainingTime);
+      statistics.elapsedTime = statistics.elapsedTime.plus(Utils.getElapsedTime(start));
+      return solution;
+    }
+  }
+
+  /** Calls that an engine took part in, and how many of them its result ended. */
+  public static class EngineStatistics {
+
+    private final String name;
+    private int calls;
+    private int wins;
+    private int columnsFound;
+    private Duration elapsedTime;
+
+    private EngineStatistics(String name) {
+      this.name = name;
+      this.calls = 0;
+      this.wins = 0;
+      this.columnsFound = 0;
+      this.elapsedTime = Duration.ZERO;
+    }
+
+    private void record(PricingSolution solution) {
+      calls++;
+      columnsFound += solution.getNegativeReducedCostPaths().size();
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public int getCalls() {
+      return calls;
+    }
+
+    public int getWins() {
+      return wins;
+    }
+
+    public int getColumnsFound() {
+      return columnsFound;
+    }
+
+    /** Time spent by the engine, including the calls in which it was cancelled. */
+    public Duration getElapsedTime() {
+      return elapsedTime;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "%s: calls=%d wins=%d columns=%d time=%dms",
+          name, calls, wins, columnsFound, elapsedTime.toMillis());
+    }
+  }
+}
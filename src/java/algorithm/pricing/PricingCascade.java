@@ -0,0 +1,247 @@
+package algorithm.pricing;
+
+import algorithm.RMPLinearSolution;
+import algorithm.branching.Branch;
+import algorithm.branching.BranchOnFleetSize;
+import algorithm.branching.BranchOnVisitFlow;
+import commons.CancellationToken;
+import commons.Instance;
+import commons.Route;
+import commons.Utils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Runs pricing stages of increasing cost and only escalates to the next one when the escalation
+ * policy asks for it. By default the stages are local search over the basic paths, relaxed labeling
+ * and exact labeling. The first stage always rescans the pool of columns that previous iterations
+ * generated but did not hand to the RMP, and the last stage is always solved exactly, so the
+ * cascade proves optimality whenever it reaches it.
+ */
+public class PricingCascade extends PricingProblem {
+
+  public static final int DEFAULT_MAX_COLUMNS_PER_ITERATION = 200;
+
+  private final ColumnPoolPricing columnPool;
+  private final List<PricingProblem> stages;
+  private final List<StageStatistics> statistics;
+  private EscalationPolicy escalationPolicy;
+  private int maxColumnsPerIteration;
+  private boolean forceExactSolution;
+
+  public PricingCascade(Instance instance) {
+    this(
+        instance,
+        List.of(
+            new LocalSearchPricing(instance),
+            new LabelSettingPricing(instance, true),
+            new LabelSettingPricing(instance)));
+  }
+
+  /**
+   * @param stages heuristic stages followed by an exact one, in escalation order.
+   */
+  public PricingCascade(Instance instance, List<PricingProblem> stages) {
+    if (stages.isEmpty()) {
+      throw new IllegalArgumentException("A pricing cascade needs at least one stage");
+    }
+    this.columnPool = new ColumnPoolPricing(instance);
+    this.stages = new ArrayList<>();
+    this.stages.add(columnPool);
+    this.stages.addAll(stages);
+    this.statistics = new ArrayList<>();
+    for (PricingProblem stage : this.stages) {
+      statistics.add(
+          new StageStatistics(statistics.size() + "-" + stage.getClass().getSimpleName()));
+    }
+    this.escalationPolicy = EscalationPolicy.whenNoColumnsFound();
+    this.maxColumnsPerIteration = DEFAULT_MAX_COLUMNS_PER_ITERATION;
+    this.forceExactSolution = false;
+  }
+
+  private PricingProblem getExactStage() {
+    return stages.getLast();
+  }
+
+  @Override
+  public PricingSolution solve(RMPLinearSolution rmpSolution, Duration remainingTime) {
+    Instant start = Instant.now();
+    int firstStage = forceExactSolution ? stages.size() - 1 : 0;
+    forceExactSolution = false;
+
+    PricingSolution solution = new PricingSolution();
+    PricingProblem lastStage = null;
+    double deterministicTime = 0.0;
+    PricingStatistics pricingStatistics = new PricingStatistics();
+    for (int i = firstStage; i < stages.size(); i++) {
+      Duration stageTimeLimit = Utils.getRemainingTime(start, remainingTime);
+      if (stageTimeLimit.isNegative() || getCancellationToken().isCancelled()) {
+        break;
+      }
+      PricingProblem stage = stages.get(i);
+      if (stage == getExactStage()) {
+        stage.forceExactSolution();
+      }
+      Instant stageStart = Instant.now();
+      solution = stage.solve(rmpSolution, stageTimeLimit);
+      lastStage = stage;
+      statistics.get(i).record(solution, Utils.getElapsedTime(stageStart));
+      deterministicTime += solution.getDeterministicTime();
+      pricingStatistics.add(solution.getStatistics());
+      if (solution.isFeasible() && !escalationPolicy.shouldEscalate(solution)) {
+        break;
+      }
+    }
+
+    List<Route> columns =
+        columnPool.selectColumns(
+            solution.getNegativeReducedCostPaths(), rmpSolution, maxColumnsPerIteration);
+    return new PricingSolution(
+        solution.getObjectiveValue(),
+        columns,
+        deterministicTime,
+        solution.isFeasible(),
+        pricingStatistics,
+        // The minimum of a heuristic stage is not a bound
+        lastStage == getExactStage() && solution.isObjectiveBound());
+  }
+
+  @Override
+  public void forceExactSolution() {
+    this.forceExactSolution = true;
+  }
+
+  @Override
+  public void setCancellationToken(CancellationToken cancellationToken) {
+    super.setCancellationToken(cancellationToken);
+    for (PricingProblem stage : stages) {
+      stage.setCancellationToken(cancellationToken);
+    }
+  }
+
+  @Override
+  public void setRemovedArcs(BitSet removedArcs) {
+    super.setRemovedArcs(removedArcs);
+    for (PricingProblem stage : stages) {
+      stage.setRemovedArcs(removedArcs);
+    }
+  }
+
+  @Override
+  public void addBranch(Branch branch) {
+    super.addBranch(branch);
+    for (PricingProblem stage : stages) {
+      stage.addBranch(branch);
+    }
+  }
+
+  @Override
+  public void removeBranch(Branch branch) {
+    super.removeBranch(branch);
+    for (PricingProblem stage : stages) {
+      stage.removeBranch(branch);
+    }
+  }
+
+  @Override
+  public void performBranchOnVisitFlow(BranchOnVisitFlow branch) {}
+
+  @Override
+  public void performBranchOnFleetSize(BranchOnFleetSize branch) {}
+
+  public void setEscalationPolicy(EscalationPolicy escalationPolicy) {
+    this.escalationPolicy = escalationPolicy;
+  }
+
+  public void setMaxColumnsPerIteration(int maxColumnsPerIteration) {
+    this.maxColumnsPerIteration = maxColumnsPerIteration;
+  }
+
+  public List<StageStatistics> getStatistics() {
+    return statistics;
+  }
+
+  public int getColumnPoolSize() {
+    return columnPool.size();
+  }
+
+  /** Decides, after a stage has run, whether the next stage should run as well. */
+  @FunctionalInterface
+  public interface EscalationPolicy {
+
+    static EscalationPolicy whenNoColumnsFound() {
+      return solution -> solution.getNegativeReducedCostPaths().isEmpty();
+    }
+
+    static EscalationPolicy whenFewerColumnsThan(int numberOfColumns) {
+      return solution -> solution.getNegativeReducedCostPaths().size() < numberOfColumns;
+    }
+
+    static EscalationPolicy whenObjectiveAbove(double threshold) {
+      return solution -> solution.getObjectiveValue() > threshold;
+    }
+
+    boolean shouldEscalate(PricingSolution solution);
+  }
+
+  public static class StageStatistics {
+
+    private final String name;
+    private int calls;
+    private int hits;
+    private int columnsFound;
+    private Duration elapsedTime;
+
+    private StageStatistics(String name) {
+      this.name = name;
+      this.calls = 0;
+      this.hits = 0;
+      this.columnsFound = 0;
+      this.elapsedTime = Duration.ZERO;
+    }
+
+    private void record(PricingSolution solution, Duration stageTime) {
+      calls++;
+      if (!solution.getNegativeReducedCostPaths().isEmpty()) {
+        hits++;
+      }
+      columnsFound += solution.getNegativeReducedCostPaths().size();
+      elapsedTime = elapsedTime.plus(stageTime);
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public int getCalls() {
+      return calls;
+    }
+
+    public int getHits() {
+      return hits;
+    }
+
+    public double getHitRate() {
+      return calls == 0 ? 0.0 : (double) hits / calls;
+    }
+
+    public int getColumnsFound() {
+      return columnsFound;
+    }
+
+    public Duration getElapsedTime() {
+      return elapsedTime;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "%s: calls=%d hits=%d (%.2f) columns=%d time=%dms",
+          name, calls, hits, getHitRate(), columnsFound, elapsedTime.toMillis());
+    }
+  }
+}
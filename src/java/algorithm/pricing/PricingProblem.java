@@ -4,17 +4,23 @@ import algorithm.RMPLinearSolution;
 import algorithm.branching.Branch;
 import algorithm.branching.BranchOnFleetSize;
 import algorithm.branching.BranchOnVisitFlow;
+import commons.CancellationToken;
 
 import java.time.Duration;
 import java.util.ArrayDeque;
+import java.util.BitSet;
 import java.util.Deque;
 
 public abstract class PricingProblem {
 
   private final Deque<Branch> activeBranches;
+  private CancellationToken cancellationToken;
+  private BitSet removedArcs;
 
   public PricingProblem() {
     this.activeBranches = new ArrayDeque<>();
+    this.cancellationToken = CancellationToken.NONE;
+    this.removedArcs = new BitSet();
   }
 
   public abstract PricingSolution solve(RMPLinearSolution rmpSolution, Duration remainingTime);
@@ -25,6 +31,30 @@ public abstract class PricingProblem {
 
   public abstract void performBranchOnFleetSize(BranchOnFleetSize branch);
 
+  /**
+   * Token checked by the pricing algorithms in their inner loops. A cancelled pricing returns the
+   * columns found so far.
+   */
+  public void setCancellationToken(CancellationToken cancellationToken) {
+    this.cancellationToken = cancellationToken;
+  }
+
+  public CancellationToken getCancellationToken() {
+    return cancellationToken;
+  }
+
+  /**
+   * Arcs of the {@link ESPPRCGraph}, by {@link ESPPRCGraph#getArcId}, that no path priced from now
+   * on may use. Pricings that do not build an ESPPRCGraph may ignore them.
+   */
+  public void setRemovedArcs(BitSet removedArcs) {
+    this.removedArcs = removedArcs;
+  }
+
+  public BitSet getRemovedArcs() {
+    return removedArcs;
+  }
+
   public Deque<Branch> getActiveBranches() {
     return activeBranches;
   }
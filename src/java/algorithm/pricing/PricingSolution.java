@@ -11,16 +11,48 @@ public class PricingSolution {
   private final double objectiveValue;
   private final List<Route> negativeReducedCostPaths;
   private final double deterministicTime;
+  private final PricingStatistics statistics;
+  private final boolean objectiveBound;
 
   public PricingSolution(
       double objectiveValue,
       List<Route> negativeReducedCostPaths,
       double deterministicTime,
-      boolean feasible) {
+      boolean feasible,
+      PricingStatistics statistics) {
+    this(objectiveValue, negativeReducedCostPaths, deterministicTime, feasible, statistics, true);
+  }
+
+  /**
+   * @param objectiveBound false if objectiveValue may be above the least reduced cost of a column,
+   *     e.g. when it comes from engines that were stopped early
+   */
+  public PricingSolution(
+      double objectiveValue,
+      List<Route> negativeReducedCostPaths,
+      double deterministicTime,
+      boolean feasible,
+      PricingStatistics statistics,
+      boolean objectiveBound) {
     this.feasible = feasible;
     this.objectiveValue = objectiveValue;
     this.negativeReducedCostPaths = negativeReducedCostPaths;
     this.deterministicTime = deterministicTime;
+    this.statistics = statistics;
+    this.objectiveBound = objectiveBound;
+  }
+
+  public PricingSolution(
+      double objectiveValue,
+      List<Route> negativeReducedCostPaths,
+      double deterministicTime,
+      boolean feasible) {
+    this(
+        objectiveValue,
+        negativeReducedCostPaths,
+        deterministicTime,
+        feasible,
+        new PricingStatistics());
   }
 
   public PricingSolution() {
@@ -42,4 +74,16 @@ public class PricingSolution {
   public double getDeterministicTime() {
     return deterministicTime;
   }
+
+  public PricingStatistics getStatistics() {
+    return statistics;
+  }
+
+  /**
+   * True iff the objective value bounds the reduced cost of every column, so that it gives a
+   * Lagrangian bound and a solution without columns proves that there are none.
+   */
+  public boolean isObjectiveBound() {
+    return objectiveBound && !statistics.isDominanceRelaxed();
+  }
 }
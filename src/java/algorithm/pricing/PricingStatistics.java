@@ -0,0 +1,99 @@
+package algorithm.pricing;
+
+import java.time.Duration;
+
+/**
+ * Work done by a pricing call: the time spent in each phase of the algorithm and the number of
+ * labels it handled. Phases and counters that an algorithm does not have stay at zero. For the pulse
+ * algorithm a label is a partial path, and a label is dominated when it is pruned by the bounds or
+ * by the rollback rule.
+ *
+ * <p>A labeling algorithm that reaches its {@link LabelingBudget} finishes with heuristic dominance
+ * and reports it with {@link #isDominanceRelaxed()}: its result is then not exact.
+ */
+public class PricingStatistics {
+
+  private Duration boundingTime;
+  private Duration searchTime;
+  private Duration joinTime;
+  private long labelsCreated;
+  private long labelsDominated;
+  private long labelsExtended;
+  private boolean dominanceRelaxed;
+
+  public PricingStatistics() {
+    this(Duration.ZERO, Duration.ZERO, Duration.ZERO, 0, 0, 0);
+  }
+
+  public PricingStatistics(
+      Duration boundingTime,
+      Duration searchTime,
+      Duration joinTime,
+      long labelsCreated,
+      long labelsDominated,
+      long labelsExtended) {
+    this(
+        boundingTime, searchTime, joinTime, labelsCreated, labelsDominated, labelsExtended, false);
+  }
+
+  public PricingStatistics(
+      Duration boundingTime,
+      Duration searchTime,
+      Duration joinTime,
+      long labelsCreated,
+      long labelsDominated,
+      long labelsExtended,
+      boolean dominanceRelaxed) {
+    this.boundingTime = boundingTime;
+    this.searchTime = searchTime;
+    this.joinTime = joinTime;
+    this.labelsCreated = labelsCreated;
+    this.labelsDominated = labelsDominated;
+    this.labelsExtended = labelsExtended;
+    this.dominanceRelaxed = dominanceRelaxed;
+  }
+
+  /** Accumulates other into these statistics, e.g. when a pricing runs several algorithms. */
+  public void add(PricingStatistics other) {
+    addWork(other);
+    dominanceRelaxed |= other.dominanceRelaxed;
+  }
+
+  /** Accumulates the work of other but not its dominance, for a run whose result was discarded. */
+  public void addWork(PricingStatistics other) {
+    boundingTime = boundingTime.plus(other.boundingTime);
+    searchTime = searchTime.plus(other.searchTime);
+    joinTime = joinTime.plus(other.joinTime);
+    labelsCreated += other.labelsCreated;
+    labelsDominated += other.labelsDominated;
+    labelsExtended += other.labelsExtended;
+  }
+
+  public Duration getBoundingTime() {
+    return boundingTime;
+  }
+
+  public Duration getSearchTime() {
+    return searchTime;
+  }
+
+  public Duration getJoinTime() {
+    return joinTime;
+  }
+
+  public long getLabelsCreated() {
+    return labelsCreated;
+  }
+
+  public long getLabelsDominated() {
+    return labelsDominated;
+  }
+
+  public long getLabelsExtended() {
+    return labelsExtended;
+  }
+
+  public boolean isDominanceRelaxed() {
+    return dominanceRelaxed;
+  }
+}
@@ -1,203 +1,274 @@
 package algorithm.pricing;
 
 import algorithm.RMPLinearSolution;
-import algorithm.branching.BranchOnVisitFlow;
+import commons.CancellationToken;
 import commons.Route;
 import commons.Instance;
 import commons.Stopwatch;
 import commons.Utils;
 
 import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 public class PulseAlgorithm {
 
-    private static final double EPSILON = 1e-6;
-    private static final int    STEP    = 1; // ~(Q / |S|)
-
-    private final Instance                              instance;
-    private final RMPLinearSolution                     rmpSolution;
-    private final ESPPRCGraph                           graph;
-    private final int                                   numberOfNodes;
-    private final Map<Integer, Double>                  dualValues;
-    private final Map<Integer, List<BranchOnVisitFlow>> branchesIndexedByCustomer;
-
-    private Stopwatch         stopwatch;
-    private double[][]        lowerBounds;
-    private double            bestSolutionFound;
-    private List<PartialPath> foundPartialPaths;
-    private boolean           saveSolution;
-    private int               pulsesPropagated;
+    private static final double EPSILON         = 1e-6;
+    private static final int    STEP            = 1; // ~(Q / |S|)
+    private static final int    TIME_CHECK_MASK = 0x3FF; // Poll the stopwatch once every 1024 pulses
+    private static final int    REMOVE_NODE     = -1;
+
+    private final Instance             instance;
+    private final ESPPRCGraph          graph;
+    private final int                  numberOfNodes;
+    private final DualVector           duals;
+    private final int[]                demands;
+    private final VisitFlowBranchIndex branchIndex;
+    private final int[][]              adjacentNodes;
+    private final int[]                customerStarts;
+    private final int[]                customerEnds;
+    private final PartialPath          visitedPath;
+
+    // Explicit pulse stack. Each frame propagates a node and knows how to undo the step that created it
+    private final int[] frameNodes;
+    private final int[] frameCursors;
+    private final int[] frameUndoActions;
+
+    private Stopwatch   stopwatch;
+    private boolean     timedOut;
+    private double[][]  lowerBounds;
+    private double      bestSolutionFound;
+    private List<Route> foundPaths;
+    private boolean     saveSolution;
+    private int         pulsesPropagated;
+    private long        pulsesPruned;
+    private Duration    boundingTime;
+    private Duration    searchTime;
 
 
     public PulseAlgorithm(Instance instance, RMPLinearSolution rmpSolution) {
-        this.instance      = instance;
-        this.rmpSolution   = rmpSolution;
-        this.graph         = new ESPPRCGraph(instance);
-        this.numberOfNodes = graph.getSize();
-        this.dualValues    = new HashMap<>();
-        for (int s = 0; s < instance.getNumberOfCustomers(); s++) {
-            dualValues.put(instance.getCustomer(s), rmpSolution.getCustomerDual(s));
-        }
-        this.pulsesPropagated          = 0;
-        this.branchesIndexedByCustomer = getBranchesIndexedByCustomer(rmpSolution);
+        this(instance, rmpSolution, new BitSet());
     }
 
-    private static Map<Integer, List<BranchOnVisitFlow>> getBranchesIndexedByCustomer(RMPLinearSolution rmpSolution) {
-        Map<Integer, List<BranchOnVisitFlow>> branchesIndexedByCustomer = new HashMap<>();
-        for (BranchOnVisitFlow branch : rmpSolution.getVisitFlowDuals().keySet()) {
-            branchesIndexedByCustomer.putIfAbsent(branch.getCustomer(), new ArrayList<>());
-            branchesIndexedByCustomer.get(branch.getCustomer()).add(branch);
-        }
-        return branchesIndexedByCustomer;
+    /**
+     * @param removedArcs arcs of the ESPPRC graph that no path may use, see {@link PricingProblem#setRemovedArcs}
+     */
+    public PulseAlgorithm(Instance instance, RMPLinearSolution rmpSolution, BitSet removedArcs) {
+        this.instance      = instance;
+        this.graph         = new ESPPRCGraph(instance, false, removedArcs);
+        this.numberOfNodes = graph.getSize();
+        this.duals         = new DualVector(instance, rmpSolution);
+        this.demands       = new int[numberOfNodes];
+        this.branchIndex          = new VisitFlowBranchIndex(rmpSolution.getVisitFlowDuals(), numberOfNodes);
+        this.adjacentNodes        = new int[numberOfNodes][];
+        this.customerStarts       = new int[numberOfNodes];
+        this.customerEnds         = new int[numberOfNodes];
+        for (int node = 0; node < numberOfNodes; node++) {
+            int instanceNode     = graph.translateFromESPPRCNode(node);
+            adjacentNodes[node]  = graph.getAdjacentNodes(node).stream().mapToInt(Integer::intValue).toArray();
+            customerStarts[node] = instance.getReverseNeighborhoodStart(instanceNode);
+            customerEnds[node]   = instance.getReverseNeighborhoodEnd(instanceNode);
+            demands[node]        = node == graph.getSink() ? 0 : instance.getDemand(node);
+        }
+        this.visitedPath = new PartialPath();
+
+        // A frame is pushed for every node and every customer added to the path
+        int maxDepth = numberOfNodes + instance.getNumberOfCustomers() + 1;
+        this.frameNodes       = new int[maxDepth];
+        this.frameCursors     = new int[maxDepth];
+        this.frameUndoActions = new int[maxDepth];
+
+        this.pulsesPropagated = 0;
+        this.pulsesPruned     = 0;
+        this.boundingTime     = Duration.ZERO;
+        this.searchTime       = Duration.ZERO;
+        this.foundPaths       = new ArrayList<>();
     }
 
     private void resetGlobalOptimum() {
         bestSolutionFound = Double.MAX_VALUE;
-        foundPartialPaths = new ArrayList<>();
-        saveSolution      = false;
+        foundPaths.clear();
+        saveSolution = false;
     }
 
-    private double getInitialCost() {
-        double initialCost = -rmpSolution.getVehiclesDual();
-        for (double fleetSizeDual : rmpSolution.getFleetSizeDuals()) {
-            initialCost -= fleetSizeDual;
-        }
-        return initialCost;
+    public List<Route> run(Duration timeLimit) {
+        return run(timeLimit, CancellationToken.NONE);
     }
 
-    public List<Route> run(Duration timeLimit) {
-        this.stopwatch = new Stopwatch(timeLimit);
+    /**
+     * Runs the bounding and search phases until they finish, timeLimit elapses or the token is cancelled. A run
+     * that is stopped returns the paths found so far.
+     */
+    public List<Route> run(Duration timeLimit, CancellationToken cancellationToken) {
+        this.stopwatch = new Stopwatch(timeLimit, cancellationToken);
+        this.timedOut  = false;
         resetGlobalOptimum();
+        Instant start = Instant.now();
         bound();
+        boundingTime = Utils.getElapsedTime(start);
 
         resetGlobalOptimum();
         saveSolution = true;
-        pulseWithNodeRule(graph.getSource(), new PartialPath(getInitialCost(), 0));
+        visitedPath.reset(duals.getInitialCost(), 0);
+        Instant searchStart = Instant.now();
+        pulse(graph.getSource());
+        searchTime = Utils.getElapsedTime(searchStart);
 
-        return translatePulsesToPaths();
+        return new ArrayList<>(foundPaths);
     }
 
-    private List<Route> translatePulsesToPaths() {
-        List<Route> ret = new ArrayList<>();
-        for (PartialPath currentPulse : foundPartialPaths) {
-            Route path     = new Route();
-            int   lastNode = currentPulse.getNodeAt(0);
-            assert lastNode == instance.getDepot();
-            assert lastNode == graph.getSource();
-            for (int j = 1; j < currentPulse.getSize(); j++) {
-                int currentNode = currentPulse.getNodeAt(j);
-                if (currentNode == graph.getSink()) {
-                    currentNode = instance.getDepot();
-                }
-                path.addNode(currentNode, instance.getEdgeWeight(lastNode, currentNode));
-                lastNode = currentNode;
+    private Route translateToPath(PartialPath partialPath) {
+        Route.Builder path     = new Route.Builder(instance);
+        int           lastNode = partialPath.getNodeAt(0);
+        assert lastNode == instance.getDepot();
+        assert lastNode == graph.getSource();
+        for (int j = 1; j < partialPath.getSize(); j++) {
+            int currentNode = partialPath.getNodeAt(j);
+            if (currentNode == graph.getSink()) {
+                currentNode = instance.getDepot();
             }
-            path.addCustomers(Utils.bitSetToIntSet(currentPulse.getVisitedCustomers()));
-            ret.add(path);
+            path.addNode(currentNode, instance.getEdgeWeight(lastNode, currentNode));
+            lastNode = currentNode;
         }
-        return ret;
+        path.addCustomers(Utils.bitSetToIntSet(partialPath.getVisitedCustomers()));
+        return path.build();
     }
 
-    private boolean pruneWithNodeRule(int nextNode, PartialPath visitedPath) {
+    private boolean pruneWithNodeRule(int nextNode) {
         int    totalDemand = visitedPath.getTotalDemand();
         double newEdgeCost =
             visitedPath.getSize() == 0 ? 0 : graph.getEdge(visitedPath.getLastNode(), nextNode).getWeight();
         double totalCost   = visitedPath.getTotalCost() + newEdgeCost;
-        if (!isFeasible(nextNode, visitedPath)) {
+        if (!isFeasible(nextNode)) {
             return true;
         }
-        if (checkBounds(nextNode, totalCost, totalDemand)) {
+        if (checkBounds(nextNode, totalCost, totalDemand) || rollback(nextNode)) {
+            pulsesPruned++;
             return true;
         }
-        if (rollback(nextNode, visitedPath)) {
-            return true;
+        if (visitedPath.getSize() == 0) {
+            return false;
         }
-        for (BranchOnVisitFlow branch : rmpSolution.getVisitFlowDuals().keySet()) {
-            if (visitedPath.isCustomerVisited(branch.getCustomer())) {
-                int start = branch.getEdge().getStart();
-                int end   = branch.getEdge().getEnd();
-                if (branch.getBound() == 1 && start != visitedPath.getLastNode() && end == nextNode) {
-                    return true;
-                } else if (branch.getBound() == 1 && start == visitedPath.getLastNode() && end != nextNode) {
+        // Branching pruning rules, only branches touching the new arc's endpoints matter
+        int lastNode = visitedPath.getLastNode();
+        for (int branch : branchIndex.getBranchesEndingAt(nextNode)) {
+            if (visitedPath.isCustomerVisited(branchIndex.getCustomer(branch))) {
+                int start = branchIndex.getStart(branch);
+                if (branchIndex.getBound(branch) == 1 && start != lastNode) {
                     return true;
-                } else if (branch.getBound() == 0 && start == visitedPath.getLastNode() && end == nextNode) {
+                } else if (branchIndex.getBound(branch) == 0 && start == lastNode) {
                     return true;
                 }
             }
         }
+        for (int branch : branchIndex.getBranchesStartingAt(lastNode)) {
+            if (visitedPath.isCustomerVisited(branchIndex.getCustomer(branch))
+                && branchIndex.getBound(branch) == 1
+                && branchIndex.getEnd(branch) != nextNode) {
+                return true;
+            }
+        }
         return false;
     }
 
-    private boolean pruneWithCustomerRule(int nextCustomer, int currentNode, PartialPath visitedPath) {
-        int    currentDemand = visitedPath.getTotalDemand() + instance.getDemand(nextCustomer);
-        double currentCost   = visitedPath.getTotalCost() - dualValues.get(nextCustomer);
+    private boolean pruneWithCustomerRule(int nextCustomer, int currentNode) {
+        int    currentDemand = visitedPath.getTotalDemand() + demands[nextCustomer];
+        double currentCost   = visitedPath.getTotalCost() - duals.getCustomerDual(nextCustomer);
         if (visitedPath.isCustomerVisited(nextCustomer)) {
             return true;
         }
         if (currentDemand > instance.getCapacity()) {
             return true;
         }
-        if (dualValues.get(nextCustomer) < EPSILON) {
+        if (duals.getCustomerDual(nextCustomer) < EPSILON) {
             // Heuristic: if customer provides no reduction in total cost, can be pruned
             return true;
         }
         if (checkBounds(currentNode, currentCost, currentDemand)) {
+            pulsesPruned++;
             return true;
         }
         // Branching pruning rules
-        for (BranchOnVisitFlow branch : branchesIndexedByCustomer.getOrDefault(nextCustomer, List.of())) {
-            int start = branch.getEdge().getStart();
-            int end   = branch.getEdge().getEnd();
-            if (branch.getBound() == 1 && visitedPath.forbidsEdge(start, end)) {
+        for (int branch : branchIndex.getBranchesOfCustomer(nextCustomer)) {
+            int start = branchIndex.getStart(branch);
+            int end   = branchIndex.getEnd(branch);
+            if (branchIndex.getBound(branch) == 1 && visitedPath.forbidsEdge(start, end)) {
                 return true;
-            } else if (branch.getBound() == 0 && visitedPath.containsEdge(start, end)) {
+            } else if (branchIndex.getBound(branch) == 0 && visitedPath.containsEdge(start, end)) {
                 return true;
             }
         }
         return false;
     }
 
-    private void propagate(int currentNode, PartialPath visitedPath) {
-        pulsesPropagated++;
-        if (stopwatch.timedOut()) {
+    /**
+     * Depth-first pulse propagation from startNode, run over an explicit stack of primitive frames instead
+     * of recursion so that neither the depth of the path nor the number of pulses allocates.
+     */
+    private void pulse(int startNode) {
+        if (pruneWithNodeRule(startNode)) {
             return;
         }
-        if (currentNode == graph.getSink()) {
-            if (visitedPath.getTotalCost() < bestSolutionFound) {
-                bestSolutionFound = visitedPath.getTotalCost();
-                if (saveSolution && bestSolutionFound < -EPSILON) {
-                    foundPartialPaths.add(new PartialPath(visitedPath));
+        visitedPath.addNode(startNode);
+        int depth = pushFrame(0, startNode, REMOVE_NODE);
+        while (depth > 0) {
+            int top         = depth - 1;
+            int currentNode = frameNodes[top];
+            int cursor      = frameCursors[top]++;
+            int customersStart    = customerStarts[currentNode];
+            int numberOfCustomers = customerEnds[currentNode] - customersStart;
+            int[] nextNodes       = adjacentNodes[currentNode];
+            if (timedOut || currentNode == graph.getSink() || cursor >= numberOfCustomers + nextNodes.length) {
+                undo(frameUndoActions[top]);
+                depth--;
+            } else if (cursor < numberOfCustomers) {
+                int nextCustomer = instance.getReverseNeighborhoodCustomer(customersStart + cursor);
+                if (!pruneWithCustomerRule(nextCustomer, currentNode)) {
+                    visitedPath.addCustomer(nextCustomer);
+                    depth = pushFrame(depth, currentNode, nextCustomer);
+                }
+            } else {
+                int nextNode = nextNodes[cursor - numberOfCustomers];
+                if (!pruneWithNodeRule(nextNode)) {
+                    visitedPath.addNode(nextNode);
+                    depth = pushFrame(depth, nextNode, REMOVE_NODE);
                 }
-            }
-        } else {
-            for (int nextCustomer : graph.getReverseNeighborhood(currentNode)) {
-                pulseWithCustomerRule(currentNode, nextCustomer, visitedPath);
-            }
-            for (int nextNode : graph.getAdjacentNodes(currentNode)) {
-                pulseWithNodeRule(nextNode, visitedPath);
             }
         }
     }
 
-    private void pulseWithNodeRule(int currentNode, PartialPath visitedPath) {
-        if (!pruneWithNodeRule(currentNode, visitedPath)) {
-            visitedPath.addNode(currentNode);
-            propagate(currentNode, visitedPath);
+    private int pushFrame(int depth, int currentNode, int undoAction) {
+        frameNodes[depth]       = currentNode;
+        frameCursors[depth]     = 0;
+        frameUndoActions[depth] = undoAction;
+        propagate(currentNode);
+        return depth + 1;
+    }
+
+    private void undo(int undoAction) {
+        if (undoAction == REMOVE_NODE) {
             visitedPath.removeLastNode();
+        } else {
+            visitedPath.removeCustomer(undoAction);
         }
     }
 
-    private void pulseWithCustomerRule(int currentNode, int currentCustomer, PartialPath visitedPath) {
-        if (!pruneWithCustomerRule(currentCustomer, currentNode, visitedPath)) {
-            visitedPath.addCustomer(currentCustomer);
-            propagate(currentNode, visitedPath);
-            visitedPath.removeCustomer(currentCustomer);
+    private void propagate(int currentNode) {
+        pulsesPropagated++;
+        if ((pulsesPropagated & TIME_CHECK_MASK) == 0 && stopwatch.timedOut()) {
+            timedOut = true;
+        }
+        if (timedOut) {
+            return;
+        }
+        if (currentNode == graph.getSink() && visitedPath.getTotalCost() < bestSolutionFound) {
+            bestSolutionFound = visitedPath.getTotalCost();
+            if (saveSolution && bestSolutionFound < -EPSILON) {
+                foundPaths.add(translateToPath(visitedPath));
+            }
         }
     }
 
@@ -218,8 +289,8 @@ public class PulseAlgorithm {
         for (int demand = Q - (Q % STEP); demand >= 0; demand -= STEP) {
             for (int node = 0; node < N; node++) {
                 resetGlobalOptimum();
-                PartialPath partialPath = new PartialPath(0.0, demand);
-                pulseWithNodeRule(node, partialPath);
+                visitedPath.reset(0.0, demand);
+                pulse(node);
                 lowerBounds[node][bucketNumber(demand)] = bestSolutionFound;
             }
         }
@@ -245,12 +316,12 @@ public class PulseAlgorithm {
         return cost + lowerBounds[currentNode][bucket] >= bestSolutionFound;
     }
 
-    private boolean isFeasible(int nextNode, PartialPath visitedPath) {
+    private boolean isFeasible(int nextNode) {
         // Adding node produces no cycles and demand does not exceed capacity
         return !visitedPath.isNodeVisited(nextNode) && visitedPath.getTotalDemand() <= instance.getCapacity();
     }
 
-    private boolean rollback(int nextNode, PartialPath visitedPath) {
+    private boolean rollback(int nextNode) {
         // True iff node is to be pruned using rollback strategy
         int size = visitedPath.getSize();
         if (size <= 1) {
@@ -278,8 +349,19 @@ public class PulseAlgorithm {
         return pulsesPropagated;
     }
 
+    public PricingStatistics getStatistics() {
+        return new PricingStatistics(boundingTime, searchTime, Duration.ZERO, pulsesPropagated + pulsesPruned,
+                                     pulsesPruned, pulsesPropagated);
+    }
+
+    /**
+     * Mutable path shared by every pulse of a run. Successor and predecessor tables make arc membership
+     * queries O(1) since the path is elementary.
+     */
     private class PartialPath {
         private final int[]    nodes;
+        private final int[]    successors;
+        private final int[]    predecessors;
         private final BitSet   visitedCustomers;
         private final BitSet   visitedNodes;
         private final double[] partialCosts;
@@ -287,25 +369,25 @@ public class PulseAlgorithm {
         private       double   totalCost;
         private       int      totalDemand;
 
-        public PartialPath(double totalCost, int totalDemand) {
+        public PartialPath() {
             this.nodes            = new int[numberOfNodes];
-            this.size             = 0;
-            this.totalCost        = totalCost;
-            this.totalDemand      = totalDemand;
+            this.successors       = new int[numberOfNodes];
+            this.predecessors     = new int[numberOfNodes];
             this.visitedCustomers = new BitSet(numberOfNodes);
             this.visitedNodes     = new BitSet(numberOfNodes);
             this.partialCosts     = new double[numberOfNodes];
-            Arrays.fill(partialCosts, 0.0);
+            reset(0.0, 0);
         }
 
-        public PartialPath(PartialPath p) {
-            this.nodes            = Arrays.copyOf(p.nodes, numberOfNodes);
-            this.visitedCustomers = (BitSet) p.visitedCustomers.clone();
-            this.visitedNodes     = (BitSet) p.visitedNodes.clone();
-            this.partialCosts     = Arrays.copyOf(p.partialCosts, numberOfNodes);
-            this.size             = p.size;
-            this.totalCost        = p.totalCost;
-            this.totalDemand      = p.totalDemand;
+        public void reset(double totalCost, int totalDemand) {
+            this.size        = 0;
+            this.totalCost   = totalCost;
+            this.totalDemand = totalDemand;
+            visitedCustomers.clear();
+            visitedNodes.clear();
+            Arrays.fill(partialCosts, 0.0);
+            Arrays.fill(successors, -1);
+            Arrays.fill(predecessors, -1);
         }
 
         public BitSet getVisitedCustomers() {
@@ -323,15 +405,16 @@ public class PulseAlgorithm {
         public void addNode(int node) {
             nodes[size] = node;
             visitedNodes.set(node);
-                                 totalCost += size == 0 ? 0.0 : graph.getEdge(nodes[size - 1], node).getWeight();
+            totalCost += size == 0 ? 0.0 : graph.getEdge(nodes[size - 1], node).getWeight();
             partialCosts[size] = totalCost;
             size++;
             if (size > 1) {
-                for (BranchOnVisitFlow branch : rmpSolution.getVisitFlowDuals().keySet()) {
-                    if (isCustomerVisited(branch.getCustomer())
-                        && branch.getEdge().getStart() == nodes[size - 2]
-                        && branch.getEdge().getEnd() == node) {
-                        totalCost -= rmpSolution.getVisitFlowDuals().get(branch);
+                int lastNode = nodes[size - 2];
+                successors[lastNode] = node;
+                predecessors[node]   = lastNode;
+                for (int branch : branchIndex.getBranchesOnArc(lastNode, node)) {
+                    if (isCustomerVisited(branchIndex.getCustomer(branch))) {
+                        totalCost -= branchIndex.getDual(branch);
                     }
                 }
             }
@@ -339,17 +422,19 @@ public class PulseAlgorithm {
 
         public void removeLastNode() {
             assert size >= 1;
+            int node = nodes[size - 1];
             partialCosts[size - 1] = 0.0;
-            visitedNodes.flip(nodes[size - 1]);
-            totalCost -= size < 2 ? 0.0 : graph.getEdge(nodes[size - 2], nodes[size - 1]).getWeight();
+            visitedNodes.clear(node);
             if (size > 1) {
-                for (BranchOnVisitFlow branch : rmpSolution.getVisitFlowDuals().keySet()) {
-                    if (isCustomerVisited(branch.getCustomer())
-                        && branch.getEdge().getStart() == nodes[size - 2]
-                        && branch.getEdge().getEnd() == getLastNode()) {
-                        totalCost += rmpSolution.getVisitFlowDuals().get(branch);
+                int lastNode = nodes[size - 2];
+                totalCost -= graph.getEdge(lastNode, node).getWeight();
+                for (int branch : branchIndex.getBranchesOnArc(lastNode, node)) {
+                    if (isCustomerVisited(branchIndex.getCustomer(branch))) {
+                        totalCost += branchIndex.getDual(branch);
                     }
                 }
+                successors[lastNode] = -1;
+                predecessors[node]   = -1;
             }
             nodes[size - 1] = -1;
             size--;
@@ -357,57 +442,37 @@ public class PulseAlgorithm {
 
         public void addCustomer(int customer) {
             visitedCustomers.set(customer);
-                                     totalDemand += instance.getDemand(customer);
-                                     totalCost -= dualValues.get(customer);
+            totalDemand += demands[customer];
+            totalCost -= duals.getCustomerDual(customer);
             partialCosts[size - 1] = totalCost;
-            for (BranchOnVisitFlow branch : branchesIndexedByCustomer.getOrDefault(customer, List.of())) {
-                if (containsEdge(branch.getEdge().getStart(), branch.getEdge().getEnd())) {
-                    totalCost -= rmpSolution.getVisitFlowDuals().get(branch);
+            for (int branch : branchIndex.getBranchesOfCustomer(customer)) {
+                if (containsEdge(branchIndex.getStart(branch), branchIndex.getEnd(branch))) {
+                    totalCost -= branchIndex.getDual(branch);
                 }
             }
         }
 
         public void removeCustomer(int customer) {
-            visitedCustomers.flip(customer);
-                                     totalDemand -= instance.getDemand(customer);
-                                     totalCost += dualValues.get(customer);
+            visitedCustomers.clear(customer);
+            totalDemand -= demands[customer];
+            totalCost += duals.getCustomerDual(customer);
             partialCosts[size - 1] = totalCost;
-            for (BranchOnVisitFlow branch : branchesIndexedByCustomer.getOrDefault(customer, List.of())) {
-                if (containsEdge(branch.getEdge().getStart(), branch.getEdge().getEnd())) {
-                    totalCost += rmpSolution.getVisitFlowDuals().get(branch);
+            for (int branch : branchIndex.getBranchesOfCustomer(customer)) {
+                if (containsEdge(branchIndex.getStart(branch), branchIndex.getEnd(branch))) {
+                    totalCost += branchIndex.getDual(branch);
                 }
             }
         }
 
-
         public boolean containsEdge(int i, int j) {
-            if (!isNodeVisited(i) || !isNodeVisited(j)) {
-                return false;
-            }
-            for (int node = 1; node < size; node++) {
-                if (nodes[node - 1] == i && nodes[node] == j) {
-                    return true;
-                }
-            }
-            return false;
+            return successors[i] == j;
         }
 
         public boolean forbidsEdge(int i, int j) {
-            if (!isNodeVisited(i) && !isNodeVisited(j)) {
-                return false;
-            }
-            for (int node = 1; node < size; node++) {
-                if (nodes[node - 1] == i && nodes[node] != j) {
-                    return true;
-                }
-                if (nodes[node - 1] != i && nodes[node] == j) {
-                    return true;
-                }
-            }
-            return false;
+            // Either i is left through another arc or j is entered through another arc
+            return (successors[i] != -1 && successors[i] != j) || (predecessors[j] != -1 && predecessors[j] != i);
         }
 
-
         public boolean isCustomerVisited(int customer) {
             return visitedCustomers.get(customer);
         }
@@ -436,7 +501,7 @@ public class PulseAlgorithm {
         public String toString() {
             return "PartialPath{"
                    + "nodes="
-                   + Arrays.toString(nodes)
+                   + Arrays.toString(Arrays.copyOf(nodes, size))
                    + ", size="
                    + size
                    + ", totalCost="
@@ -0,0 +1,159 @@
+package algorithm.pricing;
+
+import algorithm.RMPLinearSolution;
+import commons.Graph;
+import commons.Instance;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Reduced cost fixing of the arcs of an {@link ESPPRCGraph}. Once column generation converges at a
+ * node, every solution of its subtree that improves the incumbent only uses routes whose reduced
+ * cost is at most the gap between the incumbent and the node relaxation, so arcs that no such route
+ * can use are removed from the pricing graph of the subtree.
+ *
+ * <p>The reduced cost of the routes through an arc is bounded with forward and backward completion
+ * bounds over q-paths: walks indexed by the demand they collect, which may revisit nodes and so
+ * serve customers more than once, but serve each customer at most once per visit. Dual values of
+ * branches on visit flow are bounded by their sum, since a walk can collect each of them more than
+ * once.
+ */
+public class ReducedCostFixing {
+
+  private static final double EPSILON = 1e-6;
+
+  private final Instance instance;
+  private final ESPPRCGraph graph;
+  private final DualVector duals;
+  private final double branchDualsBound;
+  private final int capacity;
+
+  /**
+   * @param removedArcs arcs already removed at the node, which are left out of the bounds
+   */
+  public ReducedCostFixing(Instance instance, RMPLinearSolution rmpSolution, BitSet removedArcs) {
+    this.instance = instance;
+    this.graph = new ESPPRCGraph(instance, false, removedArcs);
+    this.duals = new DualVector(instance, rmpSolution);
+    this.branchDualsBound =
+        rmpSolution.getVisitFlowDuals().values().stream().mapToDouble(d -> Math.max(0, d)).sum();
+    this.capacity = instance.getCapacity();
+  }
+
+  /**
+   * Returns the arcs of the graph that no path with a reduced cost of at most gap uses, by {@link
+   * ESPPRCGraph#getArcId}. Returns no arcs if the instance has customers without demand or
+   * negative weights, which the bounds do not support.
+   */
+  public BitSet getArcsAboveGap(double gap) {
+    BitSet ret = new BitSet();
+    for (int customer : instance.getCustomers()) {
+      if (instance.getDemand(customer) <= 0) {
+        return ret;
+      }
+    }
+    for (Graph.Edge edge : graph.getEdges()) {
+      if (edge.getWeight() < 0) {
+        return ret;
+      }
+    }
+
+    double[][] forward = computeBounds(true);
+    double[][] backward = computeBounds(false);
+    // Cheapest completion collecting at most q demand
+    for (int q = 1; q <= capacity; q++) {
+      for (int node = 0; node < graph.getSize(); node++) {
+        backward[q][node] = Math.min(backward[q][node], backward[q - 1][node]);
+      }
+    }
+    for (Graph.Edge edge : graph.getEdges()) {
+      double bound = Double.POSITIVE_INFINITY;
+      for (int q = 0; q <= capacity; q++) {
+        bound =
+            Math.min(bound, forward[q][edge.getStart()] + backward[capacity - q][edge.getEnd()]);
+      }
+      if (bound + edge.getWeight() - branchDualsBound > gap + EPSILON) {
+        ret.set(graph.getArcId(edge.getStart(), edge.getEnd()));
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Least reduced cost of the q-paths from the source to each node, or from each node to the sink,
+   * collecting exactly q demand, with the customers served at the node included. A visit serves a
+   * subset of the customers of the node, and serving always collects demand, so each demand level
+   * is a shortest path problem with non-negative weights seeded from the lower levels.
+   */
+  private double[][] computeBounds(boolean forward) {
+    int size = graph.getSize();
+    double[][] prizes = new double[size][];
+    for (int node = 0; node < size; node++) {
+      prizes[node] = computePrizes(node);
+    }
+    // Reduced cost before and after serving the customers at each node
+    double[][] arrivals = new double[capacity + 1][size];
+    double[][] bounds = new double[capacity + 1][size];
+    for (int q = 0; q <= capacity; q++) {
+      Arrays.fill(arrivals[q], Double.POSITIVE_INFINITY);
+      Arrays.fill(bounds[q], Double.POSITIVE_INFINITY);
+    }
+    if (forward) {
+      arrivals[0][graph.getSource()] = duals.getInitialCost();
+    } else {
+      arrivals[0][graph.getSink()] = 0;
+    }
+    boolean[] settled = new boolean[size];
+    for (int q = 0; q <= capacity; q++) {
+      double[] level = bounds[q];
+      for (int node = 0; node < size; node++) {
+        for (int demand = 0; demand <= q; demand++) {
+          level[node] = Math.min(level[node], arrivals[q - demand][node] - prizes[node][demand]);
+        }
+      }
+
+      Arrays.fill(settled, false);
+      while (true) {
+        int current = -1;
+        for (int node = 0; node < size; node++) {
+          if (!settled[node] && (current < 0 || level[node] < level[current])) {
+            current = node;
+          }
+        }
+        if (current < 0 || level[current] == Double.POSITIVE_INFINITY) {
+          break;
+        }
+        settled[current] = true;
+        for (int next = 0; next < size; next++) {
+          Graph.Edge edge = forward ? graph.getEdge(current, next) : graph.getEdge(next, current);
+          if (edge != null) {
+            double arrival = level[current] + edge.getWeight();
+            arrivals[q][next] = Math.min(arrivals[q][next], arrival);
+            if (!settled[next]) {
+              level[next] = Math.min(level[next], arrival);
+            }
+          }
+        }
+      }
+    }
+    return bounds;
+  }
+
+  /**
+   * Highest sum of duals of a subset of the customers of node with exactly the given demand, by
+   * demand, or minus infinity if there is none.
+   */
+  private double[] computePrizes(int node) {
+    double[] prizes = new double[capacity + 1];
+    Arrays.fill(prizes, Double.NEGATIVE_INFINITY);
+    prizes[0] = 0;
+    for (int customer : graph.getReverseNeighborhood(node)) {
+      int demand = instance.getDemand(customer);
+      double dual = duals.getCustomerDual(customer);
+      for (int q = capacity; q >= demand; q--) {
+        prizes[q] = Math.max(prizes[q], prizes[q - demand] + dual);
+      }
+    }
+    return prizes;
+  }
+}
@@ -12,10 +12,12 @@ class RelaxedLabelContainer implements LabelContainer {
 
   private final Label[] labels;
   private final SegmentTree tree;
+  private int size;
 
   public RelaxedLabelContainer(int capacity) {
     this.labels = new Label[capacity + 1];
     this.tree = new SegmentTree(filledArray(capacity + 1));
+    this.size = 0;
   }
 
   private static double[] filledArray(int size) {
@@ -26,7 +28,23 @@ class RelaxedLabelContainer implements LabelContainer {
 
   @Override
   public void addLabel(Label l) {
+    Label previous = labels[l.demand()];
+    if (previous != null && previous.cost() <= l.cost()) {
+      // Only one label is kept per demand, never overwrite it with a worse one
+      l.kill();
+      return;
+    }
+    // Labels with at least the same demand and a higher cost are dominated by l
+    for (int demand = l.demand(); demand < labels.length; demand++) {
+      if (labels[demand] != null && l.cost() < labels[demand].cost()) {
+        labels[demand].kill();
+        labels[demand] = null;
+        tree.update(demand, Double.MAX_VALUE);
+        size--;
+      }
+    }
     labels[l.demand()] = l;
+    size++;
     tree.update(l.demand(), l.cost());
   }
 
@@ -43,6 +61,11 @@ class RelaxedLabelContainer implements LabelContainer {
         .toList();
   }
 
+  @Override
+  public int size() {
+    return size;
+  }
+
   @Override
   public List<Label> getLabels() {
     return Arrays.stream(labels)
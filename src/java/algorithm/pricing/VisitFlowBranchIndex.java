@@ -0,0 +1,137 @@
+package algorithm.pricing;
+
+import algorithm.branching.BranchOnVisitFlow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Primitive lookup tables over the visit flow branches that are active in the RMP. Branches are
+ * addressed by a dense id and can be looked up by arc, by arc endpoint and by customer, so pricing
+ * engines only touch the branches that are relevant to the arc or customer being extended. A
+ * reversed index swaps the endpoints of every arc, for searches that run over the reversed graph,
+ * and keeps the same branch ids.
+ */
+class VisitFlowBranchIndex {
+
+  private static final int[] NO_BRANCHES = new int[0];
+
+  private final int[] customers;
+  private final int[] starts;
+  private final int[] ends;
+  private final int[] bounds;
+  private final double[] duals;
+  private final int[][][] branchesByArc;
+  private final int[][] branchesByStart;
+  private final int[][] branchesByEnd;
+  private final int[][] branchesByCustomer;
+
+  public VisitFlowBranchIndex(Map<BranchOnVisitFlow, Double> visitFlowDuals, int numberOfNodes) {
+    this(visitFlowDuals, numberOfNodes, false);
+  }
+
+  public VisitFlowBranchIndex(
+      Map<BranchOnVisitFlow, Double> visitFlowDuals, int numberOfNodes, boolean reversed) {
+    int numberOfBranches = visitFlowDuals.size();
+    this.customers = new int[numberOfBranches];
+    this.starts = new int[numberOfBranches];
+    this.ends = new int[numberOfBranches];
+    this.bounds = new int[numberOfBranches];
+    this.duals = new double[numberOfBranches];
+
+    List<List<Integer>> byStart = emptyLists(numberOfNodes);
+    List<List<Integer>> byEnd = emptyLists(numberOfNodes);
+    List<List<Integer>> byCustomer = emptyLists(numberOfNodes);
+    int id = 0;
+    for (Map.Entry<BranchOnVisitFlow, Double> entry : visitFlowDuals.entrySet()) {
+      BranchOnVisitFlow branch = entry.getKey();
+      customers[id] = branch.getCustomer();
+      starts[id] = reversed ? branch.getEdge().getEnd() : branch.getEdge().getStart();
+      ends[id] = reversed ? branch.getEdge().getStart() : branch.getEdge().getEnd();
+      bounds[id] = branch.getBound();
+      duals[id] = entry.getValue();
+      byStart.get(starts[id]).add(id);
+      byEnd.get(ends[id]).add(id);
+      byCustomer.get(customers[id]).add(id);
+      id++;
+    }
+    this.branchesByStart = toArrays(byStart);
+    this.branchesByEnd = toArrays(byEnd);
+    this.branchesByCustomer = toArrays(byCustomer);
+
+    // Only rows for nodes where some branch starts are materialized
+    this.branchesByArc = new int[numberOfNodes][][];
+    for (int start = 0; start < numberOfNodes; start++) {
+      if (branchesByStart[start].length > 0) {
+        List<List<Integer>> byEndOfRow = emptyLists(numberOfNodes);
+        for (int branch : branchesByStart[start]) {
+          byEndOfRow.get(ends[branch]).add(branch);
+        }
+        branchesByArc[start] = toArrays(byEndOfRow);
+      }
+    }
+  }
+
+  private static List<List<Integer>> emptyLists(int size) {
+    List<List<Integer>> ret = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      ret.add(new ArrayList<>());
+    }
+    return ret;
+  }
+
+  private static int[][] toArrays(List<List<Integer>> lists) {
+    int[][] ret = new int[lists.size()][];
+    for (int i = 0; i < ret.length; i++) {
+      List<Integer> list = lists.get(i);
+      ret[i] = list.isEmpty() ? NO_BRANCHES : list.stream().mapToInt(Integer::intValue).toArray();
+    }
+    return ret;
+  }
+
+  public boolean isEmpty() {
+    return customers.length == 0;
+  }
+
+  public int size() {
+    return customers.length;
+  }
+
+  public int[] getBranchesOnArc(int start, int end) {
+    int[][] row = branchesByArc[start];
+    return row == null ? NO_BRANCHES : row[end];
+  }
+
+  public int[] getBranchesStartingAt(int node) {
+    return branchesByStart[node];
+  }
+
+  public int[] getBranchesEndingAt(int node) {
+    return branchesByEnd[node];
+  }
+
+  public int[] getBranchesOfCustomer(int customer) {
+    return branchesByCustomer[customer];
+  }
+
+  public int getCustomer(int branch) {
+    return customers[branch];
+  }
+
+  public int getStart(int branch) {
+    return starts[branch];
+  }
+
+  public int getEnd(int branch) {
+    return ends[branch];
+  }
+
+  public int getBound(int branch) {
+    return bounds[branch];
+  }
+
+  public double getDual(int branch) {
+    return duals[branch];
+  }
+}
@@ -0,0 +1,169 @@
+package commons;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+
+/**
+ * Compact binary layout of an instance, stored next to the text files of the instance directory.
+ * The file is a sequence of little-endian ints: a header (magic, version, number of nodes,
+ * vehicles, capacity, depot and number of customers), the row-major N x N weight matrix, the
+ * customers, their demands, and their neighbors in compressed sparse row form (S + 1 offsets
+ * followed by the neighbors). Reading memory-maps the file, so no text is parsed at all.
+ */
+public class BinaryInstanceFormat {
+
+  public static final String DEFAULT_FILENAME = "instance.bin";
+  private static final int MAGIC = 0x53545249;
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 7;
+
+  private BinaryInstanceFormat() {}
+
+  public static Path getDefaultPath(String instanceName) {
+    return Path.of(Instance.DEFAULT_DIR, instanceName, DEFAULT_FILENAME);
+  }
+
+  /** Converts the text files of an instance into the binary file next to them. */
+  public static Path convert(String instanceName) {
+    Path path = getDefaultPath(instanceName);
+    write(Instance.readTextData(instanceName), path);
+    return path;
+  }
+
+  static void write(InstanceData data, Path path) {
+    int numberOfCustomers = data.customers().length;
+    int numberOfNeighbors = 0;
+    for (int[] neighbors : data.neighbors()) {
+      numberOfNeighbors += neighbors.length;
+    }
+    int size =
+        HEADER_SIZE + data.weights().length + 3 * numberOfCustomers + 1 + numberOfNeighbors;
+    ByteBuffer buffer = ByteBuffer.allocate(size * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    IntBuffer ints = buffer.asIntBuffer();
+    ints.put(MAGIC)
+        .put(VERSION)
+        .put(data.numberOfNodes())
+        .put(data.numberOfVehicles())
+        .put(data.capacity())
+        .put(data.depot())
+        .put(numberOfCustomers);
+    ints.put(data.weights());
+    ints.put(data.customers());
+    ints.put(data.demands());
+    int offset = 0;
+    ints.put(offset);
+    for (int[] neighbors : data.neighbors()) {
+      offset += neighbors.length;
+      ints.put(offset);
+    }
+    for (int[] neighbors : data.neighbors()) {
+      ints.put(neighbors);
+    }
+    try (FileChannel channel =
+        FileChannel.open(
+            path,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  static InstanceData read(Path path) {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      IntBuffer ints = buffer.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+      if (ints.remaining() < HEADER_SIZE || ints.get() != MAGIC) {
+        throw new IllegalArgumentException("Not a binary instance file: " + path);
+      }
+      int version = ints.get();
+      if (version != VERSION) {
+        throw new IllegalArgumentException("Unsupported binary instance version " + version);
+      }
+      int numberOfNodes = ints.get();
+      int numberOfVehicles = ints.get();
+      int capacity = ints.get();
+      int depot = ints.get();
+      int numberOfCustomers = ints.get();
+      if (numberOfNodes <= 0
+          || numberOfVehicles < 0
+          || depot < 0
+          || depot >= numberOfNodes
+          || numberOfCustomers < 0
+          || numberOfCustomers >= numberOfNodes
+          || (long) numberOfNodes * numberOfNodes + 3L * numberOfCustomers + 1 > ints.remaining()) {
+        throw new IllegalArgumentException("Corrupt binary instance header: " + path);
+      }
+
+      int[] weights = new int[numberOfNodes * numberOfNodes];
+      ints.get(weights);
+      int[] customers = new int[numberOfCustomers];
+      ints.get(customers);
+      checkRange(customers, numberOfNodes, path);
+      int[] demands = new int[numberOfCustomers];
+      ints.get(demands);
+      int[] offsets = new int[numberOfCustomers + 1];
+      ints.get(offsets);
+      if (offsets[0] != 0 || offsets[numberOfCustomers] > ints.remaining()) {
+        throw new IllegalArgumentException("Corrupt binary instance neighbors: " + path);
+      }
+      int[][] neighbors = new int[numberOfCustomers][];
+      for (int s = 0; s < numberOfCustomers; s++) {
+        if (offsets[s + 1] < offsets[s]) {
+          throw new IllegalArgumentException("Corrupt binary instance neighbors: " + path);
+        }
+        neighbors[s] = new int[offsets[s + 1] - offsets[s]];
+        ints.get(neighbors[s]);
+        checkRange(neighbors[s], numberOfNodes, path);
+      }
+      return new InstanceData(
+          numberOfNodes, numberOfVehicles, capacity, depot, weights, customers, demands, neighbors);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static void checkRange(int[] nodes, int numberOfNodes, Path path) {
+    for (int node : nodes) {
+      if (node < 0 || node >= numberOfNodes) {
+        throw new IllegalArgumentException("Node " + node + " out of range in " + path);
+      }
+    }
+  }
+
+  /**
+   * Returns whether the binary file of the instance exists and was written after every text file
+   * of the instance was last modified, so that a stale binary file is never preferred.
+   */
+  static boolean isUpToDate(String instanceName) {
+    Path binaryPath = getDefaultPath(instanceName);
+    if (!Files.isRegularFile(binaryPath)) {
+      return false;
+    }
+    try {
+      FileTime binaryTime = Files.getLastModifiedTime(binaryPath);
+      for (Path textPath : Instance.getTextFiles(instanceName)) {
+        if (Files.exists(textPath)
+            && Files.getLastModifiedTime(textPath).compareTo(binaryTime) > 0) {
+          return false;
+        }
+      }
+      return true;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package commons;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Cooperative cancellation shared by the solvers of a run. A token is cancelled explicitly from
+ * any thread with {@link #cancel()}, or implicitly once its deadline passes. Solvers poll {@link
+ * #isCancelled()} at amortised intervals, usually through a {@link Stopwatch}, and native solves
+ * register a callback with {@link #onCancel(Runnable)} so they can be aborted.
+ */
+public class CancellationToken {
+
+  /** Token that is never cancelled. */
+  public static final CancellationToken NONE = new CancellationToken(Long.MAX_VALUE);
+
+  private final long deadline;
+  private final List<Runnable> callbacks;
+  private volatile boolean cancelled;
+
+  private CancellationToken(long deadline) {
+    this.deadline = deadline;
+    this.callbacks = new CopyOnWriteArrayList<>();
+    this.cancelled = false;
+  }
+
+  public CancellationToken() {
+    this(Long.MAX_VALUE);
+  }
+
+  /** Returns a token that cancels itself once timeout has elapsed; sub-second timeouts work. */
+  public static CancellationToken withTimeout(Duration timeout) {
+    long now = System.nanoTime();
+    long nanos = timeout.toNanos();
+    return new CancellationToken(nanos >= Long.MAX_VALUE - now ? Long.MAX_VALUE : now + nanos);
+  }
+
+  public void cancel() {
+    if (this == NONE) {
+      throw new UnsupportedOperationException("The NONE token cannot be cancelled");
+    }
+    cancelled = true;
+    callbacks.forEach(Runnable::run);
+  }
+
+  public boolean isCancelled() {
+    return cancelled || (deadline != Long.MAX_VALUE && System.nanoTime() >= deadline);
+  }
+
+  /** Time left until the deadline, or the longest duration that fits in a long if it has none. */
+  public Duration getRemainingTime() {
+    if (cancelled) {
+      return Duration.ZERO;
+    }
+    long nanos = deadline == Long.MAX_VALUE ? Long.MAX_VALUE : deadline - System.nanoTime();
+    return Duration.ofNanos(nanos);
+  }
+
+  /**
+   * Registers a callback to run when the token is cancelled explicitly. Deadlines do not trigger
+   * callbacks, since every solve already receives them as its own time limit.
+   *
+   * @return a handle that removes the callback when closed
+   */
+  public Registration onCancel(Runnable callback) {
+    if (this == NONE) {
+      return () -> {};
+    }
+    callbacks.add(callback);
+    if (cancelled) {
+      callback.run();
+    }
+    return () -> callbacks.remove(callback);
+  }
+
+  /** Handle of a registered callback, meant for try-with-resources. */
+  @FunctionalInterface
+  public interface Registration extends AutoCloseable {
+
+    @Override
+    void close();
+  }
+}
@@ -0,0 +1,34 @@
+package commons;
+
+import ilog.concert.IloException;
+import ilog.cplex.IloCplex;
+
+/**
+ * Number of threads each CPLEX model may use, set per calling thread. When several solves run
+ * concurrently, each worker sets its share of the cores so that the solves do not oversubscribe
+ * the machine. A limit of 0 leaves the CPLEX default, which uses every core.
+ */
+public class CplexThreads {
+
+  private static final ThreadLocal<Integer> THREAD_LIMIT = ThreadLocal.withInitial(() -> 0);
+
+  private CplexThreads() {}
+
+  public static int getThreadLimit() {
+    return THREAD_LIMIT.get();
+  }
+
+  public static void setThreadLimit(int threads) {
+    if (threads < 0) {
+      throw new IllegalArgumentException("Thread limit must be non-negative");
+    }
+    THREAD_LIMIT.set(threads);
+  }
+
+  public static void apply(IloCplex cplex) throws IloException {
+    int threads = THREAD_LIMIT.get();
+    if (threads > 0) {
+      cplex.setParam(IloCplex.Param.Threads, threads);
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package commons;
+
+/** Union-find over 0..size-1 with path compression and union by rank. */
+public final class DisjointSet {
+
+  private final int[] parent;
+  private final int[] rank;
+
+  public DisjointSet(int size) {
+    this.parent = new int[size];
+    this.rank = new int[size];
+    reset();
+  }
+
+  /** Puts every element back in its own set, so that the structure can be reused. */
+  public void reset() {
+    for (int i = 0; i < parent.length; i++) {
+      parent[i] = i;
+      rank[i] = 0;
+    }
+  }
+
+  public int find(int x) {
+    int root = x;
+    while (parent[root] != root) {
+      root = parent[root];
+    }
+    while (parent[x] != root) {
+      int next = parent[x];
+      parent[x] = root;
+      x = next;
+    }
+    return root;
+  }
+
+  /** Merges the sets of x and y, returning false if they were already the same set. */
+  public boolean union(int x, int y) {
+    int rootX = find(x);
+    int rootY = find(y);
+    if (rootX == rootY) {
+      return false;
+    }
+    if (rank[rootX] < rank[rootY]) {
+      parent[rootX] = rootY;
+    } else if (rank[rootX] > rank[rootY]) {
+      parent[rootY] = rootX;
+    } else {
+      parent[rootY] = rootX;
+      rank[rootX]++;
+    }
+    return true;
+  }
+
+  public int size() {
+    return parent.length;
+  }
+}
@@ -1,11 +1,14 @@
 package commons;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class Instance {
 
@@ -14,9 +17,6 @@ public class Instance {
     private static final String DEFAULT_NEIGHBORS_FILENAME = "neighbors.txt";
     private static final String DEFAULT_PACKAGES_FILENAME = "packages.txt";
     private static final String DEFAULT_PARAMS_FILENAME = "params.txt";
-    private static final String CAPACITY_STRING = "capacity";
-    private static final String DEPOT_STRING = "depot";
-    private static final String VEHICLES_STRING = "vehicles";
     private final String name;
     private final int numberOfNodes;
     private final int numberOfVehicles;
@@ -25,130 +25,148 @@ public class Instance {
     private final List<Integer> customers;
     private final Graph graph;
     private final Map<Integer, Set<Integer>> neighbors;
-    private final Map<Integer, Integer> demand;
+    private final int[] demand;
+    private final int[] customerIndex;
+    private final int[] reverseNeighborhoodOffsets;
+    private final int[] reverseNeighborhoodCustomers;
+    private final long[][] reverseNeighborhoodMasks;
     private final List<List<Integer>> reverseNeighborhoods;
     private final boolean allowUnusedVehicles;
 
     public Instance(String instanceName, String graphFilename, String neighborsFilename, String packagesFilename,
                     String paramsFilename, boolean allowUnusedVehicles) {
-        this.name = instanceName;
-        this.allowUnusedVehicles = allowUnusedVehicles;
+        this(instanceName, InstanceData.fromText(getFullPath(instanceName, graphFilename),
+                getFullPath(instanceName, neighborsFilename), getFullPath(instanceName, packagesFilename),
+                getFullPath(instanceName, paramsFilename)), allowUnusedVehicles);
+    }
 
-        List<List<Integer>> adjacencyMatrix = Utils.parseIntegerMatrix(getFullPath(instanceName, graphFilename));
-        this.numberOfNodes = getNumberOfNodes(adjacencyMatrix);
-        this.graph = createGraph(adjacencyMatrix, numberOfNodes);
+    public Instance(String instanceName) {
+        this(instanceName, false);
+    }
 
-        Map<String, Integer> parameterValues = Utils.parseStringToIntMap(getFullPath(instanceName, paramsFilename));
-        this.capacity = parameterValues.get(CAPACITY_STRING);
-        this.numberOfVehicles = parameterValues.get(VEHICLES_STRING);
-        this.depot = parameterValues.get(DEPOT_STRING) - 1;
+    /**
+     * Loads the instance from its binary file if one has been generated with {@link BinaryInstanceFormat} after the
+     * text files were last modified, and from the text files otherwise.
+     */
+    public Instance(String instanceName, boolean allowUnusedVehicles) {
+        this(instanceName, readData(instanceName), allowUnusedVehicles);
+    }
 
-        List<List<Integer>> customersAndDemand = Utils.parseIntegerMatrix(getFullPath(instanceName, packagesFilename));
-        this.customers = createCustomerList(customersAndDemand);
-        this.demand = createDemandMap(customersAndDemand);
+    Instance(String instanceName, InstanceData data, boolean allowUnusedVehicles) {
+        this.name = instanceName;
+        this.allowUnusedVehicles = allowUnusedVehicles;
 
-        List<List<Integer>> neighbors = Utils.parseIntegerMatrix(getFullPath(instanceName, neighborsFilename));
-        this.neighbors = createNeighborsMap(neighbors, this.customers);
+        this.numberOfNodes = data.numberOfNodes();
+        this.graph = createGraph(data);
+        this.capacity = data.capacity();
+        this.numberOfVehicles = data.numberOfVehicles();
+        this.depot = data.depot();
+
+        this.customers = Arrays.stream(data.customers()).boxed().toList();
+        this.demand = new int[this.numberOfNodes];
+        this.customerIndex = new int[this.numberOfNodes];
+        Arrays.fill(this.customerIndex, -1);
+        this.neighbors = new HashMap<>();
+        for (int s = 0; s < this.customers.size(); s++) {
+            int customer = this.customers.get(s);
+            this.demand[customer] = data.demands()[s];
+            this.customerIndex[customer] = s;
+            this.neighbors.put(customer, Arrays.stream(data.neighbors()[s]).boxed().collect(Collectors.toSet()));
+        }
 
-        this.reverseNeighborhoods = computeReverseNeighborhoods(this.numberOfNodes, this.customers, this.neighbors);
+        this.reverseNeighborhoodOffsets = new int[this.numberOfNodes + 1];
+        this.reverseNeighborhoodCustomers =
+                computeReverseNeighborhoods(this.numberOfNodes, this.customers, this.neighbors,
+                        this.reverseNeighborhoodOffsets);
+        this.reverseNeighborhoodMasks = new long[this.numberOfNodes][];
+        this.reverseNeighborhoods = new ArrayList<>(this.numberOfNodes);
+        for (int node = 0; node < this.numberOfNodes; node++) {
+            List<Integer> reverseNeighborhood = new ArrayList<>();
+            long[] mask = new long[getMaskLength(this.customers.size())];
+            for (int i = reverseNeighborhoodOffsets[node]; i < reverseNeighborhoodOffsets[node + 1]; i++) {
+                int customer = reverseNeighborhoodCustomers[i];
+                reverseNeighborhood.add(customer);
+                int index = customerIndex[customer];
+                mask[index >>> 6] |= 1L << index;
+            }
+            this.reverseNeighborhoods.add(List.copyOf(reverseNeighborhood));
+            this.reverseNeighborhoodMasks[node] = mask;
+        }
 
         checkRep();
     }
 
-    public Instance(String instanceName) {
-        this(instanceName, DEFAULT_GRAPH_FILENAME, DEFAULT_NEIGHBORS_FILENAME, DEFAULT_PACKAGES_FILENAME,
-                DEFAULT_PARAMS_FILENAME, false);
+    private static String getFullPath(String instance, String filename) {
+        return DEFAULT_DIR + instance + "/" + filename;
     }
 
-    public Instance(String instanceName, boolean allowUnusedVehicles) {
-        this(instanceName, DEFAULT_GRAPH_FILENAME, DEFAULT_NEIGHBORS_FILENAME, DEFAULT_PACKAGES_FILENAME,
-                DEFAULT_PARAMS_FILENAME, allowUnusedVehicles);
+    private static InstanceData readData(String instanceName) {
+        if (BinaryInstanceFormat.isUpToDate(instanceName)) {
+            return BinaryInstanceFormat.read(BinaryInstanceFormat.getDefaultPath(instanceName));
+        }
+        return readTextData(instanceName);
     }
 
-    private static String getFullPath(String instance, String filename) {
-        return DEFAULT_DIR + instance + "/" + filename;
+    /** Text files the instance is read from, whether or not they exist. */
+    static List<Path> getTextFiles(String instanceName) {
+        return Stream.of(DEFAULT_GRAPH_FILENAME, DEFAULT_NEIGHBORS_FILENAME, DEFAULT_PACKAGES_FILENAME,
+                DEFAULT_PARAMS_FILENAME).map(filename -> Path.of(getFullPath(instanceName, filename))).toList();
     }
 
-    private static int getNumberOfNodes(List<List<Integer>> adjacencyMatrix) {
-        int maxNodeIndexFound = 0;
-        for (List<Integer> line : adjacencyMatrix) {
-            maxNodeIndexFound = Math.max(maxNodeIndexFound, line.get(0) - 1);
-            maxNodeIndexFound = Math.max(maxNodeIndexFound, line.get(1) - 1);
-        }
-        return maxNodeIndexFound + 1;
+    static InstanceData readTextData(String instanceName) {
+        return InstanceData.fromText(getFullPath(instanceName, DEFAULT_GRAPH_FILENAME),
+                getFullPath(instanceName, DEFAULT_NEIGHBORS_FILENAME),
+                getFullPath(instanceName, DEFAULT_PACKAGES_FILENAME), getFullPath(instanceName, DEFAULT_PARAMS_FILENAME));
     }
 
-    private static Graph createGraph(List<List<Integer>> adjacencyMatrix, int size) {
-        Graph graph = new Graph(size);
-        for (List<Integer> line : adjacencyMatrix) {
-            int i = line.get(0) - 1;
-            int j = line.get(1) - 1;
-            int weight = line.get(2);
-            if (weight >= 0 && i != j) {
-                graph.addEdge(i, j, weight);
+    private static Graph createGraph(InstanceData data) {
+        Graph graph = new Graph(data.numberOfNodes());
+        for (int i = 0; i < data.numberOfNodes(); i++) {
+            for (int j = 0; j < data.numberOfNodes(); j++) {
+                int weight = data.getWeight(i, j);
+                if (weight >= 0 && i != j) {
+                    graph.addEdge(i, j, weight);
+                }
             }
         }
         return graph;
     }
 
-    private static Map<Integer, Integer> createDemandMap(List<List<Integer>> customersAndDemand) {
-        Map<Integer, Integer> customerToDemand = new HashMap<>();
-        for (List<Integer> line : customersAndDemand) {
-            int customer = line.get(0) - 1;
-            int demand = line.get(1);
-            customerToDemand.put(customer, demand);
-        }
-        return customerToDemand;
+    private static int getMaskLength(int numberOfCustomers) {
+        return (numberOfCustomers + Long.SIZE - 1) / Long.SIZE;
     }
 
-    private static List<Integer> createCustomerList(List<List<Integer>> customersAndDemand) {
-        List<Integer> customers = new ArrayList<>();
-        for (List<Integer> line : customersAndDemand) {
-            int customer = line.get(0) - 1;
-            customers.add(customer);
-        }
-        return customers.stream().distinct().sorted().toList();
-    }
-
-    private static Map<Integer, Set<Integer>> createNeighborsMap(List<List<Integer>> customersAndDemand,
-                                                                 List<Integer> customers) {
-        Map<Integer, Set<Integer>> neighbors = new HashMap<>();
+    /**
+     * Builds the reverse neighborhoods in compressed sparse row form: the customers that can be served from node are
+     * stored in increasing order in positions offsets[node] to offsets[node + 1] - 1 of the returned array.
+     */
+    private static int[] computeReverseNeighborhoods(int numberOfNodes, List<Integer> customers,
+                                                     Map<Integer, Set<Integer>> neighbors, int[] offsets) {
         for (int customer : customers) {
-            neighbors.put(customer, new HashSet<>());
-            neighbors.get(customer).add(customer);
-        }
-        for (List<Integer> line : customersAndDemand) {
-            int customer = line.get(0) - 1;
-            int neighbor = line.get(1) - 1;
-            if (!neighbors.containsKey(customer)) {
-                System.out.printf("Trying to add non existing customer: %d %n", customer);
-            } else {
-                neighbors.get(customer).add(neighbor);
+            for (int node : neighbors.get(customer)) {
+                offsets[node + 1]++;
             }
         }
-        return neighbors;
-    }
-
-    private static List<List<Integer>> computeReverseNeighborhoods(int numberOfNodes, List<Integer> customers,
-                                                                   Map<Integer, Set<Integer>> neighbors) {
-        List<List<Integer>> ret = new ArrayList<>();
         for (int node = 0; node < numberOfNodes; node++) {
-            ret.add(new ArrayList<>());
-            for (int customer : customers) {
-                if (neighbors.get(customer).contains(node)) {
-                    ret.get(node).add(customer);
-                }
+            offsets[node + 1] += offsets[node];
+        }
+        int[] ret = new int[offsets[numberOfNodes]];
+        int[] next = Arrays.copyOf(offsets, numberOfNodes);
+        // Customers are sorted, so each row ends up sorted as well
+        for (int customer : customers) {
+            for (int node : neighbors.get(customer)) {
+                ret[next[node]++] = customer;
             }
         }
         return ret;
     }
 
     private void checkRep() {
-        assert customers.size() == demand.size();
+        assert customerIndex.length == numberOfNodes;
         assert customers.size() == neighbors.size();
         assert customers.size() < numberOfNodes;
         for (int customer : customers) {
-            assert demand.containsKey(customer);
+            assert demand[customer] >= 0;
             assert neighbors.containsKey(customer);
             assert customer != depot;
             assert 0 <= customer;
@@ -194,8 +212,16 @@ public class Instance {
         return neighbors.get(customer);
     }
 
-    public Integer getDemand(int customer) {
-        return demand.get(customer);
+    public int getDemand(int customer) {
+        return demand[customer];
+    }
+
+    /**
+     * Returns the dense index of customer in 0..|S|-1, the same index used by {@link #getCustomer(int)}, or -1 if the
+     * node is not a customer.
+     */
+    public int getCustomerIndex(int node) {
+        return customerIndex[node];
     }
 
     public boolean unusedVehiclesAllowed() {
@@ -210,6 +236,32 @@ public class Instance {
         return reverseNeighborhoods.get(node);
     }
 
+    /**
+     * First position of the reverse neighborhood of node in {@link #getReverseNeighborhoodCustomer(int)}.
+     */
+    public int getReverseNeighborhoodStart(int node) {
+        return reverseNeighborhoodOffsets[node];
+    }
+
+    /**
+     * Position after the last customer of the reverse neighborhood of node.
+     */
+    public int getReverseNeighborhoodEnd(int node) {
+        return reverseNeighborhoodOffsets[node + 1];
+    }
+
+    public int getReverseNeighborhoodCustomer(int position) {
+        return reverseNeighborhoodCustomers[position];
+    }
+
+    /**
+     * Returns the reverse neighborhood of node as a bitmask over customer indices. The array is shared and must not be
+     * modified.
+     */
+    public long[] getReverseNeighborhoodMask(int node) {
+        return reverseNeighborhoodMasks[node];
+    }
+
     public Graph getGraph() {
         return graph;
     }
@@ -218,7 +270,8 @@ public class Instance {
     public String toString() {
         return "Instance{" + "numberOfNodes=" + numberOfNodes + ", numberOfVehicles=" + numberOfVehicles +
                 ", capacity=" + capacity + ", depot=" + depot + ", customers=" + customers + ", neighbors=" +
-                neighbors + ", demand=" + demand + ", allowUnusedVehicles=" + allowUnusedVehicles + '}';
+                neighbors + ", demand=" + Arrays.toString(demand) + ", allowUnusedVehicles=" + allowUnusedVehicles +
+                '}';
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,91 @@
+package commons;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Raw contents of an instance, independent of the format it was stored in. Nodes are 0-based,
+ * weights is the row-major N x N matrix of arc weights with negative entries for missing arcs,
+ * customers are sorted, and demands and neighbors are aligned with customers. The neighbors of a
+ * customer always include the customer itself.
+ */
+record InstanceData(
+    int numberOfNodes,
+    int numberOfVehicles,
+    int capacity,
+    int depot,
+    int[] weights,
+    int[] customers,
+    int[] demands,
+    int[][] neighbors) {
+
+  private static final String CAPACITY_STRING = "capacity";
+  private static final String DEPOT_STRING = "depot";
+  private static final String VEHICLES_STRING = "vehicles";
+
+  /** Reads the text layout: 1-based (i, j, weight) triples, "key value" params and pairs. */
+  static InstanceData fromText(
+      String graphFilename,
+      String neighborsFilename,
+      String packagesFilename,
+      String paramsFilename) {
+    List<List<Integer>> adjacencyMatrix = Utils.parseIntegerMatrix(graphFilename);
+    int numberOfNodes = 0;
+    for (List<Integer> line : adjacencyMatrix) {
+      numberOfNodes = Math.max(numberOfNodes, Math.max(line.get(0), line.get(1)));
+    }
+    int[] weights = new int[numberOfNodes * numberOfNodes];
+    Arrays.fill(weights, -1);
+    for (List<Integer> line : adjacencyMatrix) {
+      weights[(line.get(0) - 1) * numberOfNodes + line.get(1) - 1] = line.get(2);
+    }
+
+    Map<String, Integer> parameterValues = Utils.parseStringToIntMap(paramsFilename);
+
+    int[] demandByNode = new int[numberOfNodes];
+    List<List<Integer>> customersAndDemand = Utils.parseIntegerMatrix(packagesFilename);
+    for (List<Integer> line : customersAndDemand) {
+      demandByNode[line.get(0) - 1] = line.get(1);
+    }
+    int[] customers =
+        customersAndDemand.stream().mapToInt(line -> line.get(0) - 1).distinct().sorted().toArray();
+    int[] demands = Arrays.stream(customers).map(customer -> demandByNode[customer]).toArray();
+
+    int[] customerIndex = new int[numberOfNodes];
+    Arrays.fill(customerIndex, -1);
+    List<List<Integer>> neighborLists = new ArrayList<>();
+    for (int s = 0; s < customers.length; s++) {
+      customerIndex[customers[s]] = s;
+      neighborLists.add(new ArrayList<>(List.of(customers[s])));
+    }
+    for (List<Integer> line : Utils.parseIntegerMatrix(neighborsFilename)) {
+      int customer = line.get(0) - 1;
+      int neighbor = line.get(1) - 1;
+      if (customerIndex[customer] < 0) {
+        System.out.printf("Trying to add non existing customer: %d %n", customer);
+      } else if (!neighborLists.get(customerIndex[customer]).contains(neighbor)) {
+        neighborLists.get(customerIndex[customer]).add(neighbor);
+      }
+    }
+    int[][] neighbors = new int[customers.length][];
+    for (int s = 0; s < customers.length; s++) {
+      neighbors[s] = neighborLists.get(s).stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    return new InstanceData(
+        numberOfNodes,
+        parameterValues.get(VEHICLES_STRING),
+        parameterValues.get(CAPACITY_STRING),
+        parameterValues.get(DEPOT_STRING) - 1,
+        weights,
+        customers,
+        demands,
+        neighbors);
+  }
+
+  int getWeight(int i, int j) {
+    return weights[i * numberOfNodes + j];
+  }
+}
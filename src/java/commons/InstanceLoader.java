@@ -1,53 +1,159 @@
 package commons;
 
 import java.io.File;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+/**
+ * Catalogue of the instances in the resources directory. Only the directory names are scanned up
+ * front: experiment instances are described by the sizes encoded in their name, and an instance is
+ * read from disk the first time it is requested. Loaded instances are kept in a bounded LRU cache.
+ */
 public class InstanceLoader {
 
+  public static final int DEFAULT_CACHE_SIZE = 16;
+
+  private static final Pattern EXPERIMENT_NAME = Pattern.compile("instance_n(\\d+)_s(\\d+)_k(\\d+)");
+  private static final Comparator<Descriptor> DESCRIPTOR_COMPARATOR =
+      Comparator.comparing(Descriptor::numberOfNodes)
+          .thenComparing(Descriptor::numberOfCustomers);
   private static final Comparator<Instance> INSTANCE_COMPARATOR =
       Comparator.comparing(Instance::getNumberOfNodes)
           .thenComparing(Instance::getNumberOfCustomers);
 
-  private static List<Instance> allInstances;
   private static InstanceLoader instance;
 
+  private final List<Descriptor> experimentInstances;
+  private final List<String> testInstances;
+  private final LinkedHashMap<String, Instance> cache;
+  private int cacheSize;
+
   private InstanceLoader() {
-    allInstances = loadAllInstances();
+    this.experimentInstances = new ArrayList<>();
+    this.testInstances = new ArrayList<>();
+    this.cacheSize = DEFAULT_CACHE_SIZE;
+    this.cache =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, Instance> eldest) {
+            return size() > cacheSize;
+          }
+        };
+    scanInstanceNames();
   }
 
-  private static List<Instance> loadAllInstances() {
-    List<Instance> ret = new ArrayList<>();
+  public static synchronized InstanceLoader getInstance() {
+    if (instance == null) {
+      instance = new InstanceLoader();
+    }
+    return instance;
+  }
+
+  private void scanInstanceNames() {
     File resourcesDir = new File(Instance.DEFAULT_DIR);
     for (File dir : Objects.requireNonNull(resourcesDir.listFiles(File::isDirectory))) {
-      if (dir.getName().startsWith("instance")) {
-        ret.add(new Instance(dir.getName(), true));
+      String name = dir.getName();
+      if (!name.startsWith("instance")) {
+        continue;
+      }
+      Matcher matcher = EXPERIMENT_NAME.matcher(name);
+      if (matcher.matches()) {
+        experimentInstances.add(
+            new Descriptor(
+                name,
+                Integer.parseInt(matcher.group(1)),
+                Integer.parseInt(matcher.group(2)),
+                Integer.parseInt(matcher.group(3))));
+      } else {
+        testInstances.add(name);
       }
     }
-    return ret;
+    experimentInstances.sort(DESCRIPTOR_COMPARATOR);
   }
 
-  public static InstanceLoader getInstance() {
-    if (instance == null) {
-      instance = new InstanceLoader();
+  /** Sets the number of loaded instances kept in memory, evicting the least recently used ones. */
+  public synchronized void setCacheSize(int cacheSize) {
+    if (cacheSize < 1) {
+      throw new IllegalArgumentException("Cache size must be positive");
     }
-    return instance;
+    this.cacheSize = cacheSize;
+    while (cache.size() > cacheSize) {
+      cache.remove(cache.keySet().iterator().next());
+    }
+  }
+
+  /** Returns the instance with the given name, reading it from disk if it is not cached. */
+  public Instance load(String name) {
+    synchronized (this) {
+      Instance cached = cache.get(name);
+      if (cached != null) {
+        return cached;
+      }
+    }
+    // Read outside the lock so that several instances can be loaded concurrently
+    Instance loaded = new Instance(name, true);
+    synchronized (this) {
+      Instance cached = cache.putIfAbsent(name, loaded);
+      return cached != null ? cached : loaded;
+    }
+  }
+
+  /** Loads all the given instances in parallel, keeping the order of the descriptors. */
+  public List<Instance> loadAll(List<Descriptor> descriptors) {
+    return descriptors.parallelStream().map(d -> load(d.name())).toList();
+  }
+
+  public List<Descriptor> getExperimentDescriptors() {
+    return List.copyOf(experimentInstances);
   }
 
+  /**
+   * Returns the experiment instances sorted by number of nodes and customers. The list is lazy:
+   * each instance is loaded when it is accessed, so iterating and stopping early only reads the
+   * instances that were reached.
+   */
   public List<Instance> getExperimentInstances() {
-    return allInstances.stream()
-        .filter(i -> i.getName().matches("instance_n[0-9]+_s[0-9]+_k[0-9]+"))
-        .sorted(INSTANCE_COMPARATOR)
-        .toList();
+    return new LazyInstanceList(experimentInstances);
+  }
+
+  /** Same as {@link #getExperimentInstances()}, skipping the instances rejected by the filter. */
+  public List<Instance> getExperimentInstances(Predicate<Descriptor> filter) {
+    return new LazyInstanceList(experimentInstances.stream().filter(filter).toList());
   }
 
   public List<Instance> getTestInstances() {
-    return allInstances.stream()
-        .filter(i -> !i.getName().matches("instance_n[0-9]+_s[0-9]+_k[0-9]+"))
-        .sorted(INSTANCE_COMPARATOR)
-        .toList();
+    // Test instance sizes are not encoded in their names, so they have to be read to be sorted
+    return testInstances.stream().map(this::load).sorted(INSTANCE_COMPARATOR).toList();
+  }
+
+  /** Name and sizes of an experiment instance, as encoded in its directory name. */
+  public record Descriptor(
+      String name, int numberOfNodes, int numberOfCustomers, int numberOfVehicles) {}
+
+  private class LazyInstanceList extends AbstractList<Instance> {
+
+    private final List<Descriptor> descriptors;
+
+    private LazyInstanceList(List<Descriptor> descriptors) {
+      this.descriptors = descriptors;
+    }
+
+    @Override
+    public Instance get(int index) {
+      return load(descriptors.get(index).name());
+    }
+
+    @Override
+    public int size() {
+      return descriptors.size();
+    }
   }
 }
@@ -0,0 +1,110 @@
+package commons;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Append-only CSV of experiment results that can be shared by several threads. Every row starts
+ * with the configuration and the instance name, which identify the run. Opening an existing file
+ * keeps its rows, so an interrupted sweep can be resumed by skipping the runs that are already
+ * recorded.
+ */
+public class ResultSink implements AutoCloseable {
+
+  private static final String DELIMITER = ";";
+  private static final String CONFIGURATION_HEADER = "Configuracion";
+
+  private final List<String> headers;
+  private final Set<String> completedRuns;
+  private final BufferedWriter bufferedWriter;
+
+  public ResultSink(List<String> headers, String filename) {
+    this.headers = new ArrayList<>();
+    this.headers.add(CONFIGURATION_HEADER);
+    this.headers.addAll(headers);
+    this.completedRuns = new HashSet<>();
+    Path path = Path.of(Utils.RESOURCES_PATH + filename);
+    try {
+      boolean resumed = Files.exists(path) && Files.size(path) > 0;
+      if (resumed) {
+        readCompletedRuns(path);
+      }
+      this.bufferedWriter =
+          Files.newBufferedWriter(
+              path, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+      if (!resumed) {
+        writeLine(this.headers);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static String getKey(String configuration, String instanceName) {
+    return configuration + DELIMITER + instanceName;
+  }
+
+  private void readCompletedRuns(Path path) throws IOException {
+    List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+    // The first line holds the headers
+    for (String line : lines.subList(1, lines.size())) {
+      String[] fields = line.split(DELIMITER);
+      if (fields.length >= 2) {
+        completedRuns.add(getKey(fields[0], fields[1]));
+      }
+    }
+  }
+
+  public synchronized boolean isCompleted(String configuration, String instanceName) {
+    return completedRuns.contains(getKey(configuration, instanceName));
+  }
+
+  /** Appends a row whose first field must be the instance name, as in every Table.Entry. */
+  public synchronized void append(String configuration, Table.Entry entry) {
+    List<String> fields = new ArrayList<>();
+    fields.add(configuration);
+    fields.addAll(entry.getFields());
+    writeLine(fields);
+    completedRuns.add(getKey(configuration, fields.get(1)));
+  }
+
+  /** Appends a row with the given value in every result column, e.g. for a run that timed out. */
+  public synchronized void appendPlaceholder(
+      String configuration, String instanceName, String value) {
+    String[] fields = new String[headers.size()];
+    Arrays.fill(fields, value);
+    fields[0] = configuration;
+    fields[1] = instanceName;
+    writeLine(Arrays.asList(fields));
+    completedRuns.add(getKey(configuration, instanceName));
+  }
+
+  @Override
+  public synchronized void close() {
+    try {
+      bufferedWriter.close();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private void writeLine(List<String> fields) {
+    try {
+      bufferedWriter.write(String.join(DELIMITER, fields));
+      bufferedWriter.newLine();
+      // Flush every row so that a killed sweep loses at most the runs in progress
+      bufferedWriter.flush();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
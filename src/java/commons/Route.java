@@ -1,83 +1,132 @@
 package commons;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
-import java.util.Objects;
 import java.util.Set;
 
+/**
+ * Immutable route: the nodes visited after leaving the depot, ending at the depot, the weight of the
+ * arc into each of them, and the customers served. Routes are built once with a {@link Builder} and
+ * then read many times by the RMP, so cost, demand, hash, arcs and served customers are computed up
+ * front.
+ */
 public class Route {
 
-    private final List<Integer> nodes;
-    private final Set<Integer> customersServed;
-    private final List<Integer> weights;
+    private static final long NO_ARC = -1;
 
-    public Route(List<Integer> nodes, Set<Integer> customersServed, List<Integer> weights) {
+    private final int[]         nodes;
+    private final int[]         weights;
+    private final long[]        customerMask;
+    private final long[]        arcTable;
+    private final List<Integer> nodeList;
+    private final Set<Integer>  customersServed;
+    private final int           cost;
+    private final int           demand;
+    private final int           hash;
+
+    private Route(int[] nodes, int[] weights, BitSet customers, int demand) {
         this.nodes = nodes;
-        this.customersServed = customersServed;
         this.weights = weights;
+        this.customerMask = customers.toLongArray();
+        this.arcTable = createArcTable(nodes);
+        this.nodeList = Arrays.stream(nodes).boxed().toList();
+        this.customersServed = Collections.unmodifiableSet(Utils.bitSetToIntSet(customers));
+        this.cost = Arrays.stream(weights).sum();
+        this.demand = demand;
+        this.hash = 31 * (31 * Arrays.hashCode(nodes) + Arrays.hashCode(customerMask)) + Arrays.hashCode(weights);
+    }
+
+    /** Open addressing table of the arcs of the route, with linear probing and twice as many slots. */
+    private static long[] createArcTable(int[] nodes) {
+        int size = Integer.highestOneBit(Math.max(1, nodes.length) * 2) * 2;
+        long[] table = new long[size];
+        Arrays.fill(table, NO_ARC);
+        for (int i = 0; i + 1 < nodes.length; i++) {
+            long arc = getArcKey(nodes[i], nodes[i + 1]);
+            int slot = getSlot(arc, size);
+            while (table[slot] != NO_ARC && table[slot] != arc) {
+                slot = (slot + 1) & (size - 1);
+            }
+            table[slot] = arc;
+        }
+        return table;
     }
 
-    public Route() {
-        this.nodes = new ArrayList<>();
-        this.customersServed = new HashSet<>();
-        this.weights = new ArrayList<>();
+    private static long getArcKey(int start, int end) {
+        return ((long) start << 32) | (end & 0xffffffffL);
+    }
+
+    private static int getSlot(long arc, int size) {
+        return (int) ((arc * 0x9E3779B97F4A7C15L) >>> 32) & (size - 1);
     }
 
     public List<Integer> getNodes() {
-        return nodes;
+        return nodeList;
+    }
+
+    public int getNumberOfNodes() {
+        return nodes.length;
+    }
+
+    public int getNode(int index) {
+        return nodes[index];
     }
 
     public Set<Integer> getCustomersServed() {
         return customersServed;
     }
 
-    public void addNode(int node, int weight) {
-        nodes.add(node);
-        weights.add(weight);
+    /** Customers served as a bitmask over node ids. */
+    public BitSet getCustomerMask() {
+        return BitSet.valueOf(customerMask);
     }
 
-    public void addCustomers(Collection<Integer> customers) {
-        customersServed.addAll(customers);
+    public int getCost() {
+        return cost;
     }
 
-    public Integer getCost() {
-        return weights.stream().reduce(Integer::sum).orElse(0);
+    /** Total demand of the customers served. */
+    public int getDemand() {
+        return demand;
     }
 
     @Override
     public String toString() {
-        return "Route{" + "nodes=" + nodes + ", customersServed=" + customersServed + ", weights=" + weights +
-                '}';
+        return "Route{" + "nodes=" + nodeList + ", customersServed=" + customersServed + ", weights=" +
+                Arrays.toString(weights) + '}';
     }
 
     public boolean isCustomerServed(int customer) {
-        return customersServed.contains(customer);
+        int word = customer >>> 6;
+        return word < customerMask.length && (customerMask[word] & (1L << customer)) != 0;
     }
 
     public boolean containsEdge(int start, int end) {
-        if (nodes.size() < 2) {
-            return false;
-        }
-        for (int i = 0; i < nodes.size() - 1; i++) {
-            if (nodes.get(i) == start && nodes.get(i + 1) == end) {
+        long arc = getArcKey(start, end);
+        int slot = getSlot(arc, arcTable.length);
+        while (arcTable[slot] != NO_ARC) {
+            if (arcTable[slot] == arc) {
                 return true;
             }
+            slot = (slot + 1) & (arcTable.length - 1);
         }
         return false;
     }
 
-    public void removeCustomer(int customer) {
-        customersServed.remove(customer);
-    }
-
     public boolean dominates(Route other) {
-        return this.getCost() <= other.getCost() && this.customersServed.containsAll(other.customersServed);
-    }
-
-    public Route getCopyWithoutCustomers() {
-        return new Route(List.copyOf(this.nodes), new HashSet<>(), List.copyOf(this.weights));
+        if (this.cost > other.cost || other.customerMask.length > this.customerMask.length) {
+            return false;
+        }
+        for (int i = 0; i < other.customerMask.length; i++) {
+            if ((other.customerMask[i] & ~this.customerMask[i]) != 0) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Override
@@ -89,12 +138,61 @@ public class Route {
             return false;
         }
         Route that = (Route) o;
-        return Objects.equals(nodes, that.nodes) && Objects.equals(customersServed, that.customersServed) &&
-                Objects.equals(weights, that.weights);
+        return hash == that.hash && Arrays.equals(nodes, that.nodes) &&
+                Arrays.equals(customerMask, that.customerMask) && Arrays.equals(weights, that.weights);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(nodes, customersServed, weights);
+        return hash;
+    }
+
+    /** Collects the nodes and customers of a route; the demand is taken from the instance. */
+    public static class Builder {
+
+        private final Instance      instance;
+        private final List<Integer> nodes;
+        private final List<Integer> weights;
+        private final BitSet        customers;
+
+        public Builder(Instance instance) {
+            this.instance = instance;
+            this.nodes = new ArrayList<>();
+            this.weights = new ArrayList<>();
+            this.customers = new BitSet(instance.getNumberOfNodes());
+        }
+
+        public Builder addNode(int node, int weight) {
+            nodes.add(node);
+            weights.add(weight);
+            return this;
+        }
+
+        /** Adds the nodes of route, with their weights, but none of its customers. */
+        public Builder addNodesOf(Route route) {
+            for (int i = 0; i < route.nodes.length; i++) {
+                addNode(route.nodes[i], route.weights[i]);
+            }
+            return this;
+        }
+
+        public Builder addCustomers(Collection<Integer> customers) {
+            for (int customer : customers) {
+                this.customers.set(customer);
+            }
+            return this;
+        }
+
+        public Route build() {
+            int demand = 0;
+            for (int customer = customers.nextSetBit(0); customer >= 0; customer = customers.nextSetBit(customer + 1)) {
+                demand += instance.getDemand(customer);
+            }
+            return new Route(
+                    nodes.stream().mapToInt(Integer::intValue).toArray(),
+                    weights.stream().mapToInt(Integer::intValue).toArray(),
+                    (BitSet) customers.clone(),
+                    demand);
+        }
     }
 }
@@ -5,12 +5,22 @@ import java.time.Instant;
 
 public class Stopwatch {
 
-    private final Instant start;
-    private final Duration timeout;
+    private final Instant           start;
+    private final Duration          timeout;
+    private final CancellationToken cancellationToken;
 
     public Stopwatch(Duration timeout) {
+        this(timeout, CancellationToken.NONE);
+    }
+
+    /**
+     * A stopwatch that also times out when the token is cancelled or reaches its deadline, whichever
+     * comes first.
+     */
+    public Stopwatch(Duration timeout, CancellationToken cancellationToken) {
         this.start = Instant.now();
         this.timeout = timeout;
+        this.cancellationToken = cancellationToken;
     }
 
     public Duration getElapsedTime() {
@@ -18,10 +28,19 @@ public class Stopwatch {
     }
 
     public Duration getRemainingTime() {
-        return Utils.getRemainingTime(start, timeout);
+        Duration remainingTime = Utils.getRemainingTime(start, timeout);
+        if (cancellationToken == CancellationToken.NONE) {
+            return remainingTime;
+        }
+        Duration tokenRemainingTime = cancellationToken.getRemainingTime();
+        return tokenRemainingTime.compareTo(remainingTime) < 0 ? tokenRemainingTime : remainingTime;
     }
 
     public boolean timedOut() {
-        return getRemainingTime().isNegative();
+        return cancellationToken.isCancelled() || getRemainingTime().isNegative();
+    }
+
+    public CancellationToken getCancellationToken() {
+        return cancellationToken;
     }
 }
@@ -26,6 +26,8 @@ public class Utils {
   public static final Duration DEFAULT_TIMEOUT = Duration.ofMinutes(60);
   public static final String RESOURCES_PATH = "src/resources/";
   private static final String DELIMITER = " ";
+  // CPLEX needs some time to even load a model, a limit of 0 would make every solve fail
+  private static final double MIN_CPLEX_TIME_LIMIT = 0.01;
 
   private static List<Integer> readIntegerLine(String line) {
     return Arrays.stream(line.split(DELIMITER)).map(Integer::valueOf).toList();
@@ -115,6 +117,25 @@ public class Utils {
     return sum;
   }
 
+  /** Time limit in seconds for CPLEX, keeping the sub-second part of the remaining time. */
+  public static double getCplexTimeLimit(Duration remainingTime) {
+    double seconds = remainingTime.getSeconds() + remainingTime.getNano() / 1.0e9;
+    return Math.max(seconds, MIN_CPLEX_TIME_LIMIT);
+  }
+
+  /** Solves the model, aborting it as soon as the token is cancelled. */
+  public static boolean solve(IloCplex cplex, CancellationToken cancellationToken)
+      throws IloException {
+    IloCplex.Aborter aborter = new IloCplex.Aborter();
+    cplex.use(aborter);
+    CancellationToken.Registration registration = cancellationToken.onCancel(aborter::abort);
+    try {
+      return cplex.solve();
+    } finally {
+      registration.close();
+    }
+  }
+
   public static boolean isSolutionFeasible(IloCplex cplex) throws IloException {
     return IloCplex.Status.Optimal.equals(cplex.getStatus())
         || IloCplex.Status.Feasible.equals(cplex.getStatus());
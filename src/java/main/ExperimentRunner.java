@@ -0,0 +1,133 @@
+package main;
+
+import commons.CancellationToken;
+import commons.CplexThreads;
+import commons.Instance;
+import commons.InstanceLoader;
+import commons.ResultSink;
+import commons.Table;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs experiments over instances on a fixed pool of worker threads and appends each result to a
+ * {@link ResultSink}. Every run is identified by its configuration and instance name, and runs
+ * already recorded in the sink are skipped, so an interrupted sweep resumes where it stopped.
+ *
+ * <p>Each run is solved on its own thread with the CPLEX thread budget of the runner, and the
+ * worker stops waiting for it shortly after the timeout of the run, recording it as timed out. An
+ * overdue run is then cancelled through its {@link CancellationToken}, and the worker waits for its
+ * thread to stop before the next run starts, so that no run competes with it for the cores.
+ */
+public class ExperimentRunner {
+
+  private static final String TIME_LIMIT_EXCEEDED = "TLE";
+  private static final Duration GRACE_PERIOD = Duration.ofSeconds(30);
+
+  private final ResultSink sink;
+  private final int numberOfThreads;
+  private final Duration taskTimeout;
+  private final List<Task> tasks;
+  private int cplexThreadsPerTask;
+
+  public ExperimentRunner(ResultSink sink, int numberOfThreads, Duration taskTimeout) {
+    this.sink = sink;
+    this.numberOfThreads = numberOfThreads;
+    this.taskTimeout = taskTimeout;
+    this.tasks = new ArrayList<>();
+    this.cplexThreadsPerTask =
+        Math.max(1, Runtime.getRuntime().availableProcessors() / numberOfThreads);
+  }
+
+  /** Sets the number of threads each CPLEX model may use; by default the cores are split evenly. */
+  public void setCplexThreadsPerTask(int cplexThreadsPerTask) {
+    this.cplexThreadsPerTask = cplexThreadsPerTask;
+  }
+
+  public void addExperiment(
+      String configuration, List<InstanceLoader.Descriptor> instances, Experiment experiment) {
+    for (InstanceLoader.Descriptor instance : instances) {
+      tasks.add(new Task(configuration, instance.name(), experiment));
+    }
+  }
+
+  /** Runs every pending experiment and blocks until all of them are recorded. */
+  public void run() {
+    ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+    List<Future<?>> futures = new ArrayList<>();
+    for (Task task : tasks) {
+      if (sink.isCompleted(task.configuration(), task.instanceName())) {
+        continue;
+      }
+      futures.add(executor.submit(() -> runTask(task)));
+    }
+    executor.shutdown();
+    try {
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  private void runTask(Task task) {
+    Instance instance = InstanceLoader.getInstance().load(task.instanceName());
+    CancellationToken cancellationToken = new CancellationToken();
+    FutureTask<Table.Entry> solve =
+        new FutureTask<>(
+            () -> {
+              CplexThreads.setThreadLimit(cplexThreadsPerTask);
+              return task.experiment().run(instance, taskTimeout, cancellationToken);
+            });
+    Thread thread = new Thread(solve, task.configuration() + "-" + task.instanceName());
+    thread.setDaemon(true);
+    thread.start();
+    try {
+      Table.Entry entry =
+          solve.get(taskTimeout.plus(GRACE_PERIOD).toMillis(), TimeUnit.MILLISECONDS);
+      sink.append(task.configuration(), entry);
+    } catch (TimeoutException e) {
+      cancellationToken.cancel();
+      awaitTermination(thread);
+      sink.appendPlaceholder(task.configuration(), task.instanceName(), TIME_LIMIT_EXCEEDED);
+    } catch (ExecutionException e) {
+      // Failed runs are not recorded, so they are retried when the sweep is resumed
+      System.err.println("Run " + thread.getName() + " failed: " + e.getCause());
+    } catch (InterruptedException e) {
+      cancellationToken.cancel();
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void awaitTermination(Thread thread) {
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Solves one instance within the given time and returns the row to record. The solvers must be
+   * given the token, which the runner cancels if the run overruns its timeout.
+   */
+  @FunctionalInterface
+  public interface Experiment {
+
+    Table.Entry run(Instance instance, Duration timeout, CancellationToken cancellationToken);
+  }
+
+  private record Task(String configuration, String instanceName, Experiment experiment) {}
+}
@@ -7,15 +7,19 @@ import algorithm.InitialSolutionHeuristic;
 import algorithm.branching.BranchAndPrice;
 import algorithm.pricing.ILPPricingProblem;
 import algorithm.pricing.LabelSettingPricing;
+import algorithm.pricing.PricingCascade;
 import algorithm.pricing.PulsePricing;
 import commons.Instance;
 import commons.InstanceLoader;
+import commons.ResultSink;
 import commons.StarRoutingSolution;
 import commons.Table;
 
 import java.text.DecimalFormat;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 public class Experiments {
 
@@ -23,6 +27,10 @@ public class Experiments {
   private static final String TIME_LIMIT_EXCEEDED = "TLE";
   private static final DecimalFormat FORMATTER = new DecimalFormat("0.##");
   private static final Duration TIMEOUT = Duration.ofMinutes(60);
+  private static final int PARALLEL_RUNS = 4;
+  // Close B&P nodes within 1% of the incumbent by route enumeration
+  private static final double ENUMERATION_GAP = 0.01;
+  private static final int MAX_ENUMERATED_ROUTES = 20000;
 
   public static void main(String[] args) {
     //        experiment1_compactModelPerformance();
@@ -35,6 +43,11 @@ public class Experiments {
     //        experiment6_columnGenerationHeuristics();
     //        experiment7_columnGenerationFinishEarly();
     //        experiment8_relaxationComparison();
+    //        experiment9_pricingCascade();
+    //        experiment10_parallelPricingComparison();
+    //        experiment11_branchAndPriceAlns();
+    //        experiment12_branchAndPriceRouteEnumeration();
+    //        experiment13_branchAndPriceArcFixing();
   }
 
   private static double gapAsPercent(double value, double lowerBound) {
@@ -48,19 +61,18 @@ public class Experiments {
             true,
             "experiment1.csv");
     int unfinishedInstances = 0;
-    for (Instance instance : InstanceLoader.getInstance().getExperimentInstances()) {
-      if (instance.getNumberOfNodes() <= 20) {
-        CompactModel compactModel = new CompactModel(instance);
-        StarRoutingSolution solution = compactModel.solve(TIMEOUT);
-        table.addEntry(new SimpleTableEntry(instance, solution));
-        if (solution.timedOut()) {
-          unfinishedInstances++;
-        } else {
-          unfinishedInstances = 0;
-        }
-        if (unfinishedInstances == 3) {
-          break;
-        }
+    for (Instance instance :
+        InstanceLoader.getInstance().getExperimentInstances(d -> d.numberOfNodes() <= 20)) {
+      CompactModel compactModel = new CompactModel(instance);
+      StarRoutingSolution solution = compactModel.solve(TIMEOUT);
+      table.addEntry(new SimpleTableEntry(instance, solution));
+      if (solution.timedOut()) {
+        unfinishedInstances++;
+      } else {
+        unfinishedInstances = 0;
+      }
+      if (unfinishedInstances == 3) {
+        break;
       }
     }
     table.close();
@@ -83,26 +95,25 @@ public class Experiments {
             true,
             "experiment2.csv");
     int unfinishedInstances = 0;
-    for (Instance instance : InstanceLoader.getInstance().getExperimentInstances()) {
-      if (instance.getNumberOfNodes() <= 40) {
-        ColumnGenerator columnGenerator =
-            new ColumnGenerator(
-                instance,
-                new GeRestrictedMasterProblem(instance),
-                new ILPPricingProblem(instance),
-                new InitialSolutionHeuristic(instance));
-        StarRoutingSolution solution = columnGenerator.solve(TIMEOUT);
-        table.addEntry(
-            new ExtendedTableEntry(instance, solution, columnGenerator.getNumberOfIterations()));
-        if (solution.timedOut()) {
-          unfinishedInstances++;
-        } else {
-          unfinishedInstances = 0;
-        }
-        //      if (unfinishedInstances == 3) {
-        //        break;
-        //      }
+    for (Instance instance :
+        InstanceLoader.getInstance().getExperimentInstances(d -> d.numberOfNodes() <= 40)) {
+      ColumnGenerator columnGenerator =
+          new ColumnGenerator(
+              instance,
+              new GeRestrictedMasterProblem(instance),
+              new ILPPricingProblem(instance),
+              new InitialSolutionHeuristic(instance));
+      StarRoutingSolution solution = columnGenerator.solve(TIMEOUT);
+      table.addEntry(
+          new ExtendedTableEntry(instance, solution, columnGenerator.getNumberOfIterations()));
+      if (solution.timedOut()) {
+        unfinishedInstances++;
+      } else {
+        unfinishedInstances = 0;
       }
+      //      if (unfinishedInstances == 3) {
+      //        break;
+      //      }
     }
     table.close();
   }
@@ -124,26 +135,25 @@ public class Experiments {
             true,
             "experiment3.csv");
     int unfinishedInstances = 0;
-    for (Instance instance : InstanceLoader.getInstance().getExperimentInstances()) {
-      if (instance.getNumberOfNodes() <= 40) {
-        ColumnGenerator columnGenerator =
-            new ColumnGenerator(
-                instance,
-                new GeRestrictedMasterProblem(instance),
-                new PulsePricing(instance),
-                new InitialSolutionHeuristic(instance));
-        StarRoutingSolution solution = columnGenerator.solve(TIMEOUT);
-        table.addEntry(
-            new ExtendedTableEntry(instance, solution, columnGenerator.getNumberOfIterations()));
-        if (solution.timedOut()) {
-          unfinishedInstances++;
-        } else {
-          unfinishedInstances = 0;
-        }
-        //      if (unfinishedInstances == 3) {
-        //        break;
-        //      }
+    for (Instance instance :
+        InstanceLoader.getInstance().getExperimentInstances(d -> d.numberOfNodes() <= 40)) {
+      ColumnGenerator columnGenerator =
+          new ColumnGenerator(
+              instance,
+              new GeRestrictedMasterProblem(instance),
+              new PulsePricing(instance),
+              new InitialSolutionHeuristic(instance));
+      StarRoutingSolution solution = columnGenerator.solve(TIMEOUT);
+      table.addEntry(
+          new ExtendedTableEntry(instance, solution, columnGenerator.getNumberOfIterations()));
+      if (solution.timedOut()) {
+        unfinishedInstances++;
+      } else {
+        unfinishedInstances = 0;
       }
+      //      if (unfinishedInstances == 3) {
+      //        break;
+      //      }
     }
     table.close();
   }
@@ -165,34 +175,33 @@ public class Experiments {
             true,
             "experiment4.csv");
     int unfinishedInstances = 0;
-    for (Instance instance : InstanceLoader.getInstance().getExperimentInstances()) {
-      if (instance.getNumberOfNodes() <= 46) {
-        //        ColumnGenerator columnGenerator =
-        //            new ColumnGenerator(
-        //                instance,
-        //                new GeRestrictedMasterProblem(instance),
-        //                new LabelSettingPricing(instance),
-        //                new InitialSolutionHeuristic(instance));
-        //        StarRoutingSolution solution = columnGenerator.solve(TIMEOUT);
-        BranchAndPrice branchAndPrice =
-            new BranchAndPrice(
-                instance,
-                new GeRestrictedMasterProblem(instance),
-                new LabelSettingPricing(instance),
-                new InitialSolutionHeuristic(instance));
-        StarRoutingSolution solution = branchAndPrice.solve(TIMEOUT);
-
-        table.addEntry(
-            new ExtendedTableEntry(instance, solution, branchAndPrice.getNumberOfIterations()));
-        if (solution.timedOut()) {
-          unfinishedInstances++;
-        } else {
-          unfinishedInstances = 0;
-        }
-        //      if (unfinishedInstances == 3) {
-        //        break;
-        //      }
+    for (Instance instance :
+        InstanceLoader.getInstance().getExperimentInstances(d -> d.numberOfNodes() <= 46)) {
+      //        ColumnGenerator columnGenerator =
+      //            new ColumnGenerator(
+      //                instance,
+      //                new GeRestrictedMasterProblem(instance),
+      //                new LabelSettingPricing(instance),
+      //                new InitialSolutionHeuristic(instance));
+      //        StarRoutingSolution solution = columnGenerator.solve(TIMEOUT);
+      BranchAndPrice branchAndPrice =
+          new BranchAndPrice(
+              instance,
+              new GeRestrictedMasterProblem(instance),
+              new LabelSettingPricing(instance),
+              new InitialSolutionHeuristic(instance));
+      StarRoutingSolution solution = branchAndPrice.solve(TIMEOUT);
+
+      table.addEntry(
+          new ExtendedTableEntry(instance, solution, branchAndPrice.getNumberOfIterations()));
+      if (solution.timedOut()) {
+        unfinishedInstances++;
+      } else {
+        unfinishedInstances = 0;
       }
+      //      if (unfinishedInstances == 3) {
+      //        break;
+      //      }
     }
     table.close();
   }
@@ -214,26 +223,25 @@ public class Experiments {
             true,
             "experiment41.csv");
     int unfinishedInstances = 0;
-    for (Instance instance : InstanceLoader.getInstance().getExperimentInstances()) {
-      if (instance.getNumberOfNodes() <= 40) {
-        ColumnGenerator columnGenerator =
-            new ColumnGenerator(
-                instance,
-                new GeRestrictedMasterProblem(instance),
-                new LabelSettingPricing(instance, false, true),
-                new InitialSolutionHeuristic(instance));
-        StarRoutingSolution solution = columnGenerator.solve(TIMEOUT);
-        table.addEntry(
-            new ExtendedTableEntry(instance, solution, columnGenerator.getNumberOfIterations()));
-        if (solution.timedOut()) {
-          unfinishedInstances++;
-        } else {
-          unfinishedInstances = 0;
-        }
-        //      if (unfinishedInstances == 3) {
-        //        break;
-        //      }
+    for (Instance instance :
+        InstanceLoader.getInstance().getExperimentInstances(d -> d.numberOfNodes() <= 40)) {
+      ColumnGenerator columnGenerator =
+          new ColumnGenerator(
+              instance,
+              new GeRestrictedMasterProblem(instance),
+              new LabelSettingPricing(instance, false, true),
+              new InitialSolutionHeuristic(instance));
+      StarRoutingSolution solution = columnGenerator.solve(TIMEOUT);
+      table.addEntry(
+          new ExtendedTableEntry(instance, solution, columnGenerator.getNumberOfIterations()));
+      if (solution.timedOut()) {
+        unfinishedInstances++;
+      } else {
+        unfinishedInstances = 0;
       }
+      //      if (unfinishedInstances == 3) {
+      //        break;
+      //      }
     }
     table.close();
   }
@@ -479,6 +487,146 @@ public class Experiments {
     table.close();
   }
 
+  private static void experiment9_pricingCascade() {
+    Table table =
+        new Table(
+            List.of(
+                "Instancia",
+                "|N|",
+                "|S|",
+                "|K|",
+                "Tiempo (ms)",
+                "#Iter GC",
+                "F Obj",
+                "Pool Aciertos",
+                "Pool (ms)",
+                "Busqueda Local Aciertos",
+                "Busqueda Local (ms)",
+                "Relajado Aciertos",
+                "Relajado (ms)",
+                "Exacto Aciertos",
+                "Exacto (ms)"),
+            true,
+            "experiment9.csv");
+    for (Instance instance : InstanceLoader.getInstance().getExperimentInstances()) {
+      PricingCascade pricingCascade = new PricingCascade(instance);
+      ColumnGenerator columnGenerator =
+          new ColumnGenerator(
+              instance,
+              new GeRestrictedMasterProblem(instance),
+              pricingCascade,
+              new InitialSolutionHeuristic(instance));
+      StarRoutingSolution solution = columnGenerator.solve(TIMEOUT);
+      table.addEntry(
+          new CascadeTableEntry(
+              instance, solution, columnGenerator, pricingCascade.getStatistics()));
+    }
+    table.close();
+  }
+
+  private static void experiment10_parallelPricingComparison() {
+    ResultSink sink =
+        new ResultSink(
+            List.of(
+                "Instancia",
+                "|N|",
+                "|S|",
+                "|K|",
+                "Tiempo (ms)",
+                "#Labels",
+                "#Iter GC",
+                "F Obj",
+                "LB",
+                "Gap"),
+            "experiment10.csv");
+    List<InstanceLoader.Descriptor> instances =
+        InstanceLoader.getInstance().getExperimentDescriptors().stream()
+            .filter(d -> d.numberOfNodes() <= 40)
+            .toList();
+    ExperimentRunner runner = new ExperimentRunner(sink, PARALLEL_RUNS, TIMEOUT);
+    runner.addExperiment(
+        "pulse",
+        instances,
+        (instance, timeout, cancellationToken) -> {
+          ColumnGenerator columnGenerator =
+              new ColumnGenerator(
+                  instance,
+                  new GeRestrictedMasterProblem(instance),
+                  new PulsePricing(instance),
+                  new InitialSolutionHeuristic(instance));
+          columnGenerator.setCancellationToken(cancellationToken);
+          StarRoutingSolution solution = columnGenerator.solve(timeout);
+          return new ExtendedTableEntry(
+              instance, solution, columnGenerator.getNumberOfIterations());
+        });
+    runner.addExperiment(
+        "label-setting",
+        instances,
+        (instance, timeout, cancellationToken) -> {
+          ColumnGenerator columnGenerator =
+              new ColumnGenerator(
+                  instance,
+                  new GeRestrictedMasterProblem(instance),
+                  new LabelSettingPricing(instance),
+                  new InitialSolutionHeuristic(instance));
+          columnGenerator.setCancellationToken(cancellationToken);
+          StarRoutingSolution solution = columnGenerator.solve(timeout);
+          return new ExtendedTableEntry(
+              instance, solution, columnGenerator.getNumberOfIterations());
+        });
+    runner.run();
+    sink.close();
+  }
+
+  private static void experiment11_branchAndPriceAlns() {
+    branchAndPriceExperiment("experiment11.csv", BranchAndPrice::enableAlns);
+  }
+
+  private static void experiment12_branchAndPriceRouteEnumeration() {
+    branchAndPriceExperiment(
+        "experiment12.csv",
+        branchAndPrice ->
+            branchAndPrice.enableRouteEnumeration(ENUMERATION_GAP, MAX_ENUMERATED_ROUTES));
+  }
+
+  private static void experiment13_branchAndPriceArcFixing() {
+    branchAndPriceExperiment("experiment13.csv", BranchAndPrice::enableArcFixing);
+  }
+
+  /** Runs the B&P of experiment 4 with the given features enabled, for comparison against it. */
+  private static void branchAndPriceExperiment(
+      String fileName, Consumer<BranchAndPrice> configuration) {
+    Table table =
+        new Table(
+            List.of(
+                "Instancia",
+                "|N|",
+                "|S|",
+                "|K|",
+                "Tiempo (ms)",
+                "#Labels",
+                "#Iter GC",
+                "F Obj",
+                "LB",
+                "Gap"),
+            true,
+            fileName);
+    for (Instance instance :
+        InstanceLoader.getInstance().getExperimentInstances(d -> d.numberOfNodes() <= 46)) {
+      BranchAndPrice branchAndPrice =
+          new BranchAndPrice(
+              instance,
+              new GeRestrictedMasterProblem(instance),
+              new LabelSettingPricing(instance),
+              new InitialSolutionHeuristic(instance));
+      configuration.accept(branchAndPrice);
+      StarRoutingSolution solution = branchAndPrice.solve(TIMEOUT);
+      table.addEntry(
+          new ExtendedTableEntry(instance, solution, branchAndPrice.getNumberOfIterations()));
+    }
+    table.close();
+  }
+
   private static String getInstanceName(Instance instance) {
     return instance.getName();
   }
@@ -656,4 +804,42 @@ public class Experiments {
           getGapBetweenSolutions(solution1, solution2));
     }
   }
+
+  private static class CascadeTableEntry implements Table.Entry {
+
+    private final Instance instance;
+    private final StarRoutingSolution solution;
+    private final ColumnGenerator columnGenerator;
+    private final List<PricingCascade.StageStatistics> statistics;
+
+    public CascadeTableEntry(
+        Instance instance,
+        StarRoutingSolution solution,
+        ColumnGenerator columnGenerator,
+        List<PricingCascade.StageStatistics> statistics) {
+      this.instance = instance;
+      this.solution = solution;
+      this.columnGenerator = columnGenerator;
+      this.statistics = statistics;
+    }
+
+    @Override
+    public List<String> getFields() {
+      List<String> fields =
+          new ArrayList<>(
+              List.of(
+                  getInstanceName(instance),
+                  getNumberOfNodes(instance),
+                  getNumberOfCustomers(instance),
+                  getNumberOfVehicles(instance),
+                  getElapsedTime(solution),
+                  getNumberOfIterations(columnGenerator),
+                  getObjValue(solution)));
+      for (PricingCascade.StageStatistics stage : statistics) {
+        fields.add(stage.getHits() + "/" + stage.getCalls());
+        fields.add(String.valueOf(stage.getElapsedTime().toMillis()));
+      }
+      return fields;
+    }
+  }
 }
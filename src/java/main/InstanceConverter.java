@@ -0,0 +1,35 @@
+package main;
+
+import commons.BinaryInstanceFormat;
+import commons.Instance;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Writes the binary file of the given instances, or of every instance directory under the
+ * resources directory when no name is given. Instances are loaded from their binary file from then
+ * on, so it has to be regenerated whenever the text files change.
+ */
+public class InstanceConverter {
+
+  public static void main(String[] args) {
+    List<String> instanceNames = args.length > 0 ? Arrays.asList(args) : getAllInstanceNames();
+    for (String instanceName : instanceNames) {
+      Path path = BinaryInstanceFormat.convert(instanceName);
+      System.out.println("Converted " + instanceName + " to " + path);
+    }
+  }
+
+  private static List<String> getAllInstanceNames() {
+    File resourcesDir = new File(Instance.DEFAULT_DIR);
+    return Arrays.stream(Objects.requireNonNull(resourcesDir.listFiles(File::isDirectory)))
+        .map(File::getName)
+        .filter(name -> name.startsWith("instance"))
+        .sorted()
+        .toList();
+  }
+}
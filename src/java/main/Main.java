@@ -4,6 +4,7 @@ import algorithm.ColumnGenerator;
 import algorithm.GeRestrictedMasterProblem;
 import algorithm.InitialSolutionHeuristic;
 import algorithm.pricing.LabelSettingPricing;
+import algorithm.pricing.PortfolioPricing;
 import algorithm.pricing.PulsePricing;
 import commons.Instance;
 import commons.InstanceLoader;
@@ -13,18 +14,17 @@ import java.time.Duration;
 public class Main {
 
   private static final Duration TIMEOUT = Duration.ofMinutes(1);
+  private static final int SEEDING_POOL_SIZE = 300;
 
   public static void main(String[] args) {
-    for (Instance instance : InstanceLoader.getInstance().getExperimentInstances()) {
-      if (instance.getNumberOfNodes() >= 40) {
-        runInstance(instance.getName());
-      }
+    for (Instance instance :
+        InstanceLoader.getInstance().getExperimentInstances(d -> d.numberOfNodes() >= 40)) {
+      runInstance(instance);
     }
   }
 
-  private static void runInstance(String instanceName) {
-    System.out.println("Running instance: " + instanceName);
-    Instance instance = new Instance(instanceName, true);
+  private static void runInstance(Instance instance) {
+    System.out.println("Running instance: " + instance.getName());
     /*
             CompactModel compactModel = new CompactModel(instance);
             System.out.println("MTZ: " + compactModel.solve());
@@ -60,7 +60,7 @@ public class Main {
             instance,
             new GeRestrictedMasterProblem(instance),
             new PulsePricing(instance),
-            new InitialSolutionHeuristic(instance));
+            new InitialSolutionHeuristic(instance, SEEDING_POOL_SIZE));
     StarRoutingSolution solution1 = branchAndPrice.solve(TIMEOUT);
 
     ColumnGenerator columnGenerator =
@@ -68,9 +68,18 @@ public class Main {
             instance,
             new GeRestrictedMasterProblem(instance),
             new LabelSettingPricing(instance),
-            new InitialSolutionHeuristic(instance));
+            new InitialSolutionHeuristic(instance, SEEDING_POOL_SIZE));
     StarRoutingSolution solution2 = columnGenerator.solve(TIMEOUT);
 
+    PortfolioPricing portfolioPricing = new PortfolioPricing(instance);
+    ColumnGenerator portfolioGenerator =
+        new ColumnGenerator(
+            instance,
+            new GeRestrictedMasterProblem(instance),
+            portfolioPricing,
+            new InitialSolutionHeuristic(instance, SEEDING_POOL_SIZE));
+    StarRoutingSolution solution3 = portfolioGenerator.solve(TIMEOUT);
+
     System.out.println("B&P: " + solution1);
     if (solution1.hasLowerBound()) {
       System.out.println(solution1.getLowerBound());
@@ -79,6 +88,11 @@ public class Main {
     if (solution2.hasLowerBound()) {
       System.out.println(solution2.getLowerBound());
     }
+    System.out.println("Portfolio: " + solution3);
+    if (solution3.hasLowerBound()) {
+      System.out.println(solution3.getLowerBound());
+    }
+    portfolioPricing.getStatistics().forEach(System.out::println);
     System.out.println();
 
     //        System.out.println("ColGen: " + solution);